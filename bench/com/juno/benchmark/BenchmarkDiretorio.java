@@ -0,0 +1,79 @@
+package com.juno.benchmark;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.juno.controller.ProcessadorPastaOrigem;
+import com.juno.utils.FileUtils;
+import com.juno.utils.IndiceArquivosProcessados;
+import com.juno.utils.LocalizadorCnpjTransportador;
+import com.juno.utils.ManifestoDestino;
+
+/**
+ * Mede a vazão de um diretório de origem inteiro (listagem, leitura, localização do CNPJ e
+ * cópia) em disco local. Cada operação processa o diretório com índice e destino vazios.
+ * <br>
+ * Uso: java -cp bin;lib/* com.juno.benchmark.BenchmarkDiretorio [quantidade de arquivos] [threads de leitura] [diretório] [threads de cópia]
+ * <br>
+ * Quando o diretório é informado e já contém arquivos, eles são reaproveitados entre as execuções
+ */
+public class BenchmarkDiretorio {
+
+	private static final String CNPJ_TRANSPORTADOR = "11222333000144";
+	private static final int PERCENTUAL_TRANSPORTADOR = 10;
+
+	public static void main(String[] args) throws Exception {
+		final int quantidadeArquivos = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		final int threadsLeitura = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		File diretorioBase = args.length > 2 ? new File(args[2]) : Files.createTempDirectory("benchmark-diretorio").toFile();
+		final int threadsCopia = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+
+		final File diretorioOrigem = new File(diretorioBase, "origem-" + quantidadeArquivos);
+		final File diretorioDestino = new File(diretorioBase, "destino");
+		final File arquivoIndice = new File(diretorioBase, "indice.dat");
+
+		if (!diretorioOrigem.exists()) {
+			System.out.println("Gerando " + quantidadeArquivos + " arquivos em " + diretorioOrigem);
+			new GeradorNfeSintetica(42).gerarDiretorio(diretorioOrigem, quantidadeArquivos, PERCENTUAL_TRANSPORTADOR, CNPJ_TRANSPORTADOR);
+		}
+		final FileUtils fileUtils = new FileUtils();
+		final Map<Long, String> mapDiretorioCopiaPorCnpj = new HashMap<>();
+		mapDiretorioCopiaPorCnpj.put(LocalizadorCnpjTransportador.converterCnpj(CNPJ_TRANSPORTADOR), diretorioDestino.getPath());
+
+		Medicao medicao = new Medicao(1, 3, 0);
+		medicao.medir("diretorio " + quantidadeArquivos + " arquivos, " + threadsLeitura + " threads de leitura, " + threadsCopia + " de cópia", new Medicao.Operacao() {
+			@Override
+			public long executar() throws Exception {
+				apagar(diretorioDestino);
+				Files.deleteIfExists(arquivoIndice.toPath());
+
+				ManifestoDestino manifesto = ManifestoDestino.carregar(diretorioDestino.getPath());
+				manifesto.recarregar();
+				Map<Long, ManifestoDestino> mapManifestoPorCnpj = new HashMap<>();
+				mapManifestoPorCnpj.put(LocalizadorCnpjTransportador.converterCnpj(CNPJ_TRANSPORTADOR), manifesto);
+
+				try (IndiceArquivosProcessados indice = IndiceArquivosProcessados.carregar(arquivoIndice)) {
+					ProcessadorPastaOrigem processador = new ProcessadorPastaOrigem(diretorioOrigem.getPath(), 0,
+							mapDiretorioCopiaPorCnpj, threadsLeitura, threadsCopia, Integer.MAX_VALUE, mapManifestoPorCnpj, indice, fileUtils);
+					return processador.call();
+				}
+			}
+		}, 0);
+
+		System.out.println("(" + medicao.getConsumidor() + ")");
+		System.out.println("Arquivos por segundo = op/s x " + quantidadeArquivos);
+	}
+
+	private static void apagar(File diretorio) {
+		File[] arquivos = diretorio.listFiles();
+
+		if (arquivos != null) {
+			for (File arquivo : arquivos) {
+				apagar(arquivo);
+			}
+		}
+		diretorio.delete();
+	}
+}
@@ -0,0 +1,143 @@
+package com.juno.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.juno.benchmark.GeradorNfeSintetica.Formatacao;
+import com.juno.benchmark.GeradorNfeSintetica.PosicaoTransporte;
+import com.juno.utils.FileUtils;
+import com.juno.utils.LocalizadorCnpjTransportador;
+
+/**
+ * Mede o custo por arquivo da localização do CNPJ do transportador e da cópia de um arquivo.
+ * A leitura original (Scanner + regex) é mantida aqui como referência de comparação, e para
+ * cada cenário é informado se cada leitura localizou o transportador declarado.
+ * <br>
+ * Uso: java -cp bin;lib/* com.juno.benchmark.BenchmarkLeituraNfe [duração da rodada em ms]
+ */
+public class BenchmarkLeituraNfe {
+
+	private static final String CNPJ_TRANSPORTADOR = "11222333000144";
+	private static final String CPF_TRANSPORTADOR = "12345678901";
+	private static final Pattern PATTERN_CNPJ_TRANSPORTADOR = Pattern.compile("<transporta><CNPJ>(.+?)</CNPJ>");
+	private static final int[] QUANTIDADES_ITENS = { 5, 50, 500 };
+
+	public static void main(String[] args) throws Exception {
+		long duracaoRodada = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+		Medicao medicao = new Medicao(3, 5, duracaoRodada);
+		GeradorNfeSintetica gerador = new GeradorNfeSintetica(42);
+		final FileUtils fileUtils = new FileUtils();
+		final LocalizadorCnpjTransportador localizador = new LocalizadorCnpjTransportador();
+
+		File diretorioTemporario = Files.createTempDirectory("benchmark-nfe").toFile();
+		try {
+			for (Formatacao formatacao : Formatacao.values()) {
+				for (PosicaoTransporte posicao : PosicaoTransporte.values()) {
+					for (int quantidadeItens : QUANTIDADES_ITENS) {
+						final byte[] xml = gerador.gerar(quantidadeItens, posicao, formatacao, CNPJ_TRANSPORTADOR);
+						final File arquivo = new File(diretorioTemporario, formatacao + "-" + posicao + "-" + quantidadeItens + ".xml");
+						Files.write(arquivo.toPath(), xml);
+						String cenario = formatacao + "/" + posicao + "/" + xml.length + "B";
+
+						if (quantidadeItens == QUANTIDADES_ITENS[0]) {
+							informarLocalizacao(fileUtils, localizador, formatacao + "/" + posicao, xml, CNPJ_TRANSPORTADOR);
+						}
+
+						medicao.medir("legado     memória " + cenario, new Medicao.Operacao() {
+							@Override
+							public long executar() throws Exception {
+								return localizarLegado(fileUtils, new ByteArrayInputStream(xml));
+							}
+						}, xml.length);
+
+						medicao.medir("streaming  memória " + cenario, new Medicao.Operacao() {
+							@Override
+							public long executar() throws Exception {
+								return localizador.localizarCnpjTransportador(new ByteArrayInputStream(xml));
+							}
+						}, xml.length);
+
+						medicao.medir("legado     disco   " + cenario, new Medicao.Operacao() {
+							@Override
+							public long executar() throws Exception {
+								return localizarLegado(fileUtils, new FileInputStream(arquivo));
+							}
+						}, xml.length);
+
+						medicao.medir("streaming  disco   " + cenario, new Medicao.Operacao() {
+							@Override
+							public long executar() throws Exception {
+								try (InputStream inputStream = new FileInputStream(arquivo)) {
+									return localizador.localizarCnpjTransportador(inputStream);
+								}
+							}
+						}, xml.length);
+
+						medicao.medir("channel    disco   " + cenario, new Medicao.Operacao() {
+							@Override
+							public long executar() throws Exception {
+								return localizador.localizarCnpjTransportador(arquivo, fileUtils);
+							}
+						}, xml.length);
+					}
+				}
+			}
+
+			for (Formatacao formatacao : Formatacao.values()) {
+				byte[] xml = gerador.gerar(QUANTIDADES_ITENS[0], PosicaoTransporte.LAYOUT, formatacao, CPF_TRANSPORTADOR);
+				informarLocalizacao(fileUtils, localizador, formatacao + "/CPF", xml, CPF_TRANSPORTADOR);
+			}
+
+			final byte[] xmlCopia = gerador.gerar(50, PosicaoTransporte.LAYOUT, Formatacao.COMPACTA, CNPJ_TRANSPORTADOR);
+			final File origem = new File(diretorioTemporario, "origem-copia.xml");
+			final File destino = new File(diretorioTemporario, "destino-copia.xml");
+			Files.write(origem.toPath(), xmlCopia);
+
+			medicao.medir("copia      disco   " + xmlCopia.length + "B", new Medicao.Operacao() {
+				@Override
+				public long executar() throws Exception {
+					Files.deleteIfExists(destino.toPath());
+					fileUtils.copiarArquivo(origem, destino);
+					return destino.length();
+				}
+			}, xmlCopia.length);
+
+		} finally {
+			for (File arquivo : diretorioTemporario.listFiles()) {
+				arquivo.delete();
+			}
+			diretorioTemporario.delete();
+		}
+		System.out.println("(" + medicao.getConsumidor() + ")");
+	}
+
+	/**
+	 * Leitura original: conteúdo completo em String seguido da regex
+	 */
+	private static long localizarLegado(FileUtils fileUtils, InputStream inputStream) {
+		return localizarLegado(fileUtils, inputStream, CNPJ_TRANSPORTADOR);
+	}
+
+	private static long localizarLegado(FileUtils fileUtils, InputStream inputStream, String cnpjTransportador) {
+		Matcher matcher = PATTERN_CNPJ_TRANSPORTADOR.matcher(fileUtils.getConteudoArquivo(inputStream));
+		return matcher.find() && matcher.group(1).equals(cnpjTransportador) ? 1 : 0;
+	}
+
+	/**
+	 * Informa se a leitura original e a atual localizaram o transportador declarado no documento
+	 */
+	private static void informarLocalizacao(FileUtils fileUtils, LocalizadorCnpjTransportador localizador, String cenario,
+			byte[] xml, String cnpjTransportador) throws Exception {
+		boolean legado = localizarLegado(fileUtils, new ByteArrayInputStream(xml), cnpjTransportador) == 1;
+		boolean atual = localizador.localizarCnpjTransportador(new ByteArrayInputStream(xml))
+				== LocalizadorCnpjTransportador.converterCnpj(cnpjTransportador);
+
+		System.out.println(String.format("%-60s legado: %-3s streaming: %s", "localizado " + cenario, legado ? "sim" : "não",
+				atual ? "sim" : "não"));
+	}
+}
@@ -0,0 +1,222 @@
+package com.juno.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+/**
+ * Gera XMLs de NF-e sintéticos para os benchmarks, seguindo a estrutura do layout
+ * (ide, emit, dest, det, total, transp) com tamanho, posição do bloco do transportador
+ * e formatação variáveis
+ */
+public class GeradorNfeSintetica {
+
+	/**
+	 * Posição do bloco &lt;transporta&gt; no documento
+	 */
+	public enum PosicaoTransporte {
+		/**
+		 * Após os itens (det), como no layout da NF-e
+		 */
+		LAYOUT,
+		/**
+		 * Antes dos itens, para medir o custo mínimo da leitura
+		 */
+		INICIO,
+		/**
+		 * Sem bloco do transportador, obrigando a leitura do documento inteiro
+		 */
+		AUSENTE
+	}
+
+	/**
+	 * Formatação do documento
+	 */
+	public enum Formatacao {
+		/**
+		 * Sem espaços ou quebras de linha entre as tags, como emitido pela maioria dos sistemas
+		 */
+		COMPACTA,
+		/**
+		 * Uma tag por linha, indentada com espaços
+		 */
+		INDENTADA,
+		/**
+		 * Tags com o prefixo de namespace "nfe:"
+		 */
+		PREFIXADA
+	}
+
+	private final Random random;
+
+	/**
+	 * @param semente semente dos valores aleatórios, para que os documentos gerados sejam reproduzíveis
+	 */
+	public GeradorNfeSintetica(long semente) {
+		this.random = new Random(semente);
+	}
+
+	/**
+	 * Gera um XML de NF-e
+	 * @param quantidadeItens quantidade de itens (det), que define o tamanho do documento
+	 * @param posicao posição do bloco do transportador
+	 * @param formatacao formatação do documento
+	 * @param cnpjTransportador CNPJ do transportador declarado, ou CPF se tiver 11 dígitos
+	 * @return bytes UTF-8 do documento
+	 */
+	public byte[] gerar(int quantidadeItens, PosicaoTransporte posicao, Formatacao formatacao, String cnpjTransportador) {
+		Escritor xml = new Escritor(formatacao);
+		xml.declaracao();
+		xml.abrir("nfeProc versao=\"4.00\" xmlns=\"http://www.portalfiscal.inf.br/nfe\"");
+		xml.abrir("NFe");
+		xml.abrir("infNFe Id=\"NFe" + digitos(44) + "\" versao=\"4.00\"");
+
+		xml.abrir("ide");
+		xml.tag("cUF", "35");
+		xml.tag("natOp", "VENDA DE MERCADORIA");
+		xml.tag("mod", "55");
+		xml.tag("nNF", digitos(6));
+		xml.tag("dhEmi", "2017-04-25T08:00:00-03:00");
+		xml.fechar("ide");
+
+		xml.abrir("emit");
+		xml.tag("CNPJ", digitos(14));
+		xml.tag("xNome", "EMITENTE SINTETICO LTDA");
+		xml.fechar("emit");
+
+		xml.abrir("dest");
+		xml.tag("CNPJ", digitos(14));
+		xml.tag("xNome", "DESTINATARIO SINTETICO LTDA");
+		xml.fechar("dest");
+
+		if (posicao == PosicaoTransporte.INICIO) {
+			transporte(xml, cnpjTransportador);
+		}
+		for (int i = 1; i <= quantidadeItens; i++) {
+			xml.abrir("det nItem=\"" + i + "\"");
+			xml.abrir("prod");
+			xml.tag("cProd", digitos(8));
+			xml.tag("xProd", "PRODUTO SINTETICO " + i);
+			xml.tag("NCM", digitos(8));
+			xml.tag("CFOP", "5102");
+			xml.tag("qCom", "1.0000");
+			xml.tag("vUnCom", "10.00");
+			xml.fechar("prod");
+			xml.abrir("imposto");
+			xml.tag("vTotTrib", "1.00");
+			xml.fechar("imposto");
+			xml.fechar("det");
+		}
+
+		xml.abrir("total");
+		xml.tag("vNF", quantidadeItens * 10 + ".00");
+		xml.fechar("total");
+
+		if (posicao == PosicaoTransporte.LAYOUT) {
+			transporte(xml, cnpjTransportador);
+		}
+		xml.fechar("infNFe");
+		xml.fechar("NFe");
+		xml.fechar("nfeProc");
+		return xml.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Gera uma árvore de arquivos XML em um diretório
+	 * @param diretorio diretório onde os arquivos serão gravados
+	 * @param quantidadeArquivos quantidade de arquivos
+	 * @param percentualTransportador percentual dos arquivos declarando o CNPJ informado
+	 * @param cnpjTransportador CNPJ do transportador buscado
+	 * @throws IOException
+	 */
+	public void gerarDiretorio(File diretorio, int quantidadeArquivos, int percentualTransportador, String cnpjTransportador) throws IOException {
+		diretorio.mkdirs();
+
+		for (int i = 0; i < quantidadeArquivos; i++) {
+			String cnpj = random.nextInt(100) < percentualTransportador ? cnpjTransportador : digitos(14);
+			int quantidadeItens = 1 + random.nextInt(random.nextInt(10) == 0 ? 400 : 20);
+			byte[] conteudo = gerar(quantidadeItens, PosicaoTransporte.LAYOUT, Formatacao.COMPACTA, cnpj);
+			Files.write(new File(diretorio, digitos(44) + "-nfe.xml").toPath(), conteudo);
+		}
+	}
+
+	private void transporte(Escritor xml, String cnpjTransportador) {
+		xml.abrir("transp");
+		xml.tag("modFrete", "0");
+		xml.abrir("transporta");
+		xml.tag(cnpjTransportador.length() == 11 ? "CPF" : "CNPJ", cnpjTransportador);
+		xml.tag("xNome", "TRANSPORTADORA SINTETICA LTDA");
+		xml.fechar("transporta");
+		xml.fechar("transp");
+	}
+
+	private String digitos(int quantidade) {
+		char[] digitos = new char[quantidade];
+		for (int i = 0; i < quantidade; i++) {
+			digitos[i] = (char) ('0' + random.nextInt(10));
+		}
+		return new String(digitos);
+	}
+
+	/**
+	 * Monta o texto do XML aplicando a formatação escolhida
+	 */
+	private static class Escritor {
+		private final StringBuilder texto = new StringBuilder();
+		private final Formatacao formatacao;
+		private final String prefixo;
+		private int nivel;
+
+		private Escritor(Formatacao formatacao) {
+			this.formatacao = formatacao;
+			this.prefixo = formatacao == Formatacao.PREFIXADA ? "nfe:" : "";
+		}
+
+		private void declaracao() {
+			texto.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+			quebra();
+		}
+
+		private void abrir(String tag) {
+			indentar();
+			texto.append('<').append(prefixo).append(tag).append('>');
+			nivel++;
+			quebra();
+		}
+
+		private void fechar(String tag) {
+			nivel--;
+			indentar();
+			texto.append("</").append(prefixo).append(tag).append('>');
+			quebra();
+		}
+
+		private void tag(String tag, String valor) {
+			indentar();
+			texto.append('<').append(prefixo).append(tag).append('>').append(valor)
+					.append("</").append(prefixo).append(tag).append('>');
+			quebra();
+		}
+
+		private void indentar() {
+			if (formatacao == Formatacao.INDENTADA) {
+				for (int i = 0; i < nivel; i++) {
+					texto.append("  ");
+				}
+			}
+		}
+
+		private void quebra() {
+			if (formatacao == Formatacao.INDENTADA) {
+				texto.append(System.lineSeparator());
+			}
+		}
+
+		@Override
+		public String toString() {
+			return texto.toString();
+		}
+	}
+}
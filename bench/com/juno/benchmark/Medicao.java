@@ -0,0 +1,93 @@
+package com.juno.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+/**
+ * Harness mínimo de medição: executa rodadas de aquecimento, descartadas, e rodadas
+ * medidas, reportando o tempo médio por operação, a vazão e a quantidade de bytes
+ * alocados por operação na thread que executa o benchmark
+ */
+public class Medicao {
+
+	/**
+	 * Operação medida. O retorno é acumulado para que o JIT não elimine o trabalho
+	 */
+	public interface Operacao {
+		/**
+		 * @return valor qualquer derivado do trabalho executado
+		 * @throws Exception
+		 */
+		long executar() throws Exception;
+	}
+
+	private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	private final int rodadasAquecimento;
+	private final int rodadasMedidas;
+	private final long duracaoRodadaMilisegundos;
+	private long consumidor;
+
+	/**
+	 * @param rodadasAquecimento quantidade de rodadas de aquecimento do JIT
+	 * @param rodadasMedidas quantidade de rodadas medidas
+	 * @param duracaoRodadaMilisegundos duração mínima de cada rodada
+	 */
+	public Medicao(int rodadasAquecimento, int rodadasMedidas, long duracaoRodadaMilisegundos) {
+		this.rodadasAquecimento = rodadasAquecimento;
+		this.rodadasMedidas = rodadasMedidas;
+		this.duracaoRodadaMilisegundos = duracaoRodadaMilisegundos;
+	}
+
+	/**
+	 * Mede a operação e imprime o resultado
+	 * @param nome nome do benchmark
+	 * @param operacao operação medida
+	 * @param bytesPorOperacao bytes processados por operação, para o cálculo da vazão em MB/s; 0 para omitir
+	 * @throws Exception
+	 */
+	public void medir(String nome, Operacao operacao, long bytesPorOperacao) throws Exception {
+		for (int i = 0; i < rodadasAquecimento; i++) {
+			executarRodada(operacao);
+		}
+		long totalOperacoes = 0;
+		long totalNanos = 0;
+		long totalAlocado = 0;
+
+		for (int i = 0; i < rodadasMedidas; i++) {
+			long alocadoAntes = THREAD_MX_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+			long inicio = System.nanoTime();
+			long operacoes = executarRodada(operacao);
+			totalNanos += System.nanoTime() - inicio;
+			totalAlocado += THREAD_MX_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId()) - alocadoAntes;
+			totalOperacoes += operacoes;
+		}
+		double nanosPorOperacao = (double) totalNanos / totalOperacoes;
+		StringBuilder resultado = new StringBuilder(String.format(Locale.ROOT, "%-60s %12.1f ns/op %12.0f op/s %12d B/op",
+				nome, nanosPorOperacao, 1e9 / nanosPorOperacao, totalAlocado / totalOperacoes));
+
+		if (bytesPorOperacao > 0) {
+			resultado.append(String.format(Locale.ROOT, " %10.1f MB/s", bytesPorOperacao * 1e3 / nanosPorOperacao));
+		}
+		System.out.println(resultado.toString());
+	}
+
+	/**
+	 * @return valor acumulado das operações, impresso ao final para que o trabalho não seja eliminado
+	 */
+	public long getConsumidor() {
+		return consumidor;
+	}
+
+	private long executarRodada(Operacao operacao) throws Exception {
+		long fim = System.nanoTime() + duracaoRodadaMilisegundos * 1000000L;
+		long operacoes = 0;
+
+		do {
+			consumidor += operacao.executar();
+			operacoes++;
+		} while (System.nanoTime() < fim);
+
+		return operacoes;
+	}
+}
@@ -1,12 +1,27 @@
 package com.juno;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
-import java.util.Calendar;
+import java.util.Collection;
 import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+import com.juno.controller.AgendadorBuscas;
+import com.juno.controller.CoordenadorCluster;
+import com.juno.controller.MonitorDiretoriosOrigem;
 import com.juno.controller.SelecionadorNfe;
 import com.juno.exception.SelecionadorNfeException;
+import com.juno.metricas.ServidorMetricas;
+import com.juno.model.NfeTransportador;
+import com.juno.model.ParametrosExecucao;
+import com.juno.utils.CatalogoNfe;
+import com.juno.utils.FileUtils;
+import com.juno.utils.IndiceArquivosProcessados;
+import com.juno.utils.PontosControlePastas;
 
 /**
  * Service de seleção de XML de NF-e pelo CNPJ do transportador declarado
@@ -14,9 +29,10 @@ import com.juno.exception.SelecionadorNfeException;
  */
 public class NfeSelectorService {
 	
-	private static final int INTERVALO_EXECUCAO_MILISEGUNDOS = 900000; // = 900 segundos
-	private static final int INTERVALO_EXECUCAO_MINUTOS = 15; // Mesmo intervalo que o dado em milisegundos
 	private static final DateFormat DATE_FORMAT = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
+	private static final String INDICE_FILE_NAME = "indice-arquivos.dat";
+	private static final String PONTOS_CONTROLE_FILE_NAME = "pontos-controle.dat";
+	private static final String CATALOGO_FILE_NAME = "catalogo-nfe.dat";
 
 	/**
 	 * Única instância estática da classe deste serviço
@@ -44,7 +60,17 @@ public class NfeSelectorService {
 	/**
 	 * Flag para saber se esta instância do service foi parada
 	 */
-	private boolean parado = false;
+	private volatile boolean parado = false;
+
+	/**
+	 * Monitor dos diretórios de origem, quando configurado para monitorá-los
+	 */
+	private volatile MonitorDiretoriosOrigem monitor;
+
+	/**
+	 * Agendador das buscas, quando os diretórios são verificados a cada intervalo
+	 */
+	private volatile AgendadorBuscas agendador;
 
 	/**
 	 * Inicia a execução deste service
@@ -53,82 +79,261 @@ public class NfeSelectorService {
 		parado = false;
 		
 		System.out.println("NF-e Selector Service foi iniciado em " + DATE_FORMAT.format(new Date()));
-		System.out.println("Intervalo de varredura dos diretórios: " + INTERVALO_EXECUCAO_MINUTOS + " minutos" + System.lineSeparator());
 
-		adiarInicioSeNecessario();
+		// Carrega o índice dos arquivos já avaliados, mantido entre as buscas
+		IndiceArquivosProcessados indiceArquivos;
+		try {
+			indiceArquivos = IndiceArquivosProcessados.carregar(new File(new FileUtils().getDiretorioExecucao() + File.separator + INDICE_FILE_NAME));
+			
+		} catch (Exception e) {
+			System.err.println("Não foi possível carregar o índice de arquivos \"" + INDICE_FILE_NAME + "\": " + e.getMessage());
+			return;
+		}
 
-		while (!parado) {
-			synchronized (this) {
-				try {
-					long momentoDoInicio = System.currentTimeMillis();
-					
-					// Executando a função deste programa
-					new SelecionadorNfe().executar();
-					System.gc();
-					
-					long duracaoExecucao = System.currentTimeMillis() - momentoDoInicio;
-					System.out.println("Duração desta busca (em milisegundos): " + duracaoExecucao);
-					
-					if (duracaoExecucao > INTERVALO_EXECUCAO_MILISEGUNDOS) {
-						// Aguarda o dobro do tempo para a próxima execução
-						System.out.println("A última busca levou mais tempo: " + (duracaoExecucao / 1000)
-								+ " segundos. A pŕoxima será executada após o dobro do intervalo padrão");
-						this.wait(INTERVALO_EXECUCAO_MILISEGUNDOS * 2);
-						
-					} else {
-						// Aguarda o tempo de intervalo padrão para a próxima execução
-						this.wait(INTERVALO_EXECUCAO_MILISEGUNDOS);
-					}
-				} catch (InterruptedException ie) {
-					System.err.println(ie.getLocalizedMessage());
+		// Carrega os pontos de controle das buscas completas, para retomar uma busca interrompida
+		PontosControlePastas pontosControle;
+		try {
+			pontosControle = PontosControlePastas.carregar(new File(new FileUtils().getDiretorioExecucao() + File.separator + PONTOS_CONTROLE_FILE_NAME));
+			
+		} catch (Exception e) {
+			System.err.println("Não foi possível carregar os pontos de controle \"" + PONTOS_CONTROLE_FILE_NAME + "\": " + e.getMessage());
+			try {
+				indiceArquivos.close();
+			} catch (IOException ioe) {
+				System.err.println(ioe.getLocalizedMessage());
+			}
+			return;
+		}
 
-				} catch (SelecionadorNfeException sne) {
-					System.err.println(sne.getLocalizedMessage());
-					this.parar();
-					
-				} catch (Exception e) {
-					e.printStackTrace();
-					this.parar();
-				}
+		// Carrega o catálogo das NF-es já lidas. Sem ele, as buscas retroativas leem os diretórios novamente
+		CatalogoNfe catalogo = null;
+		try {
+			catalogo = CatalogoNfe.carregar(new File(new FileUtils().getDiretorioExecucao() + File.separator + CATALOGO_FILE_NAME));
+			if (catalogo.isVazio()) {
+				catalogo.importar(indiceArquivos);
+			}
+		} catch (Exception e) {
+			System.err.println("Não foi possível carregar o catálogo de NF-es \"" + CATALOGO_FILE_NAME + "\". As buscas continuarão sem o catálogo: "
+					+ e.getMessage());
+			catalogo = null;
+		}
+
+		// Verifica se os diretórios serão monitorados ao invés de verificados a cada intervalo
+		// O mesmo selecionador é usado em todas as buscas, mantendo a configuração carregada entre elas
+		SelecionadorNfe selecionadorNfe = new SelecionadorNfe(indiceArquivos, pontosControle);
+		selecionadorNfe.setCatalogo(catalogo);
+		ParametrosExecucao parametros;
+		NfeTransportador nfeTransportador;
+		try {
+			nfeTransportador = selecionadorNfe.carregarConfiguracao();
+			parametros = selecionadorNfe.getParametros();
+			
+		} catch (SelecionadorNfeException sne) {
+			System.err.println(sne.getLocalizedMessage());
+			parametros = null;
+			nfeTransportador = null;
+			
+		} catch (Exception e) {
+			e.printStackTrace();
+			parametros = null;
+			nfeTransportador = null;
+		}
+		
+		// Em modo cluster, obtém as concessões dos diretórios de origem deste nó antes da primeira busca
+		CoordenadorCluster coordenadorCluster = null;
+		if (parametros != null && parametros.isModoCluster()) {
+			coordenadorCluster = new CoordenadorCluster(parametros.getDiretorioCoordenacao(), parametros.getNomeNo(),
+					parametros.getDuracaoConcessaoSegundos(), nfeTransportador.getMapDiretorioOrigem());
+			try {
+				coordenadorCluster.iniciar();
+				selecionadorNfe.setCoordenadorCluster(coordenadorCluster);
+				System.out.println("Modo cluster: nó " + parametros.getNomeNo() + ", coordenação em " + parametros.getDiretorioCoordenacao());
+				
+			} catch (IOException e) {
+				System.err.println("Não foi possível iniciar o modo cluster em " + parametros.getDiretorioCoordenacao() + ": " + e.getMessage());
+				coordenadorCluster = null;
+				parametros = null;
+			}
+		}
+		
+		// Expõe as métricas das buscas em texto, se configurado. Via JMX elas são sempre expostas
+		ServidorMetricas servidorMetricas = null;
+		if (parametros != null && parametros.getPortaMetricas() > 0) {
+			try {
+				servidorMetricas = new ServidorMetricas(parametros.getPortaMetricas());
+				System.out.println("Métricas disponíveis em http://localhost:" + parametros.getPortaMetricas() + "/metrics");
+				
+			} catch (Exception e) {
+				System.err.println("Não foi possível expor as métricas na porta " + parametros.getPortaMetricas() + ": " + e.getMessage());
 			}
 		}
+		
+		if (parametros != null && parametros.isMonitorarDiretorios()) {
+			monitorarDiretorios(selecionadorNfe, nfeTransportador, parametros);
+			
+		} else if (parametros != null) {
+			verificarDiretoriosPorIntervalo(selecionadorNfe, parametros);
+		}
+		
+		if (servidorMetricas != null) {
+			servidorMetricas.parar();
+		}
+
+		// Sela os pacotes de entrega abertos enquanto as concessões deste nó ainda são válidas
+		try {
+			selecionadorNfe.encerrar();
+
+		} catch (IOException e) {
+			System.err.println("Não foi possível registrar as entregas dos pacotes: " + e.getLocalizedMessage());
+		}
+		if (coordenadorCluster != null) {
+			coordenadorCluster.encerrar();
+		}
+		
+		try {
+			indiceArquivos.close();
+			pontosControle.close();
+			if (catalogo != null) {
+				catalogo.close();
+			}
+			
+		} catch (IOException e) {
+			System.err.println(e.getLocalizedMessage());
+		}
 		System.out.println("NF-e Selector Service foi encerrado em " + DATE_FORMAT.format(new Date()));
 		System.out.println("__________________________________________________________" + System.lineSeparator());
 	}
 
 	/**
-	 * Encerra a instância deste service
+	 * Executa uma busca completa nos diretórios de origem a cada intervalo de execução,
+	 * adaptado ao volume de arquivos pelo {@link AgendadorBuscas}
+	 * @param selecionadorNfe selecionador usado em todas as buscas
+	 * @param parametros parâmetros de execução com os intervalos de execução
 	 */
-	private void parar() {
-		parado = true;
+	private void verificarDiretoriosPorIntervalo(SelecionadorNfe selecionadorNfe, ParametrosExecucao parametros) {
+		System.out.println("Intervalo de varredura dos diretórios: " + parametros.getIntervaloExecucaoMinutos() + " minutos (máximo de "
+				+ parametros.getIntervaloMaximoExecucaoMinutos() + " minutos sem arquivos novos)" + System.lineSeparator());
 		
+		AgendadorBuscas agendadorBuscas = new AgendadorBuscas(selecionadorNfe, parametros.getIntervaloExecucaoMinutos(),
+				parametros.getIntervaloMaximoExecucaoMinutos());
 		synchronized (this) {
-			this.notify();
+			if (parado) {
+				return;
+			}
+			agendador = agendadorBuscas;
+		}
+		try {
+			agendadorBuscas.executar();
+			
+		} catch (InterruptedException ie) {
+			System.err.println(ie.getLocalizedMessage());
+			agendadorBuscas.parar();
 		}
 	}
-	
+
 	/**
-	 * Adia a primeira execução de busca caso o instante do início da chamada do
-	 * programa não esteja "redondo" com o intervalo de execução dado em minutos
+	 * Monitora os diretórios de origem, selecionando os arquivos assim que são criados ou alterados.
+	 * Uma busca completa é feita ao iniciar, a cada intervalo de reconciliação e quando eventos forem
+	 * perdidos, garantindo que nenhum arquivo deixe de ser verificado
+	 * @param selecionadorNfe selecionador usado em todas as buscas
+	 * @param nfeTransportador objeto com os diretórios de origem que serão monitorados
+	 * @param parametros parâmetros de execução com o intervalo de reconciliação
 	 */
-	private void adiarInicioSeNecessario() {
-		Calendar calendar = Calendar.getInstance();
+	private void monitorarDiretorios(SelecionadorNfe selecionadorNfe, NfeTransportador nfeTransportador, ParametrosExecucao parametros) {
+		long intervaloReconciliacao = TimeUnit.MINUTES.toMillis(parametros.getIntervaloReconciliacaoMinutos());
+		System.out.println("Diretórios de origem monitorados. Intervalo de reconciliação: " + parametros.getIntervaloReconciliacaoMinutos() + " minutos" + System.lineSeparator());
 		
-		int minutoAtual = calendar.get(Calendar.MINUTE);
-		int segundoAtual = calendar.get(Calendar.SECOND);
+		long proximaReconciliacao = System.currentTimeMillis();
 		
-		if (minutoAtual % INTERVALO_EXECUCAO_MINUTOS != 0 || segundoAtual > 5) { // 5 segundos de tolerância
-			calendar.add(Calendar.MINUTE, INTERVALO_EXECUCAO_MINUTOS - (minutoAtual % INTERVALO_EXECUCAO_MINUTOS));
-			calendar.set(Calendar.SECOND, 0);
-			
+		while (!parado) {
 			try {
-				long diferencaEmMilisegundos = calendar.getTimeInMillis() - Calendar.getInstance().getTimeInMillis();
-				System.out.println("Primeira busca será realizada em " + DATE_FORMAT.format(calendar.getTime()));
+				if (monitor == null || !monitor.isMonitoramentoCompleto()) {
+					// Registra (novamente) os diretórios, antes da busca completa para não perder arquivos entre as duas etapas
+					synchronized (this) {
+						fecharMonitor();
+						
+						if (parado) {
+							break;
+						}
+						monitor = new MonitorDiretoriosOrigem(nfeTransportador.getMapDiretorioOrigem().values());
+					}
+					proximaReconciliacao = System.currentTimeMillis();
+				}
+				
+				if (System.currentTimeMillis() >= proximaReconciliacao || monitor.isBuscaCompletaNecessaria()) {
+					monitor.limparBuscaCompletaNecessaria();
+					long momentoDoInicio = System.currentTimeMillis();
+					
+					selecionadorNfe.executar();
+					
+					System.out.println("Duração desta busca (em milisegundos): " + (System.currentTimeMillis() - momentoDoInicio));
+					proximaReconciliacao = System.currentTimeMillis() + intervaloReconciliacao;
+				}
+				
+				long espera = proximaReconciliacao - System.currentTimeMillis();
+				if (selecionadorNfe.possuiArquivosAdiados()) {
+					// Os arquivos adiados são verificados novamente após o tempo de estabilização, mesmo sem novos eventos
+					espera = Math.min(espera, selecionadorNfe.getTempoEstabilizacaoMilisegundos());
+				}
+				// O padrão de nomes é obtido a cada espera, pois a configuração pode ter sido alterada na última busca
+				monitor.setPadraoNomeArquivos(selecionadorNfe.getPadraoNomeArquivos());
+				Map<String, Collection<File>> arquivosPorPasta = monitor.aguardarArquivos(espera);
+				
+				if (!arquivosPorPasta.isEmpty() || selecionadorNfe.possuiArquivosAdiados()) {
+					selecionadorNfe.executar(arquivosPorPasta);
+				}
+			} catch (ClosedWatchServiceException cwse) {
+				// O monitoramento foi encerrado pela parada do service
+				
+			} catch (InterruptedException ie) {
+				System.err.println(ie.getLocalizedMessage());
 				
-				Thread.sleep(diferencaEmMilisegundos);
+			} catch (SelecionadorNfeException sne) {
+				System.err.println(sne.getLocalizedMessage());
+				this.parar();
 				
-			} catch (InterruptedException e) {
+			} catch (Exception e) {
 				e.printStackTrace();
+				this.parar();
+			}
+		}
+		fecharMonitor();
+	}
+	
+	/**
+	 * Encerra o monitoramento dos diretórios, se houver
+	 */
+	private synchronized void fecharMonitor() {
+		if (monitor != null) {
+			try {
+				monitor.close();
+				
+			} catch (IOException e) {
+				System.err.println(e.getLocalizedMessage());
+			}
+			monitor = null;
+		}
+	}
+
+	/**
+	 * Encerra a instância deste service
+	 */
+	private void parar() {
+		parado = true;
+		
+		synchronized (this) {
+			if (agendador != null) {
+				// Interrompe a busca em andamento e cancela as próximas
+				agendador.parar();
+			}
+			if (monitor != null) {
+				// Interrompe a espera por eventos dos diretórios monitorados
+				try {
+					monitor.close();
+					
+				} catch (IOException e) {
+					System.err.println(e.getLocalizedMessage());
+				}
 			}
 		}
 	}
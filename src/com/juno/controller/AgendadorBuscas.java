@@ -0,0 +1,229 @@
+package com.juno.controller;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.juno.exception.SelecionadorNfeException;
+
+/**
+ * Agenda as buscas completas nos diretórios de origem em uma única thread, de modo que duas
+ * buscas nunca são executadas ao mesmo tempo. Cada busca é agendada somente ao término da
+ * anterior, com um intervalo que se adapta ao volume de arquivos:
+ * <ul>
+ * <li>uma busca que excedeu o intervalo e copiou arquivos indica acúmulo, e a próxima é iniciada em seguida</li>
+ * <li>uma busca que copiou arquivos dentro do intervalo mantém o intervalo configurado</li>
+ * <li>uma busca que não copiou arquivos dobra o intervalo, até o intervalo máximo</li>
+ * </ul>
+ * Uma busca que adiou arquivos ainda em gravação não é considerada ociosa e mantém o intervalo configurado. Os
+ * diretórios com arquivos adiados são verificados novamente após o tempo de estabilização, sem aguardar a
+ * próxima busca completa, até que não haja arquivos adiados.
+ */
+public class AgendadorBuscas {
+
+	private static final String FORMATO_DATA = "dd/MM/yyyy HH:mm:ss";
+	private static final long TOLERANCIA_INICIO_MILISEGUNDOS = 5000;
+
+	private final SelecionadorNfe selecionadorNfe;
+	private final long intervaloMilisegundos;
+	private final long intervaloMaximoMilisegundos;
+	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+	private final CountDownLatch encerramento = new CountDownLatch(1);
+	private volatile Future<?> proximaBusca;
+	private volatile Future<?> proximaVerificacaoAdiados;
+	private volatile long inicioProximaBusca;
+	private volatile boolean parado = false;
+	private long intervaloAtualMilisegundos;
+
+	/**
+	 * @param selecionadorNfe selecionador usado em todas as buscas
+	 * @param intervaloMinutos intervalo padrão entre as buscas
+	 * @param intervaloMaximoMinutos maior intervalo entre as buscas quando os diretórios não recebem arquivos
+	 */
+	public AgendadorBuscas(SelecionadorNfe selecionadorNfe, int intervaloMinutos, int intervaloMaximoMinutos) {
+		this.selecionadorNfe = selecionadorNfe;
+		this.intervaloMilisegundos = TimeUnit.MINUTES.toMillis(intervaloMinutos);
+		this.intervaloMaximoMilisegundos = Math.max(intervaloMilisegundos, TimeUnit.MINUTES.toMillis(intervaloMaximoMinutos));
+		this.intervaloAtualMilisegundos = intervaloMilisegundos;
+	}
+
+	/**
+	 * Agenda a primeira busca, alinhada ao intervalo configurado, e aguarda até que o agendador
+	 * seja parado ou uma busca termine com erro
+	 * @throws InterruptedException
+	 */
+	public void executar() throws InterruptedException {
+		long atrasoInicial = calcularAtrasoInicial();
+		if (atrasoInicial > 0) {
+			System.out.println("Primeira busca será realizada em " + formatarData(System.currentTimeMillis() + atrasoInicial));
+		}
+		agendar(atrasoInicial);
+
+		try {
+			encerramento.await();
+
+		} finally {
+			// Interrompe a busca em andamento, se houver, e aguarda o seu término
+			executor.shutdownNow();
+			ProcessadorPastaOrigem.aguardarTermino(executor);
+		}
+	}
+
+	/**
+	 * Para o agendador, interrompendo a busca em andamento
+	 */
+	public void parar() {
+		parado = true;
+
+		Future<?> busca = proximaBusca;
+		if (busca != null) {
+			busca.cancel(true);
+		}
+		Future<?> verificacao = proximaVerificacaoAdiados;
+		if (verificacao != null) {
+			verificacao.cancel(true);
+		}
+		encerramento.countDown();
+	}
+
+	private synchronized void agendar(long atrasoMilisegundos) {
+		if (parado) {
+			return;
+		}
+		inicioProximaBusca = System.currentTimeMillis() + atrasoMilisegundos;
+		proximaBusca = executor.schedule(new Runnable() {
+			@Override
+			public void run() {
+				executarBusca();
+			}
+		}, atrasoMilisegundos, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Agenda a verificação dos diretórios com arquivos adiados após o tempo de estabilização, se houver
+	 * arquivos adiados e a próxima busca completa não for iniciada antes disso
+	 */
+	private synchronized void agendarVerificacaoAdiados() {
+		long espera = selecionadorNfe.getTempoEstabilizacaoMilisegundos();
+		if (parado || !selecionadorNfe.possuiArquivosAdiados() || System.currentTimeMillis() + espera >= inicioProximaBusca) {
+			return;
+		}
+		proximaVerificacaoAdiados = executor.schedule(new Runnable() {
+			@Override
+			public void run() {
+				verificarArquivosAdiados();
+			}
+		}, espera, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Verifica novamente somente os diretórios com arquivos adiados, sem alterar o intervalo das buscas completas
+	 */
+	private void verificarArquivosAdiados() {
+		try {
+			selecionadorNfe.executar(Collections.<String, Collection<File>>emptyMap());
+			agendarVerificacaoAdiados();
+
+		} catch (InterruptedException ie) {
+			// A verificação foi interrompida pela parada do service
+			Thread.currentThread().interrupt();
+
+		} catch (SelecionadorNfeException sne) {
+			if (!parado) {
+				System.err.println(sne.getLocalizedMessage());
+			}
+			parar();
+
+		} catch (Exception e) {
+			if (!parado) {
+				e.printStackTrace();
+			}
+			parar();
+		}
+	}
+
+	/**
+	 * Executa uma busca completa e agenda a próxima conforme a duração e a quantidade de arquivos copiados
+	 */
+	private void executarBusca() {
+		try {
+			long momentoDoInicio = System.currentTimeMillis();
+
+			// Executando a função deste programa
+			int qtdeArquivosCopiados = selecionadorNfe.executar();
+
+			long duracaoExecucao = System.currentTimeMillis() - momentoDoInicio;
+			System.out.println("Duração desta busca (em milisegundos): " + duracaoExecucao);
+
+			long atraso;
+			if (duracaoExecucao > intervaloMilisegundos && qtdeArquivosCopiados > 0) {
+				// Há arquivos acumulados: a próxima busca é iniciada em seguida
+				System.out.println("A última busca levou mais tempo: " + (duracaoExecucao / 1000)
+						+ " segundos. A próxima será executada em seguida");
+				intervaloAtualMilisegundos = intervaloMilisegundos;
+				atraso = 0;
+
+			} else {
+				if (qtdeArquivosCopiados > 0 || selecionadorNfe.possuiArquivosAdiados()) {
+					// Arquivos copiados ou ainda em gravação: os diretórios não estão ociosos
+					intervaloAtualMilisegundos = intervaloMilisegundos;
+
+				} else {
+					// Nenhum arquivo novo: espaça as buscas até o intervalo máximo
+					intervaloAtualMilisegundos = Math.min(intervaloAtualMilisegundos * 2, intervaloMaximoMilisegundos);
+				}
+				atraso = Math.max(0, intervaloAtualMilisegundos - duracaoExecucao);
+				System.out.println("Próxima busca será realizada em " + formatarData(System.currentTimeMillis() + atraso));
+			}
+			agendar(atraso);
+			agendarVerificacaoAdiados();
+
+		} catch (InterruptedException ie) {
+			// A busca foi interrompida pela parada do service
+			Thread.currentThread().interrupt();
+
+		} catch (SelecionadorNfeException sne) {
+			if (!parado) {
+				System.err.println(sne.getLocalizedMessage());
+			}
+			parar();
+
+		} catch (Exception e) {
+			if (!parado) {
+				e.printStackTrace();
+			}
+			parar();
+		}
+	}
+
+	/**
+	 * Adia a primeira busca caso o instante atual não esteja "redondo" com o intervalo
+	 * de execução, contado a partir do início do dia
+	 * @return atraso da primeira busca em milisegundos
+	 */
+	private long calcularAtrasoInicial() {
+		Calendar inicioDoDia = Calendar.getInstance();
+		inicioDoDia.set(Calendar.HOUR_OF_DAY, 0);
+		inicioDoDia.set(Calendar.MINUTE, 0);
+		inicioDoDia.set(Calendar.SECOND, 0);
+		inicioDoDia.set(Calendar.MILLISECOND, 0);
+
+		long decorrido = (System.currentTimeMillis() - inicioDoDia.getTimeInMillis()) % intervaloMilisegundos;
+		if (decorrido <= TOLERANCIA_INICIO_MILISEGUNDOS) {
+			return 0;
+		}
+		return intervaloMilisegundos - decorrido;
+	}
+
+	private static String formatarData(long data) {
+		return new SimpleDateFormat(FORMATO_DATA).format(new Date(data));
+	}
+}
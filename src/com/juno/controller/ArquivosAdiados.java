@@ -0,0 +1,152 @@
+package com.juno.controller;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Arquivos de origem que ainda podem estar sendo gravados pelo emissor e cuja leitura foi adiada.
+ * Um arquivo é considerado estável quando a sua data de modificação é anterior ao tempo de
+ * estabilização ou, se o relógio do compartilhamento estiver adiantado, quando o seu tamanho e a
+ * sua data de modificação não mudam durante o tempo de estabilização desde o adiamento.
+ * <br>
+ * Os arquivos adiados não são registrados no índice e são verificados novamente na busca seguinte,
+ * completa ou de um lote de arquivos, sem que o diretório precise ser listado outra vez. A mesma
+ * instância é mantida entre as buscas, e cada diretório é alterado somente pelo seu processador
+ */
+public class ArquivosAdiados {
+
+	private final ConcurrentHashMap<File, Adiamento> adiamentos = new ConcurrentHashMap<>();
+	private volatile long tempoEstabilizacaoMilisegundos;
+
+	/**
+	 * @param tempoEstabilizacaoMilisegundos tempo sem alterações após o qual o arquivo pode ser lido; 0 para não adiar arquivos
+	 */
+	public void setTempoEstabilizacao(long tempoEstabilizacaoMilisegundos) {
+		this.tempoEstabilizacaoMilisegundos = tempoEstabilizacaoMilisegundos;
+	}
+
+	/**
+	 * @return tempo sem alterações após o qual o arquivo pode ser lido
+	 */
+	public long getTempoEstabilizacao() {
+		return tempoEstabilizacaoMilisegundos;
+	}
+
+	/**
+	 * Verifica se o arquivo pode ser lido, adiando-o se ainda não estiver estável
+	 * @param pastaOrigem diretório de origem do arquivo
+	 * @param arquivo arquivo candidato
+	 * @param tamanho tamanho atual do arquivo
+	 * @param dataModificacao data de modificação atual do arquivo
+	 * @return <b>true</b> se o arquivo está estável e pode ser lido; <b>false</b> se foi adiado
+	 */
+	public boolean verificarEstabilidade(String pastaOrigem, File arquivo, long tamanho, long dataModificacao) {
+		long tempoEstabilizacao = tempoEstabilizacaoMilisegundos;
+		if (tempoEstabilizacao <= 0) {
+			if (!adiamentos.isEmpty()) {
+				adiamentos.remove(arquivo);
+			}
+			return true;
+		}
+		long agora = System.currentTimeMillis();
+		Adiamento anterior = adiamentos.get(arquivo);
+		boolean inalterado = anterior != null && anterior.tamanho == tamanho && anterior.dataModificacao == dataModificacao;
+
+		if (agora - dataModificacao >= tempoEstabilizacao || (inalterado && agora - anterior.inicio >= tempoEstabilizacao)) {
+			if (anterior != null) {
+				adiamentos.remove(arquivo);
+			}
+			return true;
+		}
+		if (inalterado) {
+			anterior.ultimaVerificacao = agora;
+
+		} else {
+			adiamentos.put(arquivo, new Adiamento(pastaOrigem, tamanho, dataModificacao, agora));
+		}
+		return false;
+	}
+
+	/**
+	 * Adia o arquivo cuja leitura falhou enquanto ainda era gravado
+	 * @param pastaOrigem diretório de origem do arquivo
+	 * @param arquivo arquivo lido
+	 * @param tamanho tamanho atual do arquivo
+	 * @param dataModificacao data de modificação atual do arquivo
+	 */
+	public void adiar(String pastaOrigem, File arquivo, long tamanho, long dataModificacao) {
+		adiamentos.put(arquivo, new Adiamento(pastaOrigem, tamanho, dataModificacao, System.currentTimeMillis()));
+	}
+
+	/**
+	 * Descarta o adiamento de um arquivo removido do diretório de origem
+	 * @param arquivo arquivo adiado
+	 */
+	public void remover(File arquivo) {
+		adiamentos.remove(arquivo);
+	}
+
+	/**
+	 * @param pastaOrigem diretório de origem
+	 * @param verificadosAte instante a partir do qual os arquivos já verificados são desconsiderados
+	 * @return arquivos adiados do diretório que não foram verificados desde o instante informado
+	 */
+	public List<File> getArquivos(String pastaOrigem, long verificadosAte) {
+		List<File> arquivos = new ArrayList<>();
+
+		for (Entry<File, Adiamento> entry : adiamentos.entrySet()) {
+			if (entry.getValue().pastaOrigem.equals(pastaOrigem) && entry.getValue().ultimaVerificacao < verificadosAte) {
+				arquivos.add(entry.getKey());
+			}
+		}
+		return arquivos;
+	}
+
+	/**
+	 * @param pastasOrigem diretórios de origem atuais
+	 * @return diretórios, dentre os informados, que possuem arquivos adiados
+	 */
+	public List<String> getPastas(Collection<String> pastasOrigem) {
+		List<String> pastas = new ArrayList<>();
+
+		for (String pastaOrigem : pastasOrigem) {
+			for (Adiamento adiamento : adiamentos.values()) {
+				if (adiamento.pastaOrigem.equals(pastaOrigem)) {
+					pastas.add(pastaOrigem);
+					break;
+				}
+			}
+		}
+		return pastas;
+	}
+
+	/**
+	 * @return <b>true</b> se não há arquivos adiados
+	 */
+	public boolean isVazio() {
+		return adiamentos.isEmpty();
+	}
+
+	/**
+	 * Tamanho e data de modificação de um arquivo quando foi adiado
+	 */
+	private static class Adiamento {
+		private final String pastaOrigem;
+		private final long tamanho;
+		private final long dataModificacao;
+		private final long inicio;
+		private volatile long ultimaVerificacao;
+
+		private Adiamento(String pastaOrigem, long tamanho, long dataModificacao, long inicio) {
+			this.pastaOrigem = pastaOrigem;
+			this.tamanho = tamanho;
+			this.dataModificacao = dataModificacao;
+			this.inicio = inicio;
+			this.ultimaVerificacao = inicio;
+		}
+	}
+}
@@ -0,0 +1,352 @@
+package com.juno.controller;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Divide os diretórios de origem entre as instâncias do service que compartilham os mesmos diretórios,
+ * para que cada diretório seja processado por uma única instância (nó) de cada vez.
+ * <br>
+ * A coordenação é feita por arquivos de concessão em um diretório compartilhado por todos os nós:
+ * <ul>
+ * <li><i>no-[nome].lease</i>: indica que o nó está ativo até a data de expiração gravada no arquivo</li>
+ * <li><i>pasta-[propriedade].lease</i>: nó que detém o diretório de origem informado na propriedade
+ * (ex.: diretorioDeOrigem1) e a data de expiração da concessão</li>
+ * </ul>
+ * Os arquivos são lidos e alterados somente com o bloqueio exclusivo do arquivo ({@link FileChannel#lock()}),
+ * de modo que dois nós nunca obtêm a mesma concessão. As concessões são renovadas por uma thread própria
+ * a cada terço da sua duração. Cada nó detém no máximo a sua parte dos diretórios, conforme a quantidade
+ * de nós ativos: concessões excedentes são liberadas quando um nó entra no cluster, e as concessões de um
+ * nó que deixou de renová-las são obtidas pelos demais quando expiram.
+ * <br>
+ * As concessões dos diretórios de uma busca em andamento são renovadas até o seu término, mesmo que excedam a
+ * parte deste nó, para que outro nó não processe o mesmo diretório ao mesmo tempo. Se o registro do nó não puder
+ * ser renovado, as suas concessões deixam de ser consideradas e as próximas buscas não processam diretórios
+ * até uma renovação bem-sucedida.
+ * <br>
+ * As datas de expiração são comparadas com o relógio de cada nó, que devem estar sincronizados
+ */
+public class CoordenadorCluster {
+
+	private static final String PREFIXO_ARQUIVO_NO = "no-";
+	private static final String PREFIXO_ARQUIVO_PASTA = "pasta-";
+	private static final String EXTENSAO_ARQUIVO_CONCESSAO = ".lease";
+	private static final int TAMANHO_MAXIMO_CONCESSAO = 1024;
+
+	private final Path diretorioCoordenacao;
+	private final String nomeNo;
+	private final long duracaoConcessaoMilisegundos;
+	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+	// Diretórios de origem pela propriedade que os declara, em ordem, atualizados a cada carga da configuração
+	private volatile Map<String, String> mapDiretorioOrigem;
+
+	// Propriedades dos diretórios concedidos a este nó e dos diretórios da busca em andamento,
+	// acessadas com o bloqueio desta instância
+	private Set<String> propriedadesConcedidas = Collections.emptySet();
+	private Set<String> propriedadesEmBusca = Collections.emptySet();
+	private boolean primeiraRenovacao = true;
+	private boolean diretoriosAssumidos;
+
+	private final Runnable renovacao = new Runnable() {
+		@Override
+		public void run() {
+			renovarConcessoes();
+		}
+	};
+
+	/**
+	 * @param diretorioCoordenacao diretório compartilhado onde os arquivos de concessão são mantidos
+	 * @param nomeNo nome que identifica este nó entre os demais
+	 * @param duracaoConcessaoSegundos tempo, sem renovação, após o qual as concessões deste nó podem ser obtidas pelos demais
+	 * @param mapDiretorioOrigem diretórios de origem pela propriedade que os declara
+	 */
+	public CoordenadorCluster(String diretorioCoordenacao, String nomeNo, int duracaoConcessaoSegundos, Map<String, String> mapDiretorioOrigem) {
+		this.diretorioCoordenacao = Paths.get(diretorioCoordenacao);
+		this.nomeNo = nomeNo;
+		this.duracaoConcessaoMilisegundos = TimeUnit.SECONDS.toMillis(duracaoConcessaoSegundos);
+		setDiretoriosOrigem(mapDiretorioOrigem);
+	}
+
+	/**
+	 * Obtém as primeiras concessões e agenda as renovações
+	 * @throws IOException se o diretório de coordenação não puder ser criado
+	 */
+	public void iniciar() throws IOException {
+		Files.createDirectories(diretorioCoordenacao);
+		renovarConcessoes();
+
+		long intervaloRenovacao = Math.max(1, duracaoConcessaoMilisegundos / 3);
+		executor.scheduleWithFixedDelay(renovacao, intervaloRenovacao, intervaloRenovacao, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Para as renovações e libera as concessões deste nó, para que os demais as obtenham em seguida
+	 */
+	public void encerrar() {
+		executor.shutdownNow();
+		ProcessadorPastaOrigem.aguardarTermino(executor);
+
+		synchronized (this) {
+			for (String propriedade : propriedadesConcedidas) {
+				try {
+					atualizarConcessao(getArquivoPasta(propriedade), false);
+
+				} catch (IOException e) {
+					System.err.println("Não foi possível liberar a concessão do diretório " + propriedade + ": " + e.getMessage());
+				}
+			}
+			propriedadesConcedidas = Collections.emptySet();
+		}
+		try {
+			Files.deleteIfExists(getArquivoNo());
+
+		} catch (IOException e) {
+			System.err.println(e.getLocalizedMessage());
+		}
+	}
+
+	/**
+	 * Informa os diretórios de origem disputados pelos nós, após uma nova carga da configuração.
+	 * Todos os nós devem declarar cada diretório na mesma propriedade, mesmo que o caminho seja outro
+	 * @param mapDiretorioOrigem diretórios de origem pela propriedade que os declara
+	 */
+	public void setDiretoriosOrigem(Map<String, String> mapDiretorioOrigem) {
+		this.mapDiretorioOrigem = Collections.unmodifiableMap(new TreeMap<>(mapDiretorioOrigem));
+	}
+
+	/**
+	 * Inicia uma busca nos diretórios concedidos a este nó. As concessões destes diretórios não são liberadas
+	 * até {@link #finalizarBusca()}, mesmo que excedam a parte deste nó
+	 * @param pastas diretórios de origem da busca
+	 * @return somente os diretórios informados que estão concedidos a este nó
+	 */
+	public synchronized List<String> iniciarBusca(Collection<String> pastas) {
+		Map<String, String> pastasConcedidas = new HashMap<>();
+
+		for (Entry<String, String> entry : mapDiretorioOrigem.entrySet()) {
+			if (propriedadesConcedidas.contains(entry.getKey())) {
+				pastasConcedidas.put(entry.getValue(), entry.getKey());
+			}
+		}
+		List<String> pastasFiltradas = new ArrayList<>();
+		Set<String> emBusca = new HashSet<>();
+		for (String pasta : pastas) {
+			if (pastasConcedidas.containsKey(pasta)) {
+				pastasFiltradas.add(pasta);
+				emBusca.add(pastasConcedidas.get(pasta));
+			}
+		}
+		propriedadesEmBusca = emBusca;
+		return pastasFiltradas;
+	}
+
+	/**
+	 * Finaliza a busca iniciada por {@link #iniciarBusca(Collection)} e renova as concessões em seguida,
+	 * liberando as que excedem a parte deste nó
+	 */
+	public synchronized void finalizarBusca() {
+		propriedadesEmBusca = Collections.emptySet();
+		try {
+			executor.execute(renovacao);
+
+		} catch (RejectedExecutionException e) {
+			// O coordenador foi encerrado
+		}
+	}
+
+	/**
+	 * Informa se este nó assumiu diretórios de outro nó desde a última chamada. Os arquivos entregues pelo outro
+	 * nó não constam do manifesto de destino deste nó, que deve ser recarregado
+	 * @return <b>true</b> se algum diretório foi assumido depois das primeiras concessões
+	 */
+	public synchronized boolean verificarDiretoriosAssumidos() {
+		boolean assumidos = diretoriosAssumidos;
+		diretoriosAssumidos = false;
+		return assumidos;
+	}
+
+	/**
+	 * Renova o registro deste nó e as suas concessões, libera as excedentes e obtém as concessões livres ou
+	 * expiradas até completar a parte deste nó. As concessões da busca em andamento são renovadas primeiro e
+	 * nunca liberadas. Erros de I/O não interrompem as próximas renovações
+	 */
+	private synchronized void renovarConcessoes() {
+		try {
+			long agora = System.currentTimeMillis();
+			gravarNo(agora + duracaoConcessaoMilisegundos);
+
+			Map<String, String> diretorios = mapDiretorioOrigem;
+			int qtdeNosAtivos = Math.max(1, contarNosAtivos(agora));
+			int limiteConcessoes = (diretorios.size() + qtdeNosAtivos - 1) / qtdeNosAtivos;
+			Set<String> concedidas = new HashSet<>();
+
+			// Renova as concessões atuais até o limite, liberando as excedentes e as de diretórios removidos
+			Set<String> anteriores = propriedadesConcedidas;
+			List<String> ordemRenovacao = new ArrayList<>(propriedadesEmBusca);
+			for (String propriedade : anteriores) {
+				if (!propriedadesEmBusca.contains(propriedade)) {
+					ordemRenovacao.add(propriedade);
+				}
+			}
+			for (String propriedade : ordemRenovacao) {
+				boolean manter = propriedadesEmBusca.contains(propriedade)
+						|| (diretorios.containsKey(propriedade) && concedidas.size() < limiteConcessoes);
+
+				if (atualizarConcessaoComAviso(propriedade, manter) && manter) {
+					concedidas.add(propriedade);
+				}
+			}
+			// Obtém as concessões livres ou expiradas
+			for (String propriedade : diretorios.keySet()) {
+				if (concedidas.size() >= limiteConcessoes) {
+					break;
+				}
+				if (!concedidas.contains(propriedade) && atualizarConcessaoComAviso(propriedade, true)) {
+					concedidas.add(propriedade);
+					diretoriosAssumidos |= !primeiraRenovacao;
+				}
+			}
+			if (!concedidas.equals(anteriores)) {
+				System.out.println("Diretórios de origem deste nó (" + nomeNo + ", " + qtdeNosAtivos + " nós ativos): " + concedidas);
+			}
+			propriedadesConcedidas = Collections.unmodifiableSet(concedidas);
+			primeiraRenovacao = false;
+
+		} catch (IOException e) {
+			// Sem o registro renovado, as concessões deste nó podem ser obtidas pelos demais
+			System.err.println("Não foi possível renovar o registro do nó " + nomeNo + ": " + e.getMessage());
+			propriedadesConcedidas = Collections.emptySet();
+		}
+	}
+
+	private boolean atualizarConcessaoComAviso(String propriedade, boolean manter) {
+		try {
+			return atualizarConcessao(getArquivoPasta(propriedade), manter);
+
+		} catch (IOException e) {
+			// Sem acesso à concessão, o diretório deixa de ser processado por este nó até a próxima renovação
+			System.err.println("Não foi possível renovar a concessão do diretório " + propriedade + ": " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Obtém, renova ou libera a concessão com o arquivo bloqueado, de modo que a leitura e a gravação
+	 * não sejam intercaladas com as de outro nó
+	 * @param arquivo arquivo de concessão
+	 * @param manter <b>true</b> para obter ou renovar a concessão; <b>false</b> para liberá-la
+	 * @return <b>true</b> se a concessão pertence a este nó
+	 * @throws IOException
+	 */
+	private boolean atualizarConcessao(Path arquivo, boolean manter) throws IOException {
+		try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			// O bloqueio é liberado ao fechar o canal
+			canal.lock();
+			long agora = System.currentTimeMillis();
+			String[] concessao = ler(canal);
+			boolean deste = concessao != null && nomeNo.equals(concessao[0]);
+			boolean livre = concessao == null || Long.parseLong(concessao[1]) < agora;
+
+			if (manter && (deste || livre)) {
+				gravar(canal, nomeNo + "\n" + (agora + duracaoConcessaoMilisegundos) + "\n");
+				return true;
+			}
+			if (!manter && deste) {
+				gravar(canal, "");
+			}
+			return false;
+		}
+	}
+
+	private void gravarNo(long expiracao) throws IOException {
+		try (FileChannel canal = FileChannel.open(getArquivoNo(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			canal.lock();
+			gravar(canal, nomeNo + "\n" + expiracao + "\n");
+		}
+	}
+
+	/**
+	 * @return quantidade de nós com registro ainda não expirado, incluindo este
+	 */
+	private int contarNosAtivos(long agora) throws IOException {
+		int qtdeNosAtivos = 0;
+
+		try (DirectoryStream<Path> arquivos = Files.newDirectoryStream(diretorioCoordenacao, PREFIXO_ARQUIVO_NO + "*" + EXTENSAO_ARQUIVO_CONCESSAO)) {
+			for (Path arquivo : arquivos) {
+				try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+					canal.lock();
+					String[] registro = ler(canal);
+
+					if (registro != null && Long.parseLong(registro[1]) >= agora) {
+						qtdeNosAtivos++;
+					}
+				} catch (IOException e) {
+					// O registro foi removido pelo encerramento do nó
+				}
+			}
+		}
+		return qtdeNosAtivos;
+	}
+
+	/**
+	 * @return nome do nó e data de expiração gravados no arquivo, ou <b>null</b> se o arquivo estiver vazio ou inválido
+	 */
+	private String[] ler(FileChannel canal) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(canal.size(), TAMANHO_MAXIMO_CONCESSAO));
+		while (buffer.hasRemaining() && canal.read(buffer, buffer.position()) >= 0) {
+			// Lê o arquivo inteiro
+		}
+		String[] linhas = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8).split("\n");
+
+		if (linhas.length < 2 || !linhas[1].matches("\\d{1,18}")) {
+			return null;
+		}
+		return linhas;
+	}
+
+	private void gravar(FileChannel canal, String conteudo) throws IOException {
+		canal.truncate(0);
+		ByteBuffer buffer = ByteBuffer.wrap(conteudo.getBytes(StandardCharsets.UTF_8));
+		while (buffer.hasRemaining()) {
+			canal.write(buffer, buffer.position());
+		}
+		canal.force(true);
+	}
+
+	private Path getArquivoNo() {
+		return diretorioCoordenacao.resolve(PREFIXO_ARQUIVO_NO + getNomeArquivo(nomeNo) + EXTENSAO_ARQUIVO_CONCESSAO);
+	}
+
+	private Path getArquivoPasta(String propriedade) {
+		return diretorioCoordenacao.resolve(PREFIXO_ARQUIVO_PASTA + getNomeArquivo(propriedade) + EXTENSAO_ARQUIVO_CONCESSAO);
+	}
+
+	/**
+	 * @return nome informado somente com os caracteres aceitos em nomes de arquivos de qualquer sistema
+	 */
+	private static String getNomeArquivo(String nome) {
+		return nome.replaceAll("[^A-Za-z0-9._-]", "_");
+	}
+}
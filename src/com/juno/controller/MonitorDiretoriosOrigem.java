@@ -0,0 +1,159 @@
+package com.juno.controller;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Monitora os diretórios de origem através do {@link WatchService} e entrega os
+ * arquivos criados ou alterados, agrupados pelo diretório de origem. Os arquivos são filtrados
+ * como na listagem dos diretórios: os compactados e os que atendem ao padrão de nomes configurado.
+ * <br>
+ * Eventos perdidos (overflow) ou um diretório que deixou de ser monitorado são
+ * sinalizados para que uma busca completa seja feita
+ */
+public class MonitorDiretoriosOrigem implements Closeable {
+
+	private static final long ESPERA_ESTABILIZACAO_MILISEGUNDOS = 2000;
+	private static final long TEMPO_MAXIMO_LOTE_MILISEGUNDOS = 5000;
+	private static final int QTDE_MAXIMA_ARQUIVOS_POR_LOTE = 10000;
+
+	private final WatchService watchService;
+	private final Map<Path, String> mapPastaMonitorada = new HashMap<>();
+	private volatile PathMatcher padraoNomeArquivos;
+	private volatile boolean buscaCompletaNecessaria = false;
+	private volatile boolean monitoramentoCompleto = true;
+
+	/**
+	 * Registra os diretórios de origem para monitoramento
+	 * @param pastasOrigem diretórios de origem, como informados no arquivo de configuração
+	 * @throws IOException
+	 */
+	public MonitorDiretoriosOrigem(Collection<String> pastasOrigem) throws IOException {
+		watchService = FileSystems.getDefault().newWatchService();
+
+		try {
+			for (String pastaOrigem : pastasOrigem) {
+				Path pasta = Paths.get(pastaOrigem);
+				pasta.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+				mapPastaMonitorada.put(pasta, pastaOrigem);
+			}
+		} catch (IOException e) {
+			watchService.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Informa o padrão de nomes usado na listagem dos diretórios, aplicado também aos eventos
+	 * @param padraoNomeArquivos padrão de nomes ou <b>null</b> para entregar todos os arquivos
+	 */
+	public void setPadraoNomeArquivos(PathMatcher padraoNomeArquivos) {
+		this.padraoNomeArquivos = padraoNomeArquivos;
+	}
+
+	/**
+	 * Aguarda a criação ou alteração de arquivos nos diretórios monitorados. Após
+	 * o primeiro evento, os eventos seguintes são acumulados até que os diretórios
+	 * fiquem sem alterações por alguns segundos, evitando entregar arquivos ainda em gravação.
+	 * Com alterações contínuas, o lote é entregue alguns segundos após o primeiro evento, e
+	 * imediatamente se eventos forem perdidos, pois uma busca completa será necessária
+	 * @param tempoMaximoMilisegundos tempo máximo de espera pelo primeiro evento
+	 * @return arquivos alterados agrupados pelo diretório de origem; vazio se não houve alterações
+	 * @throws InterruptedException
+	 */
+	public Map<String, Collection<File>> aguardarArquivos(long tempoMaximoMilisegundos) throws InterruptedException {
+		Map<String, Collection<File>> arquivosPorPasta = new LinkedHashMap<>();
+		WatchKey watchKey = watchService.poll(Math.max(0, tempoMaximoMilisegundos), TimeUnit.MILLISECONDS);
+		long fimLote = System.currentTimeMillis() + TEMPO_MAXIMO_LOTE_MILISEGUNDOS; // contado a partir do primeiro evento
+		int qtdeArquivos = 0;
+
+		while (watchKey != null) {
+			qtdeArquivos += registrarEventos(watchKey, arquivosPorPasta);
+
+			long tempoRestante = fimLote - System.currentTimeMillis();
+			if (qtdeArquivos >= QTDE_MAXIMA_ARQUIVOS_POR_LOTE || tempoRestante <= 0 || buscaCompletaNecessaria) {
+				break;
+			}
+			watchKey = watchService.poll(Math.min(ESPERA_ESTABILIZACAO_MILISEGUNDOS, tempoRestante), TimeUnit.MILLISECONDS);
+		}
+		return arquivosPorPasta;
+	}
+
+	/**
+	 * @return <b>true</b> se algum evento foi perdido e uma busca completa é necessária
+	 */
+	public boolean isBuscaCompletaNecessaria() {
+		return buscaCompletaNecessaria;
+	}
+
+	/**
+	 * @return <b>false</b> se algum diretório deixou de ser monitorado e os diretórios precisam ser registrados novamente
+	 */
+	public boolean isMonitoramentoCompleto() {
+		return monitoramentoCompleto;
+	}
+
+	/**
+	 * Indica que a busca completa foi feita
+	 */
+	public void limparBuscaCompletaNecessaria() {
+		buscaCompletaNecessaria = false;
+	}
+
+	@Override
+	public void close() throws IOException {
+		watchService.close();
+	}
+
+	/**
+	 * Acumula os arquivos dos eventos da chave informada que seriam avaliados pela listagem do diretório
+	 * @return quantidade de arquivos acumulados
+	 */
+	private int registrarEventos(WatchKey watchKey, Map<String, Collection<File>> arquivosPorPasta) {
+		Path pasta = (Path) watchKey.watchable();
+		String pastaOrigem = mapPastaMonitorada.get(pasta);
+		int qtdeArquivos = 0;
+
+		for (WatchEvent<?> evento : watchKey.pollEvents()) {
+			if (evento.kind() == StandardWatchEventKinds.OVERFLOW) {
+				buscaCompletaNecessaria = true;
+				continue;
+			}
+			Path nomeArquivo = (Path) evento.context();
+
+			if (ProcessadorPastaOrigem.isCandidato(nomeArquivo, padraoNomeArquivos)) {
+				Collection<File> arquivos = arquivosPorPasta.get(pastaOrigem);
+
+				if (arquivos == null) {
+					arquivos = new LinkedHashSet<>();
+					arquivosPorPasta.put(pastaOrigem, arquivos);
+				}
+				if (arquivos.add(pasta.resolve(nomeArquivo).toFile())) {
+					qtdeArquivos++;
+				}
+			}
+		}
+		if (!watchKey.reset()) {
+			// O diretório não pode mais ser monitorado (removido ou indisponível na rede)
+			System.err.println("O diretório de ORIGEM \"" + pastaOrigem + "\" deixou de ser monitorado");
+			buscaCompletaNecessaria = true;
+			monitoramentoCompleto = false;
+		}
+		return qtdeArquivos;
+	}
+}
@@ -0,0 +1,275 @@
+package com.juno.controller;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+import com.juno.model.ChaveAcesso;
+import com.juno.model.SituacaoArquivo;
+import com.juno.utils.IndiceArquivosProcessados;
+import com.juno.utils.LocalizadorCnpjTransportador;
+import com.juno.utils.ManifestoDestino;
+import com.juno.utils.PacoteEntrega;
+
+/**
+ * Pacotes de entrega abertos, um por pasta do dia do destino de cada transportador, compartilhados pelos
+ * processadores de todos os diretórios de origem e mantidos entre as buscas. As buscas frequentes (com os
+ * diretórios monitorados, uma a cada lote de eventos) acrescentam arquivos ao mesmo segmento, ao invés de
+ * criarem um pacote pequeno a cada busca.
+ * <br>
+ * Um segmento é selado ao atingir a quantidade máxima de arquivos, quando o dia muda (a pasta do dia anterior
+ * não recebe mais arquivos) e no encerramento do serviço. Ao término de cada busca, os segmentos abertos são
+ * somente descarregados no disco.
+ * <br>
+ * As entregas gravadas nos pacotes só são registradas no índice depois que o seu segmento é selado. Até lá, os
+ * arquivos de origem ficam pendentes: não são avaliados novamente pelas buscas seguintes, e o ponto de controle
+ * do seu diretório não avança além do mais antigo deles. As reservas das entregas de um segmento descartado são
+ * liberadas, e os seus arquivos são gravados novamente na busca seguinte
+ */
+public class PacotesDestino {
+
+	private final ConcurrentMap<String, PacoteEntrega> mapPacotePorDiretorio = new ConcurrentHashMap<>();
+	private final Queue<Entrega> entregasPendentes = new ConcurrentLinkedQueue<>();
+	private final Set<String> caminhosPendentes = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/**
+	 * Obtém o pacote em que os arquivos da pasta do dia são gravados, criando-o na primeira entrega
+	 * @param diretorioArquivoCopia pasta do dia do destino do transportador
+	 * @param arquivosPorPacote quantidade máxima de arquivos em cada segmento de um novo pacote
+	 * @return pacote da pasta
+	 */
+	public PacoteEntrega obterPacote(String diretorioArquivoCopia, int arquivosPorPacote) {
+		PacoteEntrega pacote = mapPacotePorDiretorio.get(diretorioArquivoCopia);
+
+		if (pacote == null) {
+			PacoteEntrega novoPacote = new PacoteEntrega(diretorioArquivoCopia, arquivosPorPacote);
+			pacote = mapPacotePorDiretorio.putIfAbsent(diretorioArquivoCopia, novoPacote);
+			if (pacote == null) {
+				pacote = novoPacote;
+			}
+		}
+		return pacote;
+	}
+
+	/**
+	 * Registra a entrega de um arquivo, ou de uma entrada de arquivo compactado, gravado no pacote
+	 * @param pastaOrigem diretório de origem do arquivo
+	 * @param pacote pacote em que o arquivo foi gravado
+	 * @param segmento segmento em que o arquivo foi gravado
+	 * @param caminho caminho do arquivo, ou da entrada, registrado no índice
+	 * @param tamanho tamanho do arquivo
+	 * @param dataModificacao data de modificação do arquivo de origem
+	 * @param cnpjTransportador chave numérica do CNPJ do transportador
+	 * @param chaveAcesso chave de acesso reservada ou <b>null</b>
+	 * @param manifesto manifesto em que o nome do arquivo foi reservado
+	 * @param nomeArquivo nome do arquivo no pacote
+	 * @return entrega pendente até que o seu segmento seja selado
+	 */
+	public Entrega adicionar(String pastaOrigem, PacoteEntrega pacote, int segmento, String caminho, long tamanho, long dataModificacao,
+			long cnpjTransportador, ChaveAcesso chaveAcesso, ManifestoDestino manifesto, String nomeArquivo) {
+		Entrega entrega = new Entrega(pastaOrigem, pacote, segmento, caminho, tamanho, dataModificacao, cnpjTransportador, chaveAcesso,
+				manifesto, nomeArquivo);
+		caminhosPendentes.add(caminho);
+		entregasPendentes.add(entrega);
+		return entrega;
+	}
+
+	/**
+	 * Registra um arquivo compactado cujas entradas selecionadas foram gravadas em pacotes. O arquivo só
+	 * é registrado no índice depois que os segmentos de todas as suas entradas forem selados
+	 * @param pastaOrigem diretório de origem do arquivo
+	 * @param caminho caminho do arquivo compactado
+	 * @param tamanho tamanho do arquivo
+	 * @param dataModificacao data de modificação do arquivo
+	 * @param assinatura assinatura do conteúdo do arquivo
+	 * @param entradas entregas das entradas gravadas em pacotes
+	 */
+	public void adicionarCompactado(String pastaOrigem, String caminho, long tamanho, long dataModificacao, String assinatura,
+			List<Entrega> entradas) {
+		caminhosPendentes.add(caminho);
+		entregasPendentes.add(new Entrega(pastaOrigem, caminho, tamanho, dataModificacao, assinatura, entradas));
+	}
+
+	/**
+	 * @param caminho caminho de um arquivo de origem
+	 * @return <b>true</b> se o arquivo foi gravado em um segmento que ainda não foi selado
+	 */
+	public boolean isPendente(String caminho) {
+		return !caminhosPendentes.isEmpty() && caminhosPendentes.contains(caminho);
+	}
+
+	/**
+	 * @param pastaOrigem diretório de origem
+	 * @return menor data de modificação dos arquivos pendentes do diretório ou {@link Long#MAX_VALUE} se não houver
+	 */
+	public long getDataModificacaoPendente(String pastaOrigem) {
+		long dataModificacao = Long.MAX_VALUE;
+		for (Entrega entrega : entregasPendentes) {
+			if (entrega.pastaOrigem.equals(pastaOrigem)) {
+				dataModificacao = Math.min(dataModificacao, entrega.dataModificacao);
+			}
+		}
+		return dataModificacao;
+	}
+
+	/**
+	 * Finaliza a busca: sela os pacotes das pastas que não são mais do dia atual, descarrega os demais
+	 * e registra no índice as entregas dos segmentos selados
+	 * @param diretoriosAtuais pastas do dia atual do destino de cada transportador
+	 * @param indiceArquivos índice em que as entregas são registradas
+	 * @throws IOException se não for possível registrar as entregas no índice
+	 */
+	public void finalizarBusca(Collection<String> diretoriosAtuais, IndiceArquivosProcessados indiceArquivos) throws IOException {
+		Iterator<Map.Entry<String, PacoteEntrega>> iterator = mapPacotePorDiretorio.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<String, PacoteEntrega> entry = iterator.next();
+			try {
+				if (diretoriosAtuais.contains(entry.getKey())) {
+					entry.getValue().descarregar();
+				} else {
+					iterator.remove();
+					entry.getValue().selar();
+				}
+			} catch (IOException e) {
+				System.err.println("Erro ao gravar o pacote do diretório \"" + entry.getKey() + "\": " + e.getMessage());
+			}
+		}
+		registrarEntregas(indiceArquivos);
+	}
+
+	/**
+	 * Sela todos os pacotes abertos e registra no índice as entregas dos segmentos selados
+	 * @param indiceArquivos índice em que as entregas são registradas
+	 * @throws IOException se não for possível registrar as entregas no índice
+	 */
+	public void encerrar(IndiceArquivosProcessados indiceArquivos) throws IOException {
+		finalizarBusca(Collections.<String>emptySet(), indiceArquivos);
+	}
+
+	/**
+	 * Registra no índice as entregas dos segmentos selados e libera as reservas das entregas dos segmentos
+	 * descartados. As entregas dos segmentos abertos continuam pendentes
+	 */
+	private void registrarEntregas(IndiceArquivosProcessados indiceArquivos) throws IOException {
+		List<Entrega> entregas = new ArrayList<>();
+		Entrega entrega;
+		while ((entrega = entregasPendentes.poll()) != null) {
+			entregas.add(entrega);
+		}
+		for (Entrega entregaAtual : entregas) {
+			Boolean selada = entregaAtual.isSelada();
+
+			if (selada == null) {
+				entregasPendentes.add(entregaAtual);
+				continue;
+			}
+			caminhosPendentes.remove(entregaAtual.caminho);
+
+			if (!selada) {
+				if (entregaAtual.manifesto != null) {
+					entregaAtual.manifesto.liberar(entregaAtual.nomeArquivo);
+					if (entregaAtual.chaveAcesso != null) {
+						indiceArquivos.liberarChave(entregaAtual.chaveAcesso);
+					}
+				}
+			} else if (entregaAtual.situacao == SituacaoArquivo.PROCESSADO) {
+				indiceArquivos.registrarCompactado(entregaAtual.caminho, entregaAtual.tamanho, entregaAtual.dataModificacao,
+						entregaAtual.assinatura);
+			} else {
+				indiceArquivos.registrar(entregaAtual.caminho, entregaAtual.tamanho, entregaAtual.dataModificacao,
+						entregaAtual.cnpjTransportador, entregaAtual.chaveAcesso, entregaAtual.situacao);
+			}
+		}
+	}
+
+	/**
+	 * Entrega gravada em um pacote, registrada no índice somente depois que o seu segmento for selado
+	 */
+	public static class Entrega {
+		private final String pastaOrigem;
+		private final PacoteEntrega pacote;
+		private final int segmento;
+		private final List<Entrega> entradas; // entradas gravadas em pacotes, somente para arquivos compactados
+		private final String caminho;
+		private final long tamanho;
+		private final long dataModificacao;
+		private final long cnpjTransportador;
+		private final ChaveAcesso chaveAcesso;
+		private final String assinatura; // somente para arquivos compactados
+		private final SituacaoArquivo situacao;
+		private final ManifestoDestino manifesto;
+		private final String nomeArquivo;
+
+		/**
+		 * Entrega de um arquivo, ou de uma entrada de arquivo compactado, gravado no pacote
+		 */
+		private Entrega(String pastaOrigem, PacoteEntrega pacote, int segmento, String caminho, long tamanho, long dataModificacao,
+				long cnpjTransportador, ChaveAcesso chaveAcesso, ManifestoDestino manifesto, String nomeArquivo) {
+			this.pastaOrigem = pastaOrigem;
+			this.pacote = pacote;
+			this.segmento = segmento;
+			this.entradas = null;
+			this.caminho = caminho;
+			this.tamanho = tamanho;
+			this.dataModificacao = dataModificacao;
+			this.cnpjTransportador = cnpjTransportador;
+			this.chaveAcesso = chaveAcesso;
+			this.assinatura = null;
+			this.situacao = SituacaoArquivo.COPIADO;
+			this.manifesto = manifesto;
+			this.nomeArquivo = nomeArquivo;
+		}
+
+		/**
+		 * Arquivo compactado processado, registrado somente se todas as suas entradas foram seladas
+		 */
+		private Entrega(String pastaOrigem, String caminho, long tamanho, long dataModificacao, String assinatura, List<Entrega> entradas) {
+			this.pastaOrigem = pastaOrigem;
+			this.pacote = null;
+			this.segmento = 0;
+			this.entradas = entradas;
+			this.caminho = caminho;
+			this.tamanho = tamanho;
+			this.dataModificacao = dataModificacao;
+			this.cnpjTransportador = LocalizadorCnpjTransportador.CNPJ_NAO_ENCONTRADO;
+			this.chaveAcesso = null;
+			this.assinatura = assinatura;
+			this.situacao = SituacaoArquivo.PROCESSADO;
+			this.manifesto = null;
+			this.nomeArquivo = null;
+		}
+
+		/**
+		 * @return <b>true</b> se a entrega foi selada, <b>false</b> se foi descartada ou <b>null</b> se o segmento ainda
+		 * está aberto. Um arquivo compactado é descartado se alguma das suas entradas foi descartada
+		 */
+		private Boolean isSelada() {
+			if (entradas == null) {
+				if (pacote.isSelado(segmento)) {
+					return Boolean.TRUE;
+				}
+				return pacote.isAberto(segmento) ? null : Boolean.FALSE;
+			}
+			Boolean selada = Boolean.TRUE;
+			for (Entrega entrada : entradas) {
+				Boolean entradaSelada = entrada.isSelada();
+				if (entradaSelada == Boolean.FALSE) {
+					return Boolean.FALSE;
+				}
+				if (entradaSelada == null) {
+					selada = null;
+				}
+			}
+			return selada;
+		}
+	}
+}
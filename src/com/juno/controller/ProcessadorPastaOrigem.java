@@ -0,0 +1,1385 @@
+package com.juno.controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.juno.exception.CopiaDivergenteException;
+import com.juno.exception.SelecionadorNfeException;
+import com.juno.metricas.MetricasSelecao;
+import com.juno.metricas.MetricasSelecao.Contador;
+import com.juno.metricas.MetricasSelecao.Etapa;
+import com.juno.model.ChaveAcesso;
+import com.juno.model.OrdemLeitura;
+import com.juno.model.SituacaoArquivo;
+import com.juno.utils.ArquivoCompactado;
+import com.juno.utils.CatalogoNfe;
+import com.juno.utils.FileUtils;
+import com.juno.utils.IndiceArquivosProcessados;
+import com.juno.utils.LocalizadorCnpjTransportador;
+import com.juno.utils.ManifestoDestino;
+import com.juno.utils.OrcamentoIO;
+import com.juno.utils.PacoteEntrega;
+import com.juno.utils.PontosControlePastas;
+import com.juno.utils.SomaConteudo;
+
+/**
+ * Processa um diretório de origem em etapas: listagem dos arquivos, leitura e
+ * localização do CNPJ do transportador em paralelo por um pool limitado de threads e, por fim, a cópia
+ * dos arquivos selecionados por outro pool, próprio para a gravação no destino. As etapas se sobrepõem:
+ * os arquivos são enviados para leitura à medida que são listados e para cópia à medida que as leituras
+ * são concluídas, de modo que um destino lento não interrompe a leitura da origem enquanto houver espaço
+ * na fila de cópias. Com a fila cheia, a listagem aguarda a conclusão de uma cópia.
+ * <br>
+ * A reserva do arquivo no destino e a contagem de arquivos copiados e de erros são feitas somente pela
+ * thread que executa este processador. Erros transitórios de I/O na gravação do destino são repetidos
+ * com intervalos crescentes e só são contabilizados como erro quando as tentativas se esgotam.
+ * <br>
+ * Arquivos modificados há menos tempo que o tempo de estabilização, e arquivos cuja leitura falhou por terem sido
+ * alterados durante a leitura, ainda podem estar sendo gravados pelo emissor: a sua leitura é adiada para a próxima
+ * busca (ver {@link ArquivosAdiados}), sem registro no índice e sem contabilizar erro.
+ * <br>
+ * Arquivos compactados (.zip e .xml.gz) são avaliados por inteiro pela thread de leitura: cada entrada
+ * é descompactada em memória e, se selecionada, gravada diretamente no destino, sem extração para o disco
+ * <br>
+ * Na entrega em pacotes, os arquivos selecionados são gravados nos pacotes de {@link PacotesDestino}, mantidos entre as
+ * buscas. As entregas só são registradas no índice depois que o segmento do pacote em que foram gravadas é selado; até lá,
+ * os arquivos gravados são ignorados pelas buscas seguintes e o ponto de controle não avança além do mais antigo deles
+ * <br>
+ * Na busca completa, depois que todos os arquivos candidatos são conhecidos (ao término da listagem ou, com a fila de
+ * prioridade, ao término da listagem para a fila), o ponto de controle do diretório também é registrado durante a busca,
+ * a cada lote de avaliações concluídas, com a menor data de modificação dos arquivos ainda não concluídos. Uma busca
+ * interrompida é retomada a partir deste ponto, e não do ponto de controle da busca anterior
+ * <br>
+ * Os arquivos lidos são registrados no {@link CatalogoNfe}. Os arquivos obtidos do catálogo, anteriores ao período da
+ * listagem, são enviados para seleção antes dela, com o CNPJ do transportador catalogado e sem nova leitura
+ * <br>
+ * Com uma {@link OrdemLeitura} diferente da ordem da listagem, os arquivos listados são mantidos em uma fila de
+ * prioridade pela data de modificação e enviados para leitura ao término da listagem. A fila é limitada: ao excedê-la,
+ * os arquivos de menor prioridade são descartados da fila e enviados por uma segunda listagem, na ordem do diretório,
+ * depois dos arquivos da fila. Na ordem dos mais recentes, os arquivos obtidos do catálogo são enviados por último
+ */
+public class ProcessadorPastaOrigem implements Callable<Integer> {
+
+	private static final String FORMATO_DATA = "dd/MM/yyyy HH:mm:ss";
+	private static final long TEMPO_MAXIMO_TERMINO_SEGUNDOS = 30;
+	private static final int QTDE_MAXIMA_LEITURAS_PENDENTES_POR_THREAD = 256;
+	private static final int QTDE_MAXIMA_COPIAS_PENDENTES_POR_THREAD = 64;
+	private static final int EXPOENTE_MAXIMO_ESPERA_TENTATIVA = 10;
+
+	/**
+	 * Ordena os candidatos da fila de prioridade da menor para a maior prioridade
+	 */
+	private static final Comparator<Candidato> COMPARADOR_PRIORIDADE = new Comparator<Candidato>() {
+		@Override
+		public int compare(Candidato candidato1, Candidato candidato2) {
+			return Long.compare(candidato1.prioridade, candidato2.prioridade);
+		}
+	};
+
+	/**
+	 * Localizadores livres, reaproveitados entre as leituras e entre as buscas para que os seus
+	 * buffers diretos não sejam alocados novamente. Cada leitura usa um localizador exclusivo
+	 */
+	private static final Queue<LocalizadorCnpjTransportador> LOCALIZADORES_LIVRES = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Somas livres, usadas na verificação das cópias e reaproveitadas da mesma forma que os localizadores
+	 */
+	private static final Queue<SomaConteudo> SOMAS_LIVRES = new ConcurrentLinkedQueue<>();
+
+	private final String pastaOrigem;
+	private final long dataModificacaoMinima;
+	private final Map<Long, String> mapDiretorioCopiaPorCnpj;
+	private final int quantidadeThreadsLeitura;
+	private final int quantidadeThreadsCopia;
+	private final int toleranciaErros;
+	private final Map<Long, ManifestoDestino> mapManifestoPorCnpj;
+	private final IndiceArquivosProcessados indiceArquivos;
+	private final FileUtils fileUtils;
+	private Collection<File> arquivos;
+	private MetricasSelecao metricas = new MetricasSelecao();
+	private boolean buscaRecursiva;
+	private PathMatcher padraoNomeArquivos;
+	private PontosControlePastas pontosControle;
+	private long dataMinimaConfigurada;
+	private int tentativasCopia = 1;
+	private long esperaEntreTentativasMilisegundos;
+	private ArquivosAdiados arquivosAdiados;
+	private int arquivosPorPacote;
+	private boolean verificarCopias;
+	private OrdemLeitura ordemLeitura = OrdemLeitura.LISTAGEM;
+	private int tamanhoFilaPrioridade = Integer.MAX_VALUE;
+	private PacotesDestino pacotesDestino;
+	private OrcamentoIO orcamentoIO;
+	private CatalogoNfe catalogo;
+	private Collection<CatalogoNfe.Entrada> entradasCatalogo;
+
+	// Estado do processamento, acessado somente pela thread que executa este processador
+	private CompletionService<AvaliacaoArquivo> leituras;
+	private int qtdeLeiturasPendentes;
+	private CompletionService<AvaliacaoArquivo> copias;
+	private int qtdeCopiasPendentes;
+	private int qtdeArquivosCopiados;
+	private int qtdeErros;
+	private PriorityQueue<Candidato> filaPrioridade; // null enquanto os arquivos são enviados sem priorização
+	private long limiteFilaPrioridade; // maior prioridade descartada da fila, enviada pela segunda listagem
+	private long inicioListagem;
+	private long dataPontoControle; // último ponto de controle registrado para este diretório
+	private long dataModificacaoNaoEnviada = Long.MIN_VALUE; // menor data dos candidatos ainda não enviados; MIN_VALUE se desconhecida
+	private final TreeMap<Long, Integer> qtdePendentesPorData = new TreeMap<>(); // avaliações enviadas e não concluídas
+	private int qtdeAvaliacoesConcluidas;
+
+	/**
+	 * @param pastaOrigem diretório de origem a ser processado
+	 * @param dataModificacaoMinima somente os arquivos modificados depois desta data são listados
+	 * @param mapDiretorioCopiaPorCnpj diretório para onde serão copiados os arquivos de cada transportador,
+	 * pela chave numérica do CNPJ (ver {@link LocalizadorCnpjTransportador#converterCnpj(String)})
+	 * @param quantidadeThreadsLeitura tamanho do pool de threads de leitura deste diretório
+	 * @param quantidadeThreadsCopia tamanho do pool de threads que gravam os arquivos selecionados no destino
+	 * @param toleranciaErros quantidade de erros de I/O tolerados neste diretório
+	 * @param mapManifestoPorCnpj manifesto dos arquivos já entregues no destino de cada transportador,
+	 * compartilhado entre os diretórios
+	 * @param indiceArquivos índice dos arquivos já avaliados
+	 * @param fileUtils utilitário de arquivos
+	 */
+	public ProcessadorPastaOrigem(String pastaOrigem, long dataModificacaoMinima, Map<Long, String> mapDiretorioCopiaPorCnpj,
+			int quantidadeThreadsLeitura, int quantidadeThreadsCopia, int toleranciaErros, Map<Long, ManifestoDestino> mapManifestoPorCnpj,
+			IndiceArquivosProcessados indiceArquivos, FileUtils fileUtils) {
+		this.pastaOrigem = pastaOrigem;
+		this.dataModificacaoMinima = dataModificacaoMinima;
+		this.mapDiretorioCopiaPorCnpj = mapDiretorioCopiaPorCnpj;
+		this.quantidadeThreadsLeitura = quantidadeThreadsLeitura;
+		this.quantidadeThreadsCopia = quantidadeThreadsCopia;
+		this.toleranciaErros = toleranciaErros;
+		this.mapManifestoPorCnpj = mapManifestoPorCnpj;
+		this.indiceArquivos = indiceArquivos;
+		this.fileUtils = fileUtils;
+	}
+
+	/**
+	 * Informa os arquivos que serão processados no lugar da listagem do diretório
+	 * @param arquivos arquivos criados ou alterados no diretório de origem
+	 */
+	public void setArquivos(Collection<File> arquivos) {
+		this.arquivos = arquivos;
+	}
+
+	/**
+	 * Informa onde serão registrados os contadores e as latências deste diretório
+	 * @param metricas métricas do diretório nesta busca
+	 */
+	public void setMetricas(MetricasSelecao metricas) {
+		this.metricas = metricas;
+	}
+
+	/**
+	 * Informa se os subdiretórios do diretório de origem também serão percorridos na listagem
+	 * @param buscaRecursiva <b>true</b> para percorrer os subdiretórios
+	 */
+	public void setBuscaRecursiva(boolean buscaRecursiva) {
+		this.buscaRecursiva = buscaRecursiva;
+	}
+
+	/**
+	 * Informa o padrão que o nome dos arquivos deve atender para serem avaliados
+	 * @param padraoNomeArquivos padrão de nomes ou <b>null</b> para avaliar todos os arquivos
+	 */
+	public void setPadraoNomeArquivos(PathMatcher padraoNomeArquivos) {
+		this.padraoNomeArquivos = padraoNomeArquivos;
+	}
+
+	/**
+	 * Informa onde será registrado o ponto de controle deste diretório durante e ao término da busca completa
+	 * @param pontosControle pontos de controle das buscas
+	 * @param dataMinimaConfigurada data mínima do config.properties em vigor nesta busca
+	 */
+	public void setPontosControle(PontosControlePastas pontosControle, long dataMinimaConfigurada) {
+		this.pontosControle = pontosControle;
+		this.dataMinimaConfigurada = dataMinimaConfigurada;
+	}
+
+	/**
+	 * Informa quantas vezes a gravação de um arquivo no destino é tentada antes de ser contabilizada como erro
+	 * @param tentativasCopia quantidade de tentativas, incluindo a primeira
+	 * @param esperaEntreTentativasMilisegundos espera antes da segunda tentativa, dobrada a cada nova tentativa
+	 */
+	public void setTentativasCopia(int tentativasCopia, long esperaEntreTentativasMilisegundos) {
+		this.tentativasCopia = tentativasCopia;
+		this.esperaEntreTentativasMilisegundos = esperaEntreTentativasMilisegundos;
+	}
+
+	/**
+	 * Informa onde são mantidos os arquivos cuja leitura foi adiada. Os arquivos adiados deste diretório
+	 * são verificados novamente ao término da listagem ou do lote de arquivos
+	 * @param arquivosAdiados arquivos adiados, mantidos entre as buscas
+	 */
+	public void setArquivosAdiados(ArquivosAdiados arquivosAdiados) {
+		this.arquivosAdiados = arquivosAdiados;
+	}
+
+	/**
+	 * Informa se os arquivos selecionados são entregues em pacotes ZIP ao invés de um arquivo por NF-e
+	 * @param arquivosPorPacote quantidade máxima de arquivos em cada segmento do pacote; 0 para copiar os arquivos um a um
+	 * @param pacotesDestino pacotes abertos, mantidos entre as buscas. Obrigatório se <i>arquivosPorPacote</i> for maior que 0
+	 */
+	public void setArquivosPorPacote(int arquivosPorPacote, PacotesDestino pacotesDestino) {
+		this.arquivosPorPacote = arquivosPorPacote;
+		this.pacotesDestino = pacotesDestino;
+	}
+
+	/**
+	 * Informa se as cópias são verificadas pela soma SHA-256 do conteúdo gravado no destino, que é registrada
+	 * no manifesto do destino. Os arquivos entregues em pacotes não são verificados
+	 * @param verificarCopias <b>true</b> para verificar as cópias
+	 */
+	public void setVerificarCopias(boolean verificarCopias) {
+		this.verificarCopias = verificarCopias;
+	}
+
+	/**
+	 * Informa a ordem em que os arquivos listados são enviados para leitura
+	 * @param ordemLeitura ordem de leitura
+	 * @param tamanhoFilaPrioridade quantidade máxima de arquivos mantidos na fila de prioridade; os demais são
+	 * enviados por uma segunda listagem. Desconsiderado na ordem da listagem
+	 */
+	public void setOrdemLeitura(OrdemLeitura ordemLeitura, int tamanhoFilaPrioridade) {
+		this.ordemLeitura = ordemLeitura;
+		this.tamanhoFilaPrioridade = tamanhoFilaPrioridade;
+	}
+
+	/**
+	 * Informa o orçamento de I/O em que as leituras e as gravações deste diretório são debitadas
+	 * @param orcamentoIO orçamento compartilhado pelos diretórios ou <b>null</b> para não limitar
+	 */
+	public void setOrcamentoIO(OrcamentoIO orcamentoIO) {
+		this.orcamentoIO = orcamentoIO;
+	}
+
+	/**
+	 * Informa o catálogo onde são registrados os arquivos lidos e, ao término da busca completa, a cobertura do diretório
+	 * @param catalogo catálogo de NF-es ou <b>null</b> para não catalogar os arquivos
+	 */
+	public void setCatalogo(CatalogoNfe catalogo) {
+		this.catalogo = catalogo;
+	}
+
+	/**
+	 * Informa os arquivos obtidos do catálogo, modificados antes do período da listagem, que serão selecionados na busca completa
+	 * @param entradasCatalogo arquivos catalogados dos transportadores buscados
+	 */
+	public void setEntradasCatalogo(Collection<CatalogoNfe.Entrada> entradasCatalogo) {
+		this.entradasCatalogo = entradasCatalogo;
+	}
+
+	/**
+	 * Seleciona e copia os arquivos NF-e referentes aos transportadores encontrados no diretório
+	 * @return quantidade de arquivos copiados
+	 * @throws SelecionadorNfeException se o limite de tolerância à erros de I/O for excedido
+	 */
+	@Override
+	public Integer call() throws Exception {
+		inicioListagem = System.currentTimeMillis();
+		if (pontosControle != null) {
+			dataPontoControle = pontosControle.getDataMinima(pastaOrigem, dataMinimaConfigurada);
+		}
+		ExecutorService executorLeitura = Executors.newFixedThreadPool(quantidadeThreadsLeitura);
+		ExecutorService executorCopia = Executors.newFixedThreadPool(quantidadeThreadsCopia);
+		try {
+			leituras = new ExecutorCompletionService<>(executorLeitura);
+			copias = new ExecutorCompletionService<>(executorCopia);
+
+			// Etapa de listagem: envia os arquivos candidatos para leitura à medida que são listados,
+			// ou ao término da listagem na ordem de leitura configurada
+			if (ordemLeitura != OrdemLeitura.LISTAGEM) {
+				filaPrioridade = new PriorityQueue<>(11, COMPARADOR_PRIORIDADE);
+				limiteFilaPrioridade = Long.MIN_VALUE;
+			}
+			if (arquivos == null) {
+				if (entradasCatalogo != null && ordemLeitura != OrdemLeitura.MAIS_RECENTES) {
+					enviarEntradasCatalogo();
+				}
+				listarArquivos(false);
+				if (enviarFilaPrioridade()) {
+					listarArquivos(true);
+				}
+				if (entradasCatalogo != null && ordemLeitura == OrdemLeitura.MAIS_RECENTES) {
+					enviarEntradasCatalogo();
+				}
+			} else {
+				enviarArquivos(false);
+				if (enviarFilaPrioridade()) {
+					enviarArquivos(true);
+				}
+			}
+			verificarArquivosAdiados(inicioListagem);
+			dataModificacaoNaoEnviada = Long.MAX_VALUE;
+
+			// Etapa de seleção: consome as leituras restantes na ordem em que são concluídas
+			while (qtdeLeiturasPendentes > 0) {
+				processarLeitura(leituras.take().get());
+			}
+			
+			// Etapa de cópia: aguarda as cópias restantes
+			while (qtdeCopiasPendentes > 0) {
+				processarCopia(copias.take().get());
+			}
+			
+			// Ponto de controle: a próxima busca completa lista somente os arquivos modificados a partir
+			// do início desta listagem, ou do arquivo mais antigo gravado em um pacote ainda não selado.
+			// As avaliações são gravadas no índice antes do ponto de controle
+			if (arquivos == null && pontosControle != null) {
+				indiceArquivos.gravar();
+				long dataMinima = inicioListagem;
+				if (pacotesDestino != null) {
+					dataMinima = Math.min(dataMinima, pacotesDestino.getDataModificacaoPendente(pastaOrigem));
+				}
+				pontosControle.registrar(pastaOrigem, dataMinimaConfigurada, dataMinima);
+			}
+			if (arquivos == null && catalogo != null) {
+				catalogo.registrarCobertura(pastaOrigem, dataModificacaoMinima, inicioListagem);
+			}
+		} finally {
+			executorLeitura.shutdownNow();
+			executorCopia.shutdownNow();
+			aguardarTermino(executorLeitura);
+			aguardarTermino(executorCopia);
+		}
+		
+		StringBuilder mensagem = new StringBuilder();
+		mensagem.append(qtdeArquivosCopiados);
+		mensagem.append(" arquivos NF-e copiados do diretório ");
+		mensagem.append(pastaOrigem);
+		mensagem.append(" em ");
+		mensagem.append(new SimpleDateFormat(FORMATO_DATA).format(new Date()));
+		System.out.println(mensagem.toString());
+		
+		return qtdeArquivosCopiados;
+	}
+
+	/**
+	 * Percorre o diretório de origem, e os seus subdiretórios se a busca for recursiva, sem
+	 * carregar a listagem inteira em memória. Os atributos de cada entrada são lidos uma única vez
+	 * @param segundaListagem <b>true</b> para enviar somente os arquivos descartados da fila de prioridade
+	 * @throws Exception
+	 */
+	private void listarArquivos(boolean segundaListagem) throws Exception {
+		Path raiz = Paths.get(pastaOrigem);
+		Deque<Path> diretorios = new ArrayDeque<>();
+		diretorios.add(raiz);
+		long nanosListagem = 0;
+
+		try {
+			while (!diretorios.isEmpty()) {
+				Path diretorio = diretorios.poll();
+				long inicioListagem = System.nanoTime();
+
+				try (DirectoryStream<Path> entradas = Files.newDirectoryStream(diretorio)) {
+					Iterator<Path> iterator = entradas.iterator();
+
+					while (iterator.hasNext()) {
+						Path entrada = iterator.next();
+						BasicFileAttributes atributos;
+						try {
+							atributos = Files.readAttributes(entrada, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+							
+						} catch (NoSuchFileException e) {
+							// A entrada foi removida durante a listagem
+							continue;
+						}
+						nanosListagem += System.nanoTime() - inicioListagem;
+
+						if (atributos.isDirectory()) {
+							if (buscaRecursiva) {
+								diretorios.add(entrada);
+							}
+						} else if (atributos.isRegularFile() && isCandidato(entrada)) {
+							if (atributos.lastModifiedTime().toMillis() > dataModificacaoMinima) {
+								enviarCandidato(entrada.toFile(), atributos, segundaListagem);
+
+							} else if (!segundaListagem) {
+								metricas.incrementar(Contador.ARQUIVOS_FORA_DO_PERIODO);
+							}
+						}
+						inicioListagem = System.nanoTime();
+					}
+					nanosListagem += System.nanoTime() - inicioListagem;
+
+				} catch (IOException | DirectoryIteratorException e) {
+					if (diretorio.equals(raiz)) {
+						throw new SelecionadorNfeException("Não foi possível listar os arquivos do diretório " + pastaOrigem + System.lineSeparator());
+					}
+					System.err.println("Não foi possível listar os arquivos do diretório " + diretorio + ": " + e.getMessage());
+					registrarErro();
+				}
+			}
+		} finally {
+			metricas.registrarLatencia(Etapa.LISTAGEM, nanosListagem);
+		}
+	}
+
+	/**
+	 * Envia os arquivos informados no lugar da listagem do diretório
+	 * @param segundaListagem <b>true</b> para enviar somente os arquivos descartados da fila de prioridade
+	 * @throws Exception
+	 */
+	private void enviarArquivos(boolean segundaListagem) throws Exception {
+		for (File arquivo : arquivos) {
+			try {
+				BasicFileAttributes atributos = Files.readAttributes(arquivo.toPath(), BasicFileAttributes.class);
+
+				if (atributos.isRegularFile() && isCandidato(arquivo.toPath())) {
+					enviarCandidato(arquivo, atributos, segundaListagem);
+				}
+			} catch (NoSuchFileException e) {
+				// O arquivo foi removido depois do evento
+			}
+		}
+	}
+
+	/**
+	 * Envia o arquivo listado para leitura ou o mantém na fila de prioridade. Ao exceder o tamanho da fila, os
+	 * arquivos de menor prioridade são descartados dela e o limite da fila passa a ser a maior prioridade descartada
+	 * @param arquivo arquivo candidato
+	 * @param atributos atributos lidos na listagem
+	 * @param segundaListagem <b>true</b> para enviar o arquivo somente se este foi descartado da fila de prioridade
+	 * @throws Exception
+	 */
+	private void enviarCandidato(File arquivo, BasicFileAttributes atributos, boolean segundaListagem) throws Exception {
+		if (segundaListagem) {
+			// Os arquivos acima do limite foram enviados pela fila ou foram modificados depois do início da listagem
+			if (calcularPrioridade(atributos) <= limiteFilaPrioridade) {
+				enviarParaLeitura(arquivo, atributos);
+			}
+			return;
+		}
+		if (filaPrioridade == null) {
+			enviarParaLeitura(arquivo, atributos);
+			return;
+		}
+		long prioridade = calcularPrioridade(atributos);
+		if (prioridade <= limiteFilaPrioridade) {
+			// Será enviado pela segunda listagem
+			return;
+		}
+		filaPrioridade.add(new Candidato(arquivo, atributos, prioridade));
+
+		if (filaPrioridade.size() > tamanhoFilaPrioridade) {
+			// Os arquivos com a mesma prioridade do descartado também são descartados, para que a segunda
+			// listagem os identifique somente pela prioridade
+			limiteFilaPrioridade = filaPrioridade.poll().prioridade;
+			while (!filaPrioridade.isEmpty() && filaPrioridade.peek().prioridade <= limiteFilaPrioridade) {
+				filaPrioridade.poll();
+			}
+		}
+	}
+
+	/**
+	 * Envia para leitura os arquivos da fila de prioridade, da maior para a menor prioridade. Os arquivos
+	 * listados em seguida são enviados diretamente
+	 * @return <b>true</b> se arquivos foram descartados da fila e devem ser enviados por uma segunda listagem
+	 * @throws Exception
+	 */
+	private boolean enviarFilaPrioridade() throws Exception {
+		if (filaPrioridade == null) {
+			return false;
+		}
+		Candidato[] candidatos = filaPrioridade.toArray(new Candidato[filaPrioridade.size()]);
+		filaPrioridade = null;
+		Arrays.sort(candidatos, Collections.reverseOrder(COMPARADOR_PRIORIDADE));
+
+		// Sem segunda listagem nem entradas do catálogo enviadas depois da fila, todos os candidatos estão na fila. Ordenados
+		// pela data de modificação, a menor data dos ainda não enviados é a do próximo ou a do último deles
+		boolean candidatosConhecidos = limiteFilaPrioridade == Long.MIN_VALUE
+				&& (entradasCatalogo == null || ordemLeitura != OrdemLeitura.MAIS_RECENTES);
+		long dataUltimoCandidato = candidatos.length > 0 ? candidatos[candidatos.length - 1].atributos.lastModifiedTime().toMillis() : 0;
+
+		for (int i = 0; i < candidatos.length; i++) {
+			if (candidatosConhecidos) {
+				dataModificacaoNaoEnviada = Math.min(candidatos[i].atributos.lastModifiedTime().toMillis(), dataUltimoCandidato);
+			}
+			enviarParaLeitura(candidatos[i].arquivo, candidatos[i].atributos);
+			candidatos[i] = null;
+		}
+		if (candidatosConhecidos) {
+			dataModificacaoNaoEnviada = Long.MAX_VALUE;
+		}
+		if (limiteFilaPrioridade == Long.MIN_VALUE) {
+			return false;
+		}
+		System.out.println("A fila de prioridade do diretório " + pastaOrigem + " excedeu " + tamanhoFilaPrioridade
+				+ " arquivos. Os arquivos restantes serão enviados por uma segunda listagem");
+		return true;
+	}
+
+	/**
+	 * @return prioridade do arquivo na ordem de leitura configurada: quanto maior, antes o arquivo é lido
+	 */
+	private long calcularPrioridade(BasicFileAttributes atributos) {
+		long dataModificacao = atributos.lastModifiedTime().toMillis();
+		return ordemLeitura == OrdemLeitura.MAIS_ANTIGOS ? -dataModificacao : dataModificacao;
+	}
+
+	/**
+	 * Envia para seleção os arquivos obtidos do catálogo que não foram alterados desde a sua leitura. Um arquivo
+	 * alterado é lido novamente se a sua data de modificação ainda for anterior ao período da listagem
+	 * @throws Exception
+	 */
+	private void enviarEntradasCatalogo() throws Exception {
+		Path raiz = Paths.get(pastaOrigem);
+
+		for (CatalogoNfe.Entrada entrada : entradasCatalogo) {
+			Path caminho = Paths.get(entrada.getCaminho());
+			if ((!buscaRecursiva && !raiz.equals(caminho.getParent())) || !isCandidato(caminho)) {
+				continue;
+			}
+			BasicFileAttributes atributos;
+			try {
+				atributos = Files.readAttributes(caminho, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+
+			} catch (NoSuchFileException e) {
+				// O arquivo foi removido desde a sua leitura
+				continue;
+			}
+			long dataModificacao = atributos.lastModifiedTime().toMillis();
+
+			if (!atributos.isRegularFile() || dataModificacao > dataModificacaoMinima) {
+				// Um arquivo modificado no período da listagem é enviado por ela
+				continue;
+			}
+			if (atributos.size() == entrada.getTamanho() && dataModificacao == entrada.getDataModificacao()) {
+				metricas.incrementar(Contador.ARQUIVOS_DO_CATALOGO);
+				enviarParaLeitura(caminho.toFile(), atributos, entrada);
+
+			} else {
+				enviarParaLeitura(caminho.toFile(), atributos, null);
+			}
+		}
+	}
+
+	/**
+	 * Verifica novamente os arquivos adiados deste diretório que não foram encontrados na listagem ou no lote
+	 * de arquivos, enviando para leitura os que já estão estáveis
+	 * @param inicioProcessamento instante em que a listagem ou o lote de arquivos começou
+	 * @throws Exception
+	 */
+	private void verificarArquivosAdiados(long inicioProcessamento) throws Exception {
+		if (arquivosAdiados == null) {
+			return;
+		}
+		for (File arquivo : arquivosAdiados.getArquivos(pastaOrigem, inicioProcessamento)) {
+			try {
+				BasicFileAttributes atributos = Files.readAttributes(arquivo.toPath(), BasicFileAttributes.class);
+
+				if (atributos.isRegularFile()) {
+					enviarParaLeitura(arquivo, atributos);
+				} else {
+					arquivosAdiados.remover(arquivo);
+				}
+			} catch (NoSuchFileException e) {
+				// O arquivo foi removido ou renomeado pelo emissor
+				arquivosAdiados.remover(arquivo);
+			}
+		}
+	}
+
+	/**
+	 * @return <b>true</b> se o nome do arquivo atende ao padrão de nomes configurado
+	 */
+	private boolean isNomeAceito(Path arquivo) {
+		return isNomeAceito(arquivo, padraoNomeArquivos);
+	}
+
+	/**
+	 * @return <b>true</b> se o arquivo deve ser avaliado (ver {@link #isCandidato(Path, PathMatcher)})
+	 */
+	private boolean isCandidato(Path arquivo) {
+		return isCandidato(arquivo, padraoNomeArquivos);
+	}
+
+	/**
+	 * @param arquivo caminho ou nome do arquivo
+	 * @param padraoNomeArquivos padrão de nomes ou <b>null</b> para aceitar todos os arquivos
+	 * @return <b>true</b> se o nome do arquivo atende ao padrão de nomes
+	 */
+	static boolean isNomeAceito(Path arquivo, PathMatcher padraoNomeArquivos) {
+		return padraoNomeArquivos == null || padraoNomeArquivos.matches(arquivo.getFileName());
+	}
+
+	/**
+	 * Verifica se o arquivo deve ser avaliado, tanto na listagem do diretório quanto nos eventos dos diretórios monitorados
+	 * @param arquivo caminho ou nome do arquivo
+	 * @param padraoNomeArquivos padrão de nomes ou <b>null</b> para aceitar todos os arquivos
+	 * @return <b>true</b> se o arquivo deve ser avaliado: arquivos compactados são sempre avaliados,
+	 * e o padrão de nomes é aplicado às suas entradas
+	 */
+	static boolean isCandidato(Path arquivo, PathMatcher padraoNomeArquivos) {
+		return ArquivoCompactado.isArquivoCompactado(arquivo.getFileName().toString()) || isNomeAceito(arquivo, padraoNomeArquivos);
+	}
+
+	/**
+	 * Envia o arquivo para leitura e consome as leituras e cópias já concluídas, para que as cópias comecem
+	 * antes do fim da listagem. Quando o limite de leituras pendentes é atingido, aguarda a conclusão
+	 * de uma delas, limitando a memória usada em diretórios muito grandes
+	 * @param arquivo arquivo candidato
+	 * @param atributos atributos lidos na listagem
+	 * @throws Exception
+	 */
+	private void enviarParaLeitura(File arquivo, BasicFileAttributes atributos) throws Exception {
+		metricas.incrementar(Contador.ARQUIVOS_LISTADOS);
+		enviarParaLeitura(arquivo, atributos, null);
+	}
+
+	/**
+	 * Envia o arquivo para leitura, ou somente para seleção se o CNPJ do transportador já foi catalogado
+	 * @param arquivo arquivo candidato
+	 * @param atributos atributos lidos na listagem
+	 * @param entradaCatalogo arquivo catalogado, não alterado desde a sua leitura, ou <b>null</b>
+	 * @throws Exception
+	 */
+	private void enviarParaLeitura(final File arquivo, BasicFileAttributes atributos, final CatalogoNfe.Entrada entradaCatalogo) throws Exception {
+		final long tamanho = atributos.size();
+		final long dataModificacao = atributos.lastModifiedTime().toMillis();
+
+		if (arquivosAdiados != null && !arquivosAdiados.verificarEstabilidade(pastaOrigem, arquivo, tamanho, dataModificacao)) {
+			// O arquivo ainda pode estar sendo gravado e será verificado novamente na próxima busca
+			metricas.incrementar(Contador.ARQUIVOS_ADIADOS);
+			return;
+		}
+		if (qtdeLeiturasPendentes >= quantidadeThreadsLeitura * QTDE_MAXIMA_LEITURAS_PENDENTES_POR_THREAD) {
+			processarLeitura(leituras.take().get());
+		}
+
+		leituras.submit(new Callable<AvaliacaoArquivo>() {
+			@Override
+			public AvaliacaoArquivo call() {
+				AvaliacaoArquivo avaliacao = new AvaliacaoArquivo(arquivo, tamanho, dataModificacao);
+				avaliacao.entradaCatalogo = entradaCatalogo;
+				return avaliarArquivo(avaliacao);
+			}
+		});
+		qtdeLeiturasPendentes++;
+		Integer qtdePendentes = qtdePendentesPorData.get(dataModificacao);
+		qtdePendentesPorData.put(dataModificacao, qtdePendentes == null ? 1 : qtdePendentes + 1);
+
+		Future<AvaliacaoArquivo> leituraConcluida;
+		while ((leituraConcluida = leituras.poll()) != null) {
+			processarLeitura(leituraConcluida.get());
+		}
+		Future<AvaliacaoArquivo> copiaConcluida;
+		while ((copiaConcluida = copias.poll()) != null) {
+			processarCopia(copiaConcluida.get());
+		}
+	}
+
+	/**
+	 * Envia o arquivo selecionado para cópia. Quando o limite de cópias pendentes é atingido, o destino
+	 * não está acompanhando a leitura, e a listagem e as leituras aguardam a conclusão de uma cópia
+	 * @param avaliacao avaliação do arquivo reservado no destino
+	 * @throws Exception
+	 */
+	private void enviarParaCopia(final AvaliacaoArquivo avaliacao) throws Exception {
+		if (qtdeCopiasPendentes >= quantidadeThreadsCopia * QTDE_MAXIMA_COPIAS_PENDENTES_POR_THREAD) {
+			metricas.incrementar(Contador.ESPERAS_FILA_COPIA);
+			processarCopia(copias.take().get());
+		}
+		copias.submit(new Callable<AvaliacaoArquivo>() {
+			@Override
+			public AvaliacaoArquivo call() {
+				return copiarArquivo(avaliacao);
+			}
+		});
+		qtdeCopiasPendentes++;
+	}
+
+	/**
+	 * Reserva o arquivo avaliado no destino e o envia para cópia se este foi selecionado
+	 * @param avaliacao avaliação concluída
+	 * @throws SelecionadorNfeException se o limite de tolerância à erros de I/O for excedido
+	 * @throws Exception
+	 */
+	private void processarLeitura(AvaliacaoArquivo avaliacao) throws Exception {
+		qtdeLeiturasPendentes--;
+		qtdeArquivosCopiados += avaliacao.qtdeEntradasCopiadas;
+
+		if (avaliacao.erro != null) {
+			if (!adiarGravacaoEmAndamento(avaliacao)) {
+				System.err.println("Erro na leitura do arquivo \"" + avaliacao.arquivo.getName() + "\": " + avaliacao.erro.getMessage());
+				registrarErro();
+			}
+
+		} else if (avaliacao.arquivoCopia != null && avaliacao.manifesto.reservar(avaliacao.arquivoCopia.getName())) {
+			// O nome reservado no manifesto e a chave de acesso reservada no índice impedem
+			// que outro diretório copie o mesmo arquivo ou outro arquivo da mesma NF-e
+			if (avaliacao.chaveAcesso != null && !indiceArquivos.reservarChave(avaliacao.chaveAcesso)) {
+				// A chave pertence à outra cópia: somente o nome reservado por esta avaliação é liberado
+				avaliacao.manifesto.liberar(avaliacao.arquivoCopia.getName());
+				metricas.incrementar(Contador.ARQUIVOS_IGNORADOS);
+				registrar(avaliacao, SituacaoArquivo.DUPLICADO);
+				concluirAvaliacao(avaliacao);
+				return;
+			}
+			// A avaliação é concluída na etapa de cópia
+			enviarParaCopia(avaliacao);
+			return;
+		}
+		concluirAvaliacao(avaliacao);
+	}
+
+	/**
+	 * Verifica, após um erro de leitura, se o arquivo foi alterado ou removido desde a listagem, indicando que
+	 * ainda estava sendo gravado ou foi renomeado pelo emissor. O arquivo alterado é adiado para a próxima busca
+	 * @param avaliacao avaliação do arquivo com erro de leitura
+	 * @return <b>true</b> se o erro não deve ser contabilizado
+	 */
+	private boolean adiarGravacaoEmAndamento(AvaliacaoArquivo avaliacao) {
+		if (arquivosAdiados == null || !(avaliacao.erro instanceof IOException)) {
+			return false;
+		}
+		try {
+			BasicFileAttributes atributos = Files.readAttributes(avaliacao.arquivo.toPath(), BasicFileAttributes.class);
+			long tamanho = atributos.size();
+			long dataModificacao = atributos.lastModifiedTime().toMillis();
+
+			if (tamanho == avaliacao.tamanho && dataModificacao == avaliacao.dataModificacao
+					&& System.currentTimeMillis() - dataModificacao >= arquivosAdiados.getTempoEstabilizacao()) {
+				return false;
+			}
+			arquivosAdiados.adiar(pastaOrigem, avaliacao.arquivo, tamanho, dataModificacao);
+			metricas.incrementar(Contador.ARQUIVOS_ADIADOS);
+			return true;
+
+		} catch (NoSuchFileException e) {
+			arquivosAdiados.remover(avaliacao.arquivo);
+			return true;
+
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Registra o resultado da cópia de um arquivo
+	 * @param avaliacao avaliação do arquivo copiado
+	 * @throws SelecionadorNfeException se o limite de tolerância à erros de I/O for excedido
+	 * @throws IOException se não for possível registrar o arquivo no índice
+	 */
+	private void processarCopia(AvaliacaoArquivo avaliacao) throws SelecionadorNfeException, IOException {
+		qtdeCopiasPendentes--;
+
+		if (avaliacao.erroCopia == null && avaliacao.pacote != null) {
+			// A entrega é registrada no índice quando o segmento do pacote for selado
+			pacotesDestino.adicionar(pastaOrigem, avaliacao.pacote, avaliacao.segmento, avaliacao.arquivo.getPath(), avaliacao.tamanho,
+					avaliacao.dataModificacao, avaliacao.cnpjTransportador, avaliacao.chaveAcesso, avaliacao.manifesto,
+					avaliacao.arquivoCopia.getName());
+			metricas.incrementar(Contador.ARQUIVOS_COPIADOS);
+			metricas.somar(Contador.BYTES_COPIADOS, avaliacao.tamanho);
+			qtdeArquivosCopiados++;
+
+		} else if (avaliacao.erroCopia == null && avaliacao.conteudoDuplicado) {
+			// Um arquivo com o mesmo conteúdo e outro nome já foi entregue no destino
+			avaliacao.manifesto.liberar(avaliacao.arquivoCopia.getName());
+			if (avaliacao.chaveAcesso != null) {
+				indiceArquivos.liberarChave(avaliacao.chaveAcesso);
+			}
+			metricas.incrementar(Contador.ARQUIVOS_IGNORADOS);
+			registrar(avaliacao, SituacaoArquivo.DUPLICADO);
+
+		} else if (avaliacao.erroCopia == null) {
+			metricas.incrementar(Contador.ARQUIVOS_COPIADOS);
+			metricas.somar(Contador.BYTES_COPIADOS, avaliacao.tamanho);
+			qtdeArquivosCopiados++;
+			registrar(avaliacao, SituacaoArquivo.COPIADO);
+
+		} else if (avaliacao.erroCopia instanceof FileAlreadyExistsException) {
+			// O arquivo foi entregue no destino depois da carga do manifesto
+			metricas.incrementar(Contador.ARQUIVOS_IGNORADOS);
+			registrar(avaliacao, SituacaoArquivo.COPIADO);
+
+		} else {
+			avaliacao.manifesto.liberar(avaliacao.arquivoCopia.getName());
+			if (avaliacao.chaveAcesso != null) {
+				indiceArquivos.liberarChave(avaliacao.chaveAcesso);
+			}
+			System.err.println("Erro ao copiar o arquivo \"" + avaliacao.arquivo.getName() + "\": " + avaliacao.erroCopia.getMessage());
+			registrarErro();
+		}
+		concluirAvaliacao(avaliacao);
+	}
+
+	/**
+	 * Conclui a avaliação de um arquivo enviado para leitura e, a cada lote de avaliações concluídas, registra
+	 * o ponto de controle do diretório com a menor data de modificação dos arquivos ainda não concluídos
+	 * @param avaliacao avaliação concluída, registrada no índice se necessário
+	 * @throws IOException se não for possível gravar o índice ou o ponto de controle
+	 */
+	private void concluirAvaliacao(AvaliacaoArquivo avaliacao) throws IOException {
+		int qtdePendentes = qtdePendentesPorData.remove(avaliacao.dataModificacao);
+		if (qtdePendentes > 1) {
+			qtdePendentesPorData.put(avaliacao.dataModificacao, qtdePendentes - 1);
+		}
+		if (++qtdeAvaliacoesConcluidas % IndiceArquivosProcessados.QTDE_REGISTROS_POR_SINCRONIZACAO != 0 || arquivos != null
+				|| pontosControle == null || dataModificacaoNaoEnviada == Long.MIN_VALUE) {
+			return;
+		}
+		long dataMinima = Math.min(inicioListagem, dataModificacaoNaoEnviada);
+		if (!qtdePendentesPorData.isEmpty()) {
+			dataMinima = Math.min(dataMinima, qtdePendentesPorData.firstKey());
+		}
+		if (pacotesDestino != null) {
+			dataMinima = Math.min(dataMinima, pacotesDestino.getDataModificacaoPendente(pastaOrigem));
+		}
+		if (dataMinima > dataPontoControle) {
+			// As avaliações concluídas são gravadas no índice antes do ponto de controle
+			indiceArquivos.gravar();
+			pontosControle.registrar(pastaOrigem, dataMinimaConfigurada, dataMinima);
+			dataPontoControle = dataMinima;
+		}
+	}
+
+	/**
+	 * Etapa de cópia: grava o arquivo selecionado no destino, repetindo a gravação após erros transitórios
+	 * @param avaliacao avaliação do arquivo reservado no destino
+	 * @return avaliação do arquivo, com o erro da última tentativa se a cópia não foi concluída
+	 */
+	private AvaliacaoArquivo copiarArquivo(AvaliacaoArquivo avaliacao) {
+		try {
+			consumirOrcamento(1, avaliacao.tamanho);
+			long inicioCopia = System.nanoTime();
+
+			for (int tentativa = 1;; tentativa++) {
+				try {
+					if (arquivosPorPacote > 0) {
+						// Grava o arquivo no pacote do diretório de destino
+						avaliacao.pacote = pacotesDestino.obterPacote(avaliacao.arquivoCopia.getParent(), arquivosPorPacote);
+						avaliacao.segmento = avaliacao.pacote.adicionar(avaliacao.arquivoCopia.getName(), avaliacao.arquivo);
+						break;
+					}
+					// Cria o diretório do arquivo cópia caso ainda não tenha sido criado
+					fileUtils.criarDiretorio(avaliacao.arquivoCopia.getParent());
+
+					// Copia o arquivo ao destino informado
+					if (verificarCopias) {
+						// A soma calculada na leitura só é usada se a origem não foi alterada desde então
+						String somaOrigem = avaliacao.somaConteudo != null && avaliacao.arquivo.length() == avaliacao.tamanho
+								&& avaliacao.arquivo.lastModified() == avaliacao.dataModificacao ? avaliacao.somaConteudo : null;
+						avaliacao.conteudoDuplicado = fileUtils.copiarArquivoVerificado(avaliacao.arquivo, avaliacao.arquivoCopia,
+								avaliacao.manifesto, somaOrigem) == null;
+					} else {
+						fileUtils.copiarArquivo(avaliacao.arquivo, avaliacao.arquivoCopia);
+					}
+					break;
+
+				} catch (IOException e) {
+					if (!aguardarNovaTentativa(e, tentativa, avaliacao.arquivo)) {
+						throw e;
+					}
+				}
+			}
+			metricas.registrarLatencia(Etapa.COPIA, System.nanoTime() - inicioCopia);
+
+		} catch (Exception e) {
+			avaliacao.erroCopia = e;
+		}
+		return avaliacao;
+	}
+
+	/**
+	 * Verifica se a gravação no destino que falhou deve ser repetida e aguarda antes da nova tentativa.
+	 * A espera dobra a cada tentativa. Não são repetidas as gravações de arquivos que já existem no destino
+	 * ou que foram removidos da origem, nem as interrompidas pela parada da busca
+	 * @param erro erro da última tentativa
+	 * @param tentativa número da tentativa que falhou
+	 * @param origem arquivo de origem da gravação
+	 * @return <b>true</b> se a gravação deve ser repetida
+	 * @throws InterruptedException se a espera for interrompida
+	 */
+	private boolean aguardarNovaTentativa(IOException erro, int tentativa, File origem) throws InterruptedException {
+		if (tentativa >= tentativasCopia || erro instanceof FileAlreadyExistsException || erro instanceof InterruptedIOException
+				|| erro instanceof ClosedByInterruptException || !origem.exists()) {
+			return false;
+		}
+		if (erro instanceof CopiaDivergenteException) {
+			metricas.incrementar(Contador.COPIAS_DIVERGENTES);
+		}
+		long espera = esperaEntreTentativasMilisegundos << Math.min(tentativa - 1, EXPOENTE_MAXIMO_ESPERA_TENTATIVA);
+		System.err.println("Erro ao gravar o arquivo \"" + origem.getName() + "\" no destino: " + erro.getMessage()
+				+ ". Nova tentativa em " + espera + " milisegundos");
+		metricas.incrementar(Contador.NOVAS_TENTATIVAS_COPIA);
+
+		Thread.sleep(espera);
+		return true;
+	}
+
+	/**
+	 * Debita uma leitura ou gravação do orçamento de I/O, aguardando se o orçamento estiver esgotado
+	 * @param arquivos quantidade de arquivos lidos ou gravados
+	 * @param bytes quantidade de bytes lidos ou gravados
+	 * @throws InterruptedException se a espera for interrompida
+	 */
+	private void consumirOrcamento(int arquivos, long bytes) throws InterruptedException {
+		if (orcamentoIO != null) {
+			long espera = orcamentoIO.consumir(arquivos, bytes);
+			if (espera > 0) {
+				metricas.somar(Contador.ESPERA_ORCAMENTO_IO, TimeUnit.NANOSECONDS.toMillis(espera));
+			}
+		}
+	}
+
+	/**
+	 * Registra a situação do arquivo avaliado no índice
+	 */
+	private void registrar(AvaliacaoArquivo avaliacao, SituacaoArquivo situacao) throws IOException {
+		indiceArquivos.registrar(avaliacao.arquivo.getPath(), avaliacao.tamanho, avaliacao.dataModificacao,
+				avaliacao.cnpjTransportador, avaliacao.chaveAcesso, situacao);
+	}
+
+	/**
+	 * Contabiliza um erro de I/O neste diretório
+	 * @throws SelecionadorNfeException se o limite de tolerância à erros de I/O for excedido
+	 */
+	private void registrarErro() throws SelecionadorNfeException {
+		metricas.incrementar(Contador.ERROS);
+
+		if (++qtdeErros > toleranciaErros) {
+			// Interrompendo a busca por exceder o limite de tolerância à erros de I/O
+			throw new SelecionadorNfeException("Erros encontrados na leitura/cópia de arquivos do diretório " + pastaOrigem
+					+ "; Verifique as últimas mensagens no log para ver detalhes sobre os erros" + System.lineSeparator());
+		}
+	}
+
+	/**
+	 * Aguarda o término das tarefas de um executor já encerrado, para que nenhuma leitura ou cópia
+	 * continue após uma interrupção. A interrupção da thread atual é preservada
+	 * @param executor executor encerrado com {@link ExecutorService#shutdownNow()}
+	 */
+	static void aguardarTermino(ExecutorService executor) {
+		boolean interrompido = Thread.interrupted();
+		try {
+			while (true) {
+				try {
+					if (executor.awaitTermination(TEMPO_MAXIMO_TERMINO_SEGUNDOS, TimeUnit.SECONDS)) {
+						return;
+					}
+					System.err.println("Aguardando o término das leituras e cópias em andamento");
+					
+				} catch (InterruptedException e) {
+					interrompido = true;
+				}
+			}
+		} finally {
+			if (interrompido) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Etapa de leitura: localiza o CNPJ do transportador, consultando o índice antes de ler
+	 * o arquivo, e verifica se o arquivo ainda não existe no destino do seu transportador
+	 * @param avaliacao avaliação do arquivo candidato, com o tamanho e a data de modificação lidos na listagem
+	 * @return avaliação do arquivo
+	 */
+	private AvaliacaoArquivo avaliarArquivo(AvaliacaoArquivo avaliacao) {
+		File arquivo = avaliacao.arquivo;
+
+		try {
+			if (pacotesDestino != null && pacotesDestino.isPendente(arquivo.getPath())) {
+				// O arquivo já foi gravado em um pacote cujo segmento ainda não foi selado
+				metricas.incrementar(Contador.ARQUIVOS_IGNORADOS);
+				return avaliacao;
+			}
+			IndiceArquivosProcessados.Registro registro = indiceArquivos.consultar(arquivo.getPath(), avaliacao.tamanho, avaliacao.dataModificacao);
+			
+			if (registro != null) {
+				if (registro.getSituacao() == SituacaoArquivo.COPIADO || registro.getSituacao() == SituacaoArquivo.DUPLICADO
+						|| registro.getSituacao() == SituacaoArquivo.PROCESSADO) {
+					// Ignora o arquivo se este, ou outro arquivo da mesma NF-e, já foi copiado ou processado e não foi alterado desde então
+					metricas.incrementar(Contador.ARQUIVOS_IGNORADOS);
+					return avaliacao;
+				}
+				// O CNPJ do transportador já é conhecido, não é necessário ler o arquivo
+				avaliacao.cnpjTransportador = registro.getCnpjTransportador();
+				avaliacao.chaveAcesso = registro.getChaveAcesso();
+				
+			} else if (avaliacao.entradaCatalogo != null
+					&& avaliacao.entradaCatalogo.getCnpjTransportador() != LocalizadorCnpjTransportador.CNPJ_NAO_ENCONTRADO) {
+				// O CNPJ do transportador foi catalogado em uma leitura anterior, não é necessário ler o arquivo
+				avaliacao.cnpjTransportador = avaliacao.entradaCatalogo.getCnpjTransportador();
+				avaliacao.chaveAcesso = avaliacao.entradaCatalogo.getChaveAcesso();
+				
+			} else if (ArquivoCompactado.isArquivoCompactado(arquivo.getName())) {
+				avaliarArquivoCompactado(avaliacao);
+				return avaliacao;
+				
+			} else {
+				// Procura pelo padrão <transporta><CNPJ>"qualquercoisa"</CNPJ>, interrompendo a leitura assim que encontrado
+				LocalizadorCnpjTransportador localizador = LOCALIZADORES_LIVRES.poll();
+				if (localizador == null) {
+					localizador = new LocalizadorCnpjTransportador();
+				}
+				// Na verificação das cópias, os arquivos dos transportadores buscados são lidos até o fim para o cálculo
+				// da soma, que não precisa ser calculada novamente na cópia
+				SomaConteudo soma = null;
+				if (verificarCopias && arquivosPorPacote == 0) {
+					soma = SOMAS_LIVRES.poll();
+					if (soma == null) {
+						soma = new SomaConteudo();
+					}
+				}
+				try {
+					long inicioLeitura = System.nanoTime();
+					long bytesLidos;
+					if (soma != null) {
+						avaliacao.cnpjTransportador = localizador.localizarCnpjTransportador(arquivo, fileUtils, soma,
+								mapDiretorioCopiaPorCnpj.keySet());
+						if (mapDiretorioCopiaPorCnpj.containsKey(avaliacao.cnpjTransportador)) {
+							avaliacao.somaConteudo = soma.getSoma();
+						}
+						bytesLidos = Math.max(localizador.getBytesLidos(), soma.getBytesSomados());
+					} else {
+						avaliacao.cnpjTransportador = localizador.localizarCnpjTransportador(arquivo, fileUtils);
+						bytesLidos = localizador.getBytesLidos();
+					}
+					avaliacao.chaveAcesso = localizador.getChaveAcesso();
+					metricas.registrarLatencia(Etapa.LEITURA, System.nanoTime() - inicioLeitura);
+					metricas.incrementar(Contador.ARQUIVOS_LIDOS);
+					metricas.somar(Contador.BYTES_LIDOS, bytesLidos);
+					consumirOrcamento(1, bytesLidos);
+					
+				} finally {
+					LOCALIZADORES_LIVRES.offer(localizador);
+					if (soma != null) {
+						SOMAS_LIVRES.offer(soma);
+					}
+				}
+				if (catalogo != null && avaliacao.cnpjTransportador != LocalizadorCnpjTransportador.CNPJ_NAO_ENCONTRADO) {
+					catalogo.registrar(arquivo.getPath(), avaliacao.tamanho, avaliacao.dataModificacao, avaliacao.cnpjTransportador,
+							avaliacao.chaveAcesso);
+				}
+			}
+			long inicioSelecao = System.nanoTime();
+			try {
+				selecionarArquivo(avaliacao, registro);
+				
+			} finally {
+				metricas.registrarLatencia(Etapa.SELECAO, System.nanoTime() - inicioSelecao);
+			}
+		} catch (Exception e) {
+			avaliacao.erro = e;
+		}
+		return avaliacao;
+	}
+
+	/**
+	 * Avalia cada entrada do arquivo compactado que atende ao padrão de nomes e grava no destino
+	 * as entradas selecionadas. O arquivo é registrado no índice com a assinatura do seu conteúdo
+	 * somente se todas as entradas forem avaliadas, e um arquivo com a mesma assinatura, recebido
+	 * novamente com outro nome ou em outro diretório, é ignorado
+	 * @param avaliacao avaliação do arquivo compactado
+	 * @throws Exception
+	 */
+	private void avaliarArquivoCompactado(AvaliacaoArquivo avaliacao) throws Exception {
+		try (ArquivoCompactado arquivoCompactado = ArquivoCompactado.abrir(avaliacao.arquivo)) {
+			String assinatura = arquivoCompactado.getAssinatura();
+			List<PacotesDestino.Entrega> entradasEmPacote = new ArrayList<>();
+
+			if (catalogo != null) {
+				// As entradas não são catalogadas: o arquivo compactado é lido novamente nas buscas respondidas pelo catálogo
+				catalogo.registrar(avaliacao.arquivo.getPath(), avaliacao.tamanho, avaliacao.dataModificacao,
+						LocalizadorCnpjTransportador.CNPJ_NAO_ENCONTRADO, null);
+			}
+
+			if (indiceArquivos.isCompactadoProcessado(assinatura)) {
+				metricas.incrementar(Contador.ARQUIVOS_IGNORADOS);
+
+			} else {
+				// O arquivo compactado é lido por inteiro
+				consumirOrcamento(1, avaliacao.tamanho);
+
+				LocalizadorCnpjTransportador localizador = LOCALIZADORES_LIVRES.poll();
+				if (localizador == null) {
+					localizador = new LocalizadorCnpjTransportador();
+				}
+				try {
+					while (arquivoCompactado.proximaEntrada()) {
+						if (Thread.currentThread().isInterrupted()) {
+							throw new InterruptedIOException("Leitura do arquivo compactado interrompida");
+						}
+						String nomeEntrada = arquivoCompactado.getNomeEntrada();
+						if (nomeEntrada == null) {
+							System.err.println("Entrada \"" + arquivoCompactado.getCaminhoEntrada() + "\" ignorada: o caminho da entrada não é seguro");
+							metricas.incrementar(Contador.ARQUIVOS_DESCARTADOS);
+
+						} else if (isNomeAceito(Paths.get(nomeEntrada))) {
+							avaliarEntrada(arquivoCompactado, localizador, avaliacao, entradasEmPacote);
+						}
+					}
+				} finally {
+					LOCALIZADORES_LIVRES.offer(localizador);
+				}
+			}
+			if (entradasEmPacote.isEmpty()) {
+				indiceArquivos.registrarCompactado(avaliacao.arquivo.getPath(), avaliacao.tamanho, avaliacao.dataModificacao, assinatura);
+
+			} else {
+				// O arquivo só é registrado depois que os segmentos de todas as entradas gravadas em pacotes forem selados
+				pacotesDestino.adicionarCompactado(pastaOrigem, avaliacao.arquivo.getPath(), avaliacao.tamanho, avaliacao.dataModificacao,
+						assinatura, entradasEmPacote);
+			}
+		}
+	}
+
+	/**
+	 * Localiza o CNPJ do transportador na entrada atual do arquivo compactado e, se selecionada,
+	 * grava a entrada descompactada no destino do seu transportador
+	 * @param arquivoCompactado arquivo posicionado na entrada
+	 * @param localizador localizador exclusivo desta leitura
+	 * @param avaliacao avaliação do arquivo compactado, onde são contadas as entradas copiadas
+	 * @param entradasEmPacote entregas pendentes das entradas gravadas em pacotes
+	 * @throws Exception
+	 */
+	private void avaliarEntrada(ArquivoCompactado arquivoCompactado, LocalizadorCnpjTransportador localizador,
+			AvaliacaoArquivo avaliacao, List<PacotesDestino.Entrega> entradasEmPacote) throws Exception {
+		String nomeEntrada = arquivoCompactado.getNomeEntrada();
+		long inicioLeitura = System.nanoTime();
+		long cnpjTransportador;
+
+		try (InputStream entrada = arquivoCompactado.abrirEntrada()) {
+			cnpjTransportador = localizador.localizarCnpjTransportador(entrada);
+		}
+		ChaveAcesso chaveAcesso = localizador.getChaveAcesso();
+		metricas.registrarLatencia(Etapa.LEITURA, System.nanoTime() - inicioLeitura);
+		metricas.incrementar(Contador.ARQUIVOS_LIDOS);
+		metricas.somar(Contador.BYTES_LIDOS, localizador.getBytesLidos());
+
+		String diretorioArquivoCopia = mapDiretorioCopiaPorCnpj.get(cnpjTransportador);
+		if (diretorioArquivoCopia == null) {
+			// A entrada não é de nenhum dos transportadores buscados
+			metricas.incrementar(Contador.ARQUIVOS_DESCARTADOS);
+			return;
+		}
+		File arquivoCopia = new File(diretorioArquivoCopia + File.separator + nomeEntrada);
+		Path diretorioCopia = Paths.get(diretorioArquivoCopia).toAbsolutePath().normalize();
+		if (!diretorioCopia.equals(arquivoCopia.toPath().toAbsolutePath().normalize().getParent())) {
+			// O nome da entrada levaria a gravação para fora do diretório do transportador
+			System.err.println("Entrada \"" + arquivoCompactado.getCaminhoEntrada() + "\" ignorada: o destino está fora do diretório "
+					+ diretorioArquivoCopia);
+			metricas.incrementar(Contador.ARQUIVOS_DESCARTADOS);
+			return;
+		}
+		metricas.incrementar(Contador.ARQUIVOS_SELECIONADOS);
+		ManifestoDestino manifesto = mapManifestoPorCnpj.get(cnpjTransportador);
+
+		// Ignora a entrada se um arquivo com o mesmo nome ou da mesma NF-e já foi entregue
+		if (!manifesto.reservar(nomeEntrada)) {
+			metricas.incrementar(Contador.ARQUIVOS_IGNORADOS);
+			return;
+		}
+		if (chaveAcesso != null && !indiceArquivos.reservarChave(chaveAcesso)) {
+			manifesto.liberar(nomeEntrada);
+			metricas.incrementar(Contador.ARQUIVOS_IGNORADOS);
+			return;
+		}
+		long tamanho;
+		try {
+			long inicioCopia = System.nanoTime();
+
+			if (arquivosPorPacote > 0) {
+				// Grava a entrada descompactada no pacote do diretório de destino
+				PacoteEntrega pacote = pacotesDestino.obterPacote(diretorioArquivoCopia, arquivosPorPacote);
+				byte[] conteudo;
+				int segmento;
+				for (int tentativa = 1;; tentativa++) {
+					try (InputStream entrada = arquivoCompactado.abrirEntrada()) {
+						conteudo = fileUtils.lerConteudo(entrada);
+						segmento = pacote.adicionar(nomeEntrada, conteudo, avaliacao.dataModificacao);
+						break;
+
+					} catch (IOException e) {
+						if (!aguardarNovaTentativa(e, tentativa, avaliacao.arquivo)) {
+							throw e;
+						}
+					}
+				}
+				metricas.registrarLatencia(Etapa.COPIA, System.nanoTime() - inicioCopia);
+				tamanho = conteudo.length;
+
+				// A entrega é registrada no índice quando o segmento do pacote for selado
+				entradasEmPacote.add(pacotesDestino.adicionar(pastaOrigem, pacote, segmento, arquivoCompactado.getCaminhoEntrada(), tamanho,
+						avaliacao.dataModificacao, cnpjTransportador, chaveAcesso, manifesto, nomeEntrada));
+				metricas.incrementar(Contador.ARQUIVOS_COPIADOS);
+				metricas.somar(Contador.BYTES_COPIADOS, tamanho);
+				avaliacao.qtdeEntradasCopiadas++;
+
+			} else {
+				// Cria o diretório do arquivo cópia caso ainda não tenha sido criado
+				fileUtils.criarDiretorio(arquivoCopia.getParent());
+
+				// Grava a entrada descompactada no destino informado
+				boolean conteudoDuplicado = false;
+				for (int tentativa = 1;; tentativa++) {
+					try (InputStream entrada = arquivoCompactado.abrirEntrada()) {
+						if (verificarCopias) {
+							conteudoDuplicado = fileUtils.gravarArquivoVerificado(entrada, arquivoCopia, manifesto) == null;
+							tamanho = conteudoDuplicado ? 0 : arquivoCopia.length();
+						} else {
+							tamanho = fileUtils.gravarArquivo(entrada, arquivoCopia);
+						}
+						break;
+
+					} catch (IOException e) {
+						if (!aguardarNovaTentativa(e, tentativa, avaliacao.arquivo)) {
+							throw e;
+						}
+					}
+				}
+				metricas.registrarLatencia(Etapa.COPIA, System.nanoTime() - inicioCopia);
+
+				if (conteudoDuplicado) {
+					// Uma entrada com o mesmo conteúdo e outro nome já foi entregue no destino
+					manifesto.liberar(nomeEntrada);
+					if (chaveAcesso != null) {
+						indiceArquivos.liberarChave(chaveAcesso);
+					}
+					metricas.incrementar(Contador.ARQUIVOS_IGNORADOS);
+					return;
+				}
+				metricas.incrementar(Contador.ARQUIVOS_COPIADOS);
+				metricas.somar(Contador.BYTES_COPIADOS, tamanho);
+				avaliacao.qtdeEntradasCopiadas++;
+				indiceArquivos.registrar(arquivoCompactado.getCaminhoEntrada(), tamanho, avaliacao.dataModificacao, cnpjTransportador,
+						chaveAcesso, SituacaoArquivo.COPIADO);
+			}
+		} catch (FileAlreadyExistsException e) {
+			// A entrada foi entregue no destino depois da carga do manifesto
+			metricas.incrementar(Contador.ARQUIVOS_IGNORADOS);
+			return;
+
+		} catch (Exception e) {
+			manifesto.liberar(nomeEntrada);
+			if (chaveAcesso != null) {
+				indiceArquivos.liberarChave(chaveAcesso);
+			}
+			throw e;
+		}
+		consumirOrcamento(1, tamanho);
+	}
+
+	/**
+	 * Verifica se o arquivo, com o CNPJ do transportador já localizado, deve ser copiado
+	 * @param avaliacao avaliação do arquivo
+	 * @param registro registro do arquivo no índice ou <b>null</b> se ainda não foi avaliado
+	 * @throws IOException
+	 */
+	private void selecionarArquivo(AvaliacaoArquivo avaliacao, IndiceArquivosProcessados.Registro registro) throws IOException {
+		File arquivo = avaliacao.arquivo;
+		String diretorioArquivoCopia = mapDiretorioCopiaPorCnpj.get(avaliacao.cnpjTransportador);
+		
+		if (diretorioArquivoCopia == null) {
+			// O arquivo não é de nenhum dos transportadores buscados
+			metricas.incrementar(Contador.ARQUIVOS_DESCARTADOS);
+			if (registro == null) {
+				registrar(avaliacao, SituacaoArquivo.DESCARTADO);
+			}
+			return;
+		}
+		metricas.incrementar(Contador.ARQUIVOS_SELECIONADOS);
+		ManifestoDestino manifesto = mapManifestoPorCnpj.get(avaliacao.cnpjTransportador);
+		
+		if (manifesto.contem(arquivo.getName())) {
+			// Ignora o arquivo se este já foi entregue no diretório de destino, em qualquer data
+			metricas.incrementar(Contador.ARQUIVOS_IGNORADOS);
+			registrar(avaliacao, SituacaoArquivo.COPIADO);
+			return;
+		}
+		if (avaliacao.chaveAcesso != null && indiceArquivos.isChaveCopiada(avaliacao.chaveAcesso)) {
+			// Ignora o arquivo se outro arquivo da mesma NF-e, com outro nome ou em outro diretório, já foi copiado
+			metricas.incrementar(Contador.ARQUIVOS_IGNORADOS);
+			registrar(avaliacao, SituacaoArquivo.DUPLICADO);
+			return;
+		}
+		if (registro == null || registro.getSituacao() != SituacaoArquivo.SELECIONADO) {
+			registrar(avaliacao, SituacaoArquivo.SELECIONADO);
+		}
+		avaliacao.arquivoCopia = new File(diretorioArquivoCopia + File.separator + arquivo.getName());
+		avaliacao.manifesto = manifesto;
+	}
+
+	/**
+	 * Resultado da etapa de leitura de um arquivo
+	 */
+	private static class AvaliacaoArquivo {
+		private final File arquivo;
+		private final long tamanho;
+		private final long dataModificacao;
+		private long cnpjTransportador = LocalizadorCnpjTransportador.CNPJ_NAO_ENCONTRADO;
+		private ChaveAcesso chaveAcesso; // null se o arquivo não declara a chave de acesso
+		private File arquivoCopia; // preenchido somente se o arquivo foi selecionado para cópia
+		private ManifestoDestino manifesto;
+		private Exception erro;
+		private Exception erroCopia; // erro da última tentativa, se a cópia não foi concluída
+		private int qtdeEntradasCopiadas; // entradas gravadas no destino, somente para arquivos compactados
+		private PacoteEntrega pacote; // preenchido somente se o arquivo foi gravado em um pacote
+		private int segmento;
+		private boolean conteudoDuplicado; // preenchido somente se a cópia verificada encontrou o conteúdo no destino
+		private String somaConteudo; // preenchido somente se a soma foi calculada na leitura, para a verificação da cópia
+		private CatalogoNfe.Entrada entradaCatalogo; // preenchido somente para os arquivos obtidos do catálogo
+
+		private AvaliacaoArquivo(File arquivo, long tamanho, long dataModificacao) {
+			this.arquivo = arquivo;
+			this.tamanho = tamanho;
+			this.dataModificacao = dataModificacao;
+		}
+	}
+
+	/**
+	 * Arquivo listado mantido na fila de prioridade
+	 */
+	private static class Candidato {
+		private final File arquivo;
+		private final BasicFileAttributes atributos;
+		private final long prioridade;
+
+		private Candidato(File arquivo, BasicFileAttributes atributos, long prioridade) {
+			this.arquivo = arquivo;
+			this.atributos = atributos;
+			this.prioridade = prioridade;
+		}
+	}
+}
@@ -1,29 +1,81 @@
 package com.juno.controller;
 
 import java.io.File;
-import java.io.FileFilter;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.configuration.AbstractFileConfiguration;
 import org.apache.commons.configuration.PropertiesConfiguration;
-import org.apache.commons.io.filefilter.AgeFileFilter;
+import org.apache.commons.configuration.event.ConfigurationEvent;
+import org.apache.commons.configuration.event.ConfigurationListener;
+import org.apache.commons.configuration.reloading.FileChangedReloadingStrategy;
 
 import com.juno.exception.SelecionadorNfeException;
+import com.juno.metricas.MetricasSelecao;
+import com.juno.metricas.RegistroMetricas;
+import com.juno.model.EstrategiaCopia;
+import com.juno.model.OrdemLeitura;
 import com.juno.model.NfeTransportador;
+import com.juno.model.ParametrosExecucao;
+import com.juno.model.Transportador;
+import com.juno.utils.CatalogoNfe;
 import com.juno.utils.FileUtils;
+import com.juno.utils.IndiceArquivosProcessados;
+import com.juno.utils.LocalizadorCnpjTransportador;
+import com.juno.utils.ManifestoDestino;
+import com.juno.utils.OrcamentoIO;
+import com.juno.utils.PontosControlePastas;
 
+/**
+ * Seleciona as NF-es dos transportadores configurados. Uma mesma instância é usada em todas as
+ * buscas enquanto o service estiver em execução: o config.properties é lido novamente somente
+ * quando a sua data de modificação muda, e os dados validados, o padrão de nomes e os manifestos
+ * dos diretórios de destino são mantidos entre as buscas
+ */
 public class SelecionadorNfe {
 	
 	private PropertiesConfiguration config;
-	private FileUtils fileUtils = new FileUtils();
+	private final FileUtils fileUtils = new FileUtils();
+	private ParametrosExecucao parametros;
+	private NfeTransportador nfeTransportador;
+	private PathMatcher padraoNomeArquivos;
+	private Map<Long, String> mapDiretorioDestinoPorCnpj;
+	private Map<Long, ManifestoDestino> mapManifestoPorCnpj;
+	private String diaCargaManifestos; // pasta do dia em que os manifestos foram carregados
+	private volatile boolean configuracaoAlterada = true;
+	private final IndiceArquivosProcessados indiceArquivos;
+	private final PontosControlePastas pontosControle;
+	private CoordenadorCluster coordenadorCluster;
+	private final ArquivosAdiados arquivosAdiados = new ArquivosAdiados();
+	private final PacotesDestino pacotesDestino = new PacotesDestino();
+	private final OrcamentoIO orcamentoIO = new OrcamentoIO();
+	private CatalogoNfe catalogo;
 	
 	private static final String CONFIG_FILE_NAME = "config.properties";
 	private static final String CONFIG_FILE_NAME_QUOTED = "\"config.properties\"";
@@ -31,31 +83,239 @@ public class SelecionadorNfe {
 	private static final String PROPERTY_NAME_DIRETORIO_DESTINO = "diretorioDeSaida";
 	private static final String PROPERTY_NAME_DATA_MINIMA_ARQUIVO = "dataMinimaDoArquivo";
 	private static final String PROPERTY_NAME_CNPJ_TRANSPORTADOR = "cnpjDoTransportador";
-	private static final String REGEX_CNPJ_TRANSPORTADOR = "<transporta><CNPJ>(.+?)</CNPJ>";
-	private static final Pattern PATTERN_CNPJ_TRANSPORTADOR = Pattern.compile(REGEX_CNPJ_TRANSPORTADOR);
 	private static final DateFormat DATE_FORMAT = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
+	private static final String PROPERTY_NAME_QTDE_PASTAS_EM_PARALELO = "quantidadeDePastasEmParalelo";
+	private static final String PROPERTY_NAME_QTDE_THREADS_LEITURA_POR_PASTA = "quantidadeDeThreadsDeLeituraPorPasta";
+	private static final int DEFAULT_QTDE_PASTAS_EM_PARALELO = 2;
+	private static final String PROPERTY_NAME_JANELA_REVISAO_HORAS = "janelaDeRevisaoEmHoras";
+	private static final int DEFAULT_QTDE_THREADS_LEITURA_POR_PASTA = 4;
+	private static final String PROPERTY_NAME_MONITORAR_DIRETORIOS = "monitorarDiretorios";
+	private static final String PROPERTY_NAME_INTERVALO_RECONCILIACAO_MINUTOS = "intervaloDeReconciliacaoEmMinutos";
+	private static final String PROPERTY_NAME_ESTRATEGIA_COPIA = "estrategiaDeCopia";
+	private static final String PROPERTY_NAME_PORTA_METRICAS = "portaDasMetricas";
+	private static final String PROPERTY_NAME_INTERVALO_EXECUCAO_MINUTOS = "intervaloDeExecucaoEmMinutos";
+	private static final String PROPERTY_NAME_INTERVALO_MAXIMO_EXECUCAO_MINUTOS = "intervaloMaximoDeExecucaoEmMinutos";
+	private static final String PROPERTY_NAME_BUSCAR_EM_SUBDIRETORIOS = "buscarEmSubdiretorios";
+	private static final String PROPERTY_NAME_PADRAO_NOME_ARQUIVOS = "padraoDeNomeDosArquivos";
+	private static final String PROPERTY_NAME_QTDE_THREADS_COPIA_POR_PASTA = "quantidadeDeThreadsDeCopiaPorPasta";
+	private static final String PROPERTY_NAME_TENTATIVAS_COPIA = "tentativasDeCopia";
+	private static final String PROPERTY_NAME_ESPERA_ENTRE_TENTATIVAS_COPIA_MILISEGUNDOS = "esperaEntreTentativasDeCopiaEmMilisegundos";
+	private static final String PROPERTY_NAME_TEMPO_ESTABILIZACAO_SEGUNDOS = "tempoDeEstabilizacaoEmSegundos";
+	private static final String PROPERTY_NAME_MODO_CLUSTER = "modoCluster";
+	private static final String PROPERTY_NAME_NOME_NO = "nomeDoNo";
+	private static final String PROPERTY_NAME_DIRETORIO_COORDENACAO = "diretorioDeCoordenacao";
+	private static final String PROPERTY_NAME_DURACAO_CONCESSAO_SEGUNDOS = "duracaoDaConcessaoEmSegundos";
+	private static final String PROPERTY_NAME_ARQUIVOS_POR_PACOTE = "arquivosPorPacote";
+	private static final String PROPERTY_NAME_VERIFICAR_COPIAS = "verificarCopias";
+	private static final String PROPERTY_NAME_ORDEM_LEITURA = "ordemDeLeitura";
+	private static final String PROPERTY_NAME_TAMANHO_FILA_PRIORIDADE = "tamanhoDaFilaDePrioridade";
+	private static final String PROPERTY_NAME_ORCAMENTO_IO_KB_POR_SEGUNDO = "orcamentoDeIOEmKbPorSegundo";
+	private static final String PROPERTY_NAME_ORCAMENTO_IO_ARQUIVOS_POR_SEGUNDO = "orcamentoDeIOEmArquivosPorSegundo";
+	private static final String PROPERTY_NAME_HORARIO_ORCAMENTO_IO = "horarioDoOrcamentoDeIO";
+	private static final String DEFAULT_PADRAO_NOME_ARQUIVOS = "*";
+	private static final int DEFAULT_JANELA_REVISAO_HORAS = 48;
+	private static final int DEFAULT_INTERVALO_EXECUCAO_MINUTOS = 15;
+	private static final int DEFAULT_INTERVALO_MAXIMO_EXECUCAO_MINUTOS = 60;
+	private static final int DEFAULT_INTERVALO_RECONCILIACAO_MINUTOS = 60;
+	private static final int DEFAULT_QTDE_THREADS_COPIA_POR_PASTA = 2;
+	private static final int DEFAULT_TENTATIVAS_COPIA = 3;
+	private static final int DEFAULT_ESPERA_ENTRE_TENTATIVAS_COPIA_MILISEGUNDOS = 500;
+	private static final int DEFAULT_TEMPO_ESTABILIZACAO_SEGUNDOS = 5;
+	private static final int DEFAULT_DURACAO_CONCESSAO_SEGUNDOS = 120;
+	private static final int DEFAULT_TAMANHO_FILA_PRIORIDADE = 50000;
+	private static final int MINIMO_DURACAO_CONCESSAO_SEGUNDOS = 10;
 	private static final int IO_ERROR_TOLERANCE_BY_FOLDER = 3;
 	
-	public void executar() throws Exception {
-		NfeTransportador nfeTransportador = carregarDados();
-		
-		// Valida os dados informados nos campos
-		String validacao = validarNfeTransportador(nfeTransportador);
+	/**
+	 * @param indiceArquivos índice dos arquivos já avaliados, mantido entre as execuções
+	 */
+	public SelecionadorNfe(IndiceArquivosProcessados indiceArquivos) {
+		this(indiceArquivos, null);
+	}
+	
+	/**
+	 * @param indiceArquivos índice dos arquivos já avaliados, mantido entre as execuções
+	 * @param pontosControle pontos de controle das buscas completas de cada diretório ou <b>null</b>
+	 * para sempre usar a data mínima do arquivo de configuração
+	 */
+	public SelecionadorNfe(IndiceArquivosProcessados indiceArquivos, PontosControlePastas pontosControle) {
+		this.indiceArquivos = indiceArquivos;
+		this.pontosControle = pontosControle;
+		RegistroMetricas.getInstancia().registrarOrcamentoIO(orcamentoIO);
+	}
+	
+	/**
+	 * Executa uma busca completa nos diretórios de origem
+	 * @return quantidade de arquivos copiados
+	 * @throws Exception
+	 */
+	public int executar() throws Exception {
+		NfeTransportador nfeTransportador = carregarConfiguracao();
 		
-		if (validacao.isEmpty()) {
-			// Efetua a operação de seleção e cópia
-			selecionarNfeTransportador(nfeTransportador);
+		// Efetua a operação de seleção e cópia
+		int qtdeArquivosCopiados = selecionarNfeTransportador(nfeTransportador);
 
-			// Atualiza quaisquer dados de configuração alterados
-			atualizarDados(nfeTransportador);
+		// Atualiza quaisquer dados de configuração alterados
+		atualizarDados(nfeTransportador);
+		
+		return qtdeArquivosCopiados;
+	}
+	
+	/**
+	 * Seleciona e copia somente os arquivos informados, sem alterar a data mínima dos arquivos
+	 * @param arquivosPorPasta arquivos criados ou alterados agrupados pelo diretório de origem
+	 * @throws Exception
+	 */
+	public void executar(Map<String, Collection<File>> arquivosPorPasta) throws Exception {
+		NfeTransportador nfeTransportador = carregarConfiguracao();
+		
+		// Efetua a operação de seleção e cópia
+		processarPastas(nfeTransportador, arquivosPorPasta);
+	}
+	
+	/**
+	 * Carrega e valida os dados e os parâmetros de execução da aplicação. Após a primeira carga,
+	 * o arquivo de configuração é lido e validado novamente somente se tiver sido alterado
+	 * @return objeto com CNPJ e diretórios do transportador
+	 * @throws Exception
+	 */
+	public NfeTransportador carregarConfiguracao() throws Exception {
+		if (config == null) {
+			config = fileUtils.carregarProperties(CONFIG_FILE_NAME);
 			
+			// A data de modificação do arquivo é verificada a cada chamada de reload(). As gravações
+			// feitas pela própria aplicação em atualizarDados não provocam uma nova leitura
+			FileChangedReloadingStrategy estrategiaRecarga = new FileChangedReloadingStrategy();
+			estrategiaRecarga.setRefreshDelay(0);
+			config.setReloadingStrategy(estrategiaRecarga);
+			config.addConfigurationListener(new ConfigurationListener() {
+				@Override
+				public void configurationChanged(ConfigurationEvent evento) {
+					if (evento.getType() == AbstractFileConfiguration.EVENT_RELOAD && !evento.isBeforeUpdate()) {
+						configuracaoAlterada = true;
+					}
+				}
+			});
 		} else {
-			// Exibe mensagem de aviso
-			throw new SelecionadorNfeException(validacao);
+			config.reload();
+		}
+		
+		if (configuracaoAlterada) {
+			NfeTransportador nfeTransportadorCarregado = carregarDados();
+			parametros = carregarParametros();
+			
+			// Valida os dados informados nos campos
+			String validacao = validarNfeTransportador(nfeTransportadorCarregado);
+			
+			if (!validacao.isEmpty()) {
+				// Exibe mensagem de aviso
+				throw new SelecionadorNfeException(validacao);
+			}
+			carregarDestinos(nfeTransportadorCarregado);
+			padraoNomeArquivos = FileSystems.getDefault().getPathMatcher("glob:" + parametros.getPadraoNomeArquivos());
+			if (coordenadorCluster != null) {
+				coordenadorCluster.setDiretoriosOrigem(nfeTransportadorCarregado.getMapDiretorioOrigem());
+			}
+			nfeTransportador = nfeTransportadorCarregado;
+			configuracaoAlterada = false;
+		}
+		return nfeTransportador;
+	}
+	
+	/**
+	 * Associa o CNPJ de cada transportador ao seu diretório de destino e ao manifesto dos arquivos já entregues
+	 * @param nfeTransportador objeto com os transportadores validados
+	 * @throws IOException
+	 */
+	private void carregarDestinos(NfeTransportador nfeTransportador) throws IOException {
+		Map<Long, String> mapDiretorioDestino = new HashMap<>();
+		Map<Long, ManifestoDestino> mapManifesto = new HashMap<>();
+		
+		for (Transportador transportador : nfeTransportador.getTransportadores()) {
+			long cnpj = LocalizadorCnpjTransportador.converterCnpj(transportador.getCnpj());
+			mapDiretorioDestino.put(cnpj, transportador.getDiretorioDestino());
+			mapManifesto.put(cnpj, ManifestoDestino.carregar(transportador.getDiretorioDestino()));
 		}
-		config = null;
-		fileUtils = null;
-		nfeTransportador = null;
+		mapDiretorioDestinoPorCnpj = mapDiretorioDestino;
+		mapManifestoPorCnpj = mapManifesto;
+	}
+	
+	/**
+	 * Percorre novamente os diretórios de destino na primeira busca de cada dia, para que os arquivos entregues
+	 * por outros processos também sejam considerados. A primeira carga dos manifestos já é feita no dia atual
+	 * @throws IOException
+	 */
+	private void atualizarManifestos() throws IOException {
+		String diaAtual = fileUtils.getDiretorioArquivoCopia("");
+		
+		if (diaCargaManifestos != null && !diaAtual.equals(diaCargaManifestos)) {
+			recarregarManifestos();
+		}
+		diaCargaManifestos = diaAtual;
+	}
+	
+	/**
+	 * Percorre novamente os diretórios de destino, uma vez por diretório, mesmo que compartilhado por vários transportadores
+	 * @throws IOException
+	 */
+	private void recarregarManifestos() throws IOException {
+		for (ManifestoDestino manifesto : new HashSet<>(mapManifestoPorCnpj.values())) {
+			manifesto.recarregar();
+		}
+	}
+	
+	/**
+	 * @return parâmetros de execução carregados por {@link #carregarConfiguracao()}
+	 */
+	public ParametrosExecucao getParametros() {
+		return parametros;
+	}
+	
+	/**
+	 * @return padrão de nomes dos arquivos avaliados, carregado por {@link #carregarConfiguracao()}
+	 */
+	public PathMatcher getPadraoNomeArquivos() {
+		return padraoNomeArquivos;
+	}
+	
+	/**
+	 * @return <b>true</b> se há arquivos cuja leitura foi adiada por ainda estarem sendo gravados
+	 */
+	public boolean possuiArquivosAdiados() {
+		return !arquivosAdiados.isVazio();
+	}
+	
+	/**
+	 * @return tempo sem alterações após o qual um arquivo adiado pode ser lido, em milisegundos
+	 */
+	public long getTempoEstabilizacaoMilisegundos() {
+		return arquivosAdiados.getTempoEstabilizacao();
+	}
+	
+	/**
+	 * Sela os pacotes de entrega abertos e registra as suas entregas no índice. Deve ser chamado no encerramento
+	 * do serviço, depois da última busca e antes do fechamento do índice
+	 * @throws IOException se não for possível registrar as entregas no índice
+	 */
+	public void encerrar() throws IOException {
+		pacotesDestino.encerrar(indiceArquivos);
+		indiceArquivos.gravar();
+	}
+	
+	/**
+	 * Informa o coordenador que divide os diretórios de origem entre os nós do cluster
+	 * @param coordenadorCluster coordenador iniciado ou <b>null</b> para processar todos os diretórios
+	 */
+	public void setCoordenadorCluster(CoordenadorCluster coordenadorCluster) {
+		this.coordenadorCluster = coordenadorCluster;
+	}
+	
+	/**
+	 * Informa o catálogo das NF-es lidas, que responde às buscas anteriores à última listagem de cada diretório
+	 * @param catalogo catálogo carregado ou <b>null</b> para sempre listar e ler os diretórios
+	 */
+	public void setCatalogo(CatalogoNfe catalogo) {
+		this.catalogo = catalogo;
 	}
 	
 	/**
@@ -63,11 +323,11 @@ public class SelecionadorNfe {
 	 * @throws Exception 
 	 */
 	protected NfeTransportador carregarDados() throws Exception {
-		PropertiesConfiguration config = fileUtils.carregarProperties(CONFIG_FILE_NAME);
-		
 		NfeTransportador nfeTransportador = new NfeTransportador();
-		nfeTransportador.setDiretorioDestino(String.valueOf(config.getProperty(PROPERTY_NAME_DIRETORIO_DESTINO)));
-		nfeTransportador.setCnpj(String.valueOf(config.getProperty(PROPERTY_NAME_CNPJ_TRANSPORTADOR)));
+		
+		// O transportador principal é informado sem sufixo, os demais pelo mesmo sufixo
+		// nas duas propriedades. Ex.: cnpjDoTransportador2 e diretorioDeSaida2
+		nfeTransportador.getTransportadores().add(carregarTransportador(config, ""));
 		
 		Iterator<String> propertyNames = config.getKeys();
 		while (propertyNames.hasNext()) {
@@ -75,6 +335,10 @@ public class SelecionadorNfe {
 			
 			if (propertyName != null && propertyName.startsWith(DIRETORIO_ORIGEM_FOLDER_PREFIX)) {
 				nfeTransportador.getMapDiretorioOrigem().put(propertyName, String.valueOf(config.getProperty(propertyName)));
+				
+			} else if (propertyName != null && propertyName.startsWith(PROPERTY_NAME_CNPJ_TRANSPORTADOR)
+					&& !propertyName.equals(PROPERTY_NAME_CNPJ_TRANSPORTADOR)) {
+				nfeTransportador.getTransportadores().add(carregarTransportador(config, propertyName.substring(PROPERTY_NAME_CNPJ_TRANSPORTADOR.length())));
 			}
 		}
 		try {
@@ -86,34 +350,62 @@ public class SelecionadorNfe {
 					+ " dd/MM/aaaa HH:mm:ss (dia/mês/ano hora/minuto/segundo). Ex.: 25/04/2017 08:00:00" + System.lineSeparator();
 			throw new SelecionadorNfeException(erro);
 		}
-		this.config = config;
-		
 		return nfeTransportador;
 	}
 	
+	/**
+	 * Carrega o CNPJ e o diretório de destino de um transportador
+	 * @param config arquivo de configuração
+	 * @param sufixoPropriedades sufixo das propriedades do transportador
+	 * @return transportador
+	 */
+	private Transportador carregarTransportador(PropertiesConfiguration config, String sufixoPropriedades) {
+		Transportador transportador = new Transportador();
+		transportador.setSufixoPropriedades(sufixoPropriedades);
+		transportador.setCnpj(config.getString(PROPERTY_NAME_CNPJ_TRANSPORTADOR + sufixoPropriedades));
+		transportador.setDiretorioDestino(config.getString(PROPERTY_NAME_DIRETORIO_DESTINO + sufixoPropriedades));
+		return transportador;
+	}
+	
 	/**
 	 * Valida o preenchimento do objeto NfeTransportador
-	 * @param nfeTransportador objeto com CNPJ e diretório de destino
+	 * @param nfeTransportador objeto com os transportadores e diretórios de origem
 	 * @return String com validação de erro se houver e <b>String vazia</b> se estiver ok
 	 * @throws ParseException 
 	 */
 	protected String validarNfeTransportador(NfeTransportador nfeTransportador) throws ParseException {
 		StringBuilder validacao = new StringBuilder();
 
-		// Validando o diretório de destino
-		validacao.append(fileUtils.validarDiretorioDestino(nfeTransportador.getDiretorioDestino(), PROPERTY_NAME_DIRETORIO_DESTINO, CONFIG_FILE_NAME_QUOTED));
-		
 		// Validando os diretórios de origem
 		for (Entry<String, String> entryDiretorioOrigem : nfeTransportador.getMapDiretorioOrigem().entrySet()) {
 			validacao.append(fileUtils.validarDiretorioOrigem(entryDiretorioOrigem.getValue(), entryDiretorioOrigem.getKey(), CONFIG_FILE_NAME_QUOTED));
 		}
 		
-		// Validando o CNPJ informado
-		if (nfeTransportador.getCnpj() == null || nfeTransportador.getCnpj().length() < 14) {
-			validacao.append("Propriedade \"" + PROPERTY_NAME_CNPJ_TRANSPORTADOR + "\" não encontrada ou não devidamente preenchida no arquivo "
-					+ CONFIG_FILE_NAME_QUOTED + ". Informe o CNPJ do Transportador que será buscado nas NF-es. Digite somente números" + System.lineSeparator());
-		} else {
-			nfeTransportador.setCnpj(nfeTransportador.getCnpj().replace(".", "").replace("/", "").replace("-", ""));
+		Set<String> cnpjsInformados = new HashSet<>();
+		for (Transportador transportador : nfeTransportador.getTransportadores()) {
+			String propertyNameCnpj = PROPERTY_NAME_CNPJ_TRANSPORTADOR + transportador.getSufixoPropriedades();
+			
+			// Validando o diretório de destino
+			validacao.append(fileUtils.validarDiretorioDestino(transportador.getDiretorioDestino(),
+					PROPERTY_NAME_DIRETORIO_DESTINO + transportador.getSufixoPropriedades(), CONFIG_FILE_NAME_QUOTED));
+			
+			// Validando o CNPJ informado
+			if (transportador.getCnpj() == null || transportador.getCnpj().length() < 11) {
+				validacao.append("Propriedade \"" + propertyNameCnpj + "\" não encontrada ou não devidamente preenchida no arquivo "
+						+ CONFIG_FILE_NAME_QUOTED + ". Informe o CNPJ (ou CPF) do Transportador que será buscado nas NF-es. Digite somente números" + System.lineSeparator());
+				continue;
+			}
+			transportador.setCnpj(transportador.getCnpj().replace(".", "").replace("/", "").replace("-", ""));
+			
+			if ((transportador.getCnpj().length() != 14 && transportador.getCnpj().length() != 11)
+					|| LocalizadorCnpjTransportador.converterCnpj(transportador.getCnpj()) == LocalizadorCnpjTransportador.CNPJ_NAO_ENCONTRADO) {
+				validacao.append("Propriedade \"" + propertyNameCnpj + "\" do arquivo " + CONFIG_FILE_NAME_QUOTED
+						+ " possui um CNPJ inválido. Informe os 14 dígitos do CNPJ ou os 11 dígitos do CPF do Transportador" + System.lineSeparator());
+				
+			} else if (!cnpjsInformados.add(transportador.getCnpj())) {
+				validacao.append("Propriedade \"" + propertyNameCnpj + "\" do arquivo " + CONFIG_FILE_NAME_QUOTED
+						+ " repete o CNPJ de outro transportador. Informe cada transportador somente uma vez" + System.lineSeparator());
+			}
 		}
 		
 		// Validando se foi informada uma data mínima para os arquivos que serão verificados
@@ -125,80 +417,303 @@ public class SelecionadorNfe {
 	}
 	
 	/**
-	 * Seleciona e copia os arquivos NF-e referentes ao transportador
+	 * Seleciona e copia os arquivos NF-e referentes aos transportadores
 	 * encontrados em cada um dos diretórios de origem
-	 * @param nfeTransportador objeto com CNPJ e diretório de destino
+	 * @param nfeTransportador objeto com os transportadores e diretórios de origem
+	 * @return quantidade de arquivos copiados
 	 * @throws Exception 
 	 */
-	protected void selecionarNfeTransportador(NfeTransportador nfeTransportador) throws Exception {
-		String diretorioArquivoCopia = fileUtils.getDiretorioArquivoCopia(nfeTransportador.getDiretorioDestino());
-		
-		Date dataMinimaArquivoNestaBusca = nfeTransportador.getDataMinimaArquivo();
+	protected int selecionarNfeTransportador(NfeTransportador nfeTransportador) throws Exception {
+		long janelaRevisao = TimeUnit.HOURS.toMillis(parametros.getJanelaRevisaoHoras());
 		Date dataInicioDestaBusca = new Date();
-		FileFilter fileFilter = new AgeFileFilter(dataMinimaArquivoNestaBusca, false);
-		
-		for (String pastaAtual : nfeTransportador.getMapDiretorioOrigem().values()) {
-			File[] arquivos = new File(pastaAtual).listFiles(fileFilter);
-			int qtdeArquivosCopiados = 0;
-			int qtdeErros = 0;
-	
-			for (File arquivo : arquivos) {
-				if (arquivo.isFile()) {
-					try {
-						// Criando a representação do arquivo cópia
-						File arquivoCopia = new File(diretorioArquivoCopia + File.separator + arquivo.getName());
-						
-						if (arquivoCopia.exists()) {
-							// Ignora o arquivo se este já existe no diretório de destino
-							continue;
-						}
-						String conteudoArquivo = fileUtils.getConteudoArquivo(new FileInputStream(arquivo));
-						
-						if (conteudoArquivo == null || conteudoArquivo.isEmpty()) {
-							// Ignora o arquivo se estiver vazio
-							continue;
-						}
-						// Procura pelo padrão <transporta><CNPJ>"qualquercoisa"</CNPJ>
-						Matcher matcher = PATTERN_CNPJ_TRANSPORTADOR.matcher(conteudoArquivo);
-						
-						// Verifica se o conteúdo de "qualquercoisa" é igual o CNPJ buscado
-						if (matcher.find() && matcher.group(1).equals(nfeTransportador.getCnpj())) {
-							
-							// Cria o diretório do arquivo cópia caso ainda não tenha sido criado
-							fileUtils.criarDiretorio(diretorioArquivoCopia);
-							
-							// Copia o arquivo ao destino informado
-							fileUtils.copiarArquivo(arquivo, arquivoCopia);
-							qtdeArquivosCopiados++;
-						}
-					} catch (FileNotFoundException e) {
-						System.err.println("Erro na leitura do arquivo \"" + arquivo.getName() + "\": " + e.getMessage());
-						qtdeErros++;
-						
-					} catch (Exception e) {
-						System.err.println("Erro ao copiar o arquivo \"" + arquivo.getName() + "\": " + e.getMessage());
-						qtdeErros++;
+		int qtdeArquivosCopiados;
+		
+		try {
+			qtdeArquivosCopiados = processarPastas(nfeTransportador, null);
+			
+		} finally {
+			indiceArquivos.gravar();
+			if (catalogo != null) {
+				catalogo.gravar();
+			}
+		}
+		
+		// Descarta do índice os arquivos que não serão mais listados nas próximas buscas. Estes continuam no catálogo
+		indiceArquivos.descartarAnteriores(dataInicioDestaBusca.getTime() - janelaRevisao);
+		if (catalogo != null) {
+			catalogo.compactarSeNecessario();
+		}
+		
+		// Atribui a data do início desta execução como a data mínima
+		nfeTransportador.setDataMinimaArquivo(dataInicioDestaBusca);
+		
+		return qtdeArquivosCopiados;
+	}
+	
+	/**
+	 * Processa os diretórios de origem ao mesmo tempo, limitado à quantidade de pastas em paralelo
+	 * @param nfeTransportador objeto com os transportadores e diretórios de origem
+	 * @param arquivosPorPasta arquivos a processar de cada diretório ou <b>null</b> para listar todos os diretórios
+	 * @return quantidade de arquivos copiados
+	 * @throws Exception
+	 */
+	private int processarPastas(NfeTransportador nfeTransportador, Map<String, Collection<File>> arquivosPorPasta) throws Exception {
+		atualizarManifestos();
+		
+		// O CNPJ localizado em cada arquivo indica o diretório para onde ele será copiado, na pasta do dia
+		// atual, e o manifesto dos arquivos já entregues, em qualquer data, no destino do transportador
+		Map<Long, String> mapDiretorioCopiaPorCnpj = new HashMap<>();
+		for (Entry<Long, String> entry : mapDiretorioDestinoPorCnpj.entrySet()) {
+			mapDiretorioCopiaPorCnpj.put(entry.getKey(), fileUtils.getDiretorioArquivoCopia(entry.getValue()));
+		}
+		
+		Collection<String> pastas = nfeTransportador.getMapDiretorioOrigem().values();
+		if (arquivosPorPasta != null) {
+			// Além dos diretórios do lote, os que possuem arquivos adiados são verificados novamente
+			Set<String> pastasLote = new LinkedHashSet<>(arquivosPorPasta.keySet());
+			pastasLote.addAll(arquivosAdiados.getPastas(pastas));
+			pastas = pastasLote;
+		}
+		if (coordenadorCluster != null) {
+			// Em modo cluster, somente os diretórios concedidos a este nó são processados, e as suas concessões
+			// são mantidas até o término da busca
+			pastas = coordenadorCluster.iniciarBusca(pastas);
+			
+			if (coordenadorCluster.verificarDiretoriosAssumidos()) {
+				// Os arquivos entregues pelo nó que processava os diretórios assumidos não constam dos manifestos
+				try {
+					recarregarManifestos();
+					
+				} catch (IOException e) {
+					coordenadorCluster.finalizarBusca();
+					throw e;
+				}
+			}
+		}
+		Map<String, MetricasSelecao> metricasPorPasta = new HashMap<>();
+		long dataMinimaConfigurada = nfeTransportador.getDataMinimaArquivo().getTime();
+		long janelaRevisao = TimeUnit.HOURS.toMillis(parametros.getJanelaRevisaoHoras());
+		long inicioBusca = System.nanoTime();
+		int qtdeArquivosCopiados = 0;
+		
+		ExecutorService executorPastas = Executors.newFixedThreadPool(Math.max(1, Math.min(parametros.getQuantidadePastasEmParalelo(), pastas.size())));
+		try {
+			List<Future<Integer>> processamentos = new ArrayList<>();
+			
+			for (String pastaAtual : pastas) {
+				// Cada diretório é listado a partir do seu último ponto de controle, ou da data mínima configurada.
+				// Os arquivos modificados dentro da janela de revisão anterior a esta data são listados
+				// novamente para que arquivos gravados com data antiga não sejam perdidos. O índice
+				// evita que os arquivos já avaliados sejam lidos outra vez
+				long dataModificacaoMinima = 0;
+				List<CatalogoNfe.Entrada> entradasCatalogo = null;
+				if (arquivosPorPasta == null) {
+					long dataMinimaPasta = pontosControle != null ? pontosControle.getDataMinima(pastaAtual, dataMinimaConfigurada) : dataMinimaConfigurada;
+					dataModificacaoMinima = dataMinimaPasta - janelaRevisao;
+					
+					// Em uma busca retroativa (por exemplo, com a data mínima configurada antecipada para incluir um
+					// transportador), os arquivos já catalogados são obtidos do catálogo e somente o período da última
+					// listagem do diretório, com a sua janela de revisão, é listado novamente
+					long fimCatalogo = catalogo != null && catalogo.isCoberto(pastaAtual, dataModificacaoMinima)
+							? catalogo.getFimCobertura(pastaAtual) - janelaRevisao : 0;
+					if (fimCatalogo > dataModificacaoMinima) {
+						entradasCatalogo = catalogo.consultar(pastaAtual, mapDiretorioCopiaPorCnpj.keySet(), dataModificacaoMinima, fimCatalogo);
+						dataModificacaoMinima = fimCatalogo;
 					}
+				}
+				ProcessadorPastaOrigem processador = new ProcessadorPastaOrigem(pastaAtual, dataModificacaoMinima, mapDiretorioCopiaPorCnpj,
+						parametros.getQuantidadeThreadsLeituraPorPasta(), parametros.getQuantidadeThreadsCopiaPorPasta(), IO_ERROR_TOLERANCE_BY_FOLDER,
+						mapManifestoPorCnpj, indiceArquivos, fileUtils);
+				
+				if (arquivosPorPasta != null) {
+					Collection<File> arquivosPasta = arquivosPorPasta.get(pastaAtual);
+					processador.setArquivos(arquivosPasta != null ? arquivosPasta : Collections.<File>emptyList());
+					
+				} else if (pontosControle != null) {
+					processador.setPontosControle(pontosControle, dataMinimaConfigurada);
+				}
+				MetricasSelecao metricasPasta = new MetricasSelecao();
+				metricasPorPasta.put(pastaAtual, metricasPasta);
+				processador.setMetricas(metricasPasta);
+				processador.setBuscaRecursiva(parametros.isBuscarEmSubdiretorios());
+				processador.setPadraoNomeArquivos(padraoNomeArquivos);
+				processador.setArquivosAdiados(arquivosAdiados);
+				processador.setTentativasCopia(parametros.getTentativasCopia(), parametros.getEsperaEntreTentativasCopiaMilisegundos());
+				processador.setArquivosPorPacote(parametros.getArquivosPorPacote(), pacotesDestino);
+				processador.setVerificarCopias(parametros.isVerificarCopias());
+				processador.setOrdemLeitura(parametros.getOrdemLeitura(), parametros.getTamanhoFilaPrioridade());
+				processador.setOrcamentoIO(orcamentoIO);
+				processador.setCatalogo(catalogo);
+				processador.setEntradasCatalogo(entradasCatalogo);
+				
+				processamentos.add(executorPastas.submit(processador));
+			}
+			for (Future<Integer> processamento : processamentos) {
+				try {
+					qtdeArquivosCopiados += processamento.get();
 					
-					if (qtdeErros > IO_ERROR_TOLERANCE_BY_FOLDER) {
-						// Interrompendo a busca por exceder o limite de tolerância à erros de I/O
-						throw new SelecionadorNfeException("Erros encontrados na leitura/cópia de arquivos do diretório " + pastaAtual
-								+ "; Verifique as últimas mensagens no log para ver detalhes sobre os erros" + System.lineSeparator());
+				} catch (ExecutionException e) {
+					// Repassa o erro do diretório, interrompendo os demais no bloco finally
+					if (e.getCause() instanceof Exception) {
+						throw (Exception) e.getCause();
 					}
+					throw e;
+				}
+			}
+		} finally {
+			executorPastas.shutdownNow();
+			ProcessadorPastaOrigem.aguardarTermino(executorPastas);
+			
+			// Os pacotes das pastas do dia anterior são selados; os demais continuam abertos para a próxima busca
+			try {
+				pacotesDestino.finalizarBusca(mapDiretorioCopiaPorCnpj.values(), indiceArquivos);
+				
+			} catch (IOException e) {
+				System.err.println("Não foi possível registrar as entregas dos pacotes: " + e.getMessage());
+			}
+			if (coordenadorCluster != null) {
+				coordenadorCluster.finalizarBusca();
+			}
+			RegistroMetricas.getInstancia().registrarBusca(metricasPorPasta, System.nanoTime() - inicioBusca);
+			
+			if (arquivosPorPasta != null) {
+				indiceArquivos.gravar();
+				if (catalogo != null) {
+					catalogo.gravar();
 				}
 			}
+		}
+		return qtdeArquivosCopiados;
+	}
+	
+	/**
+	 * Carrega os parâmetros de execução, usando os valores padrão se não informados
+	 * @return parâmetros de execução
+	 * @throws SelecionadorNfeException
+	 */
+	protected ParametrosExecucao carregarParametros() throws SelecionadorNfeException {
+		ParametrosExecucao parametros = new ParametrosExecucao();
+		parametros.setQuantidadePastasEmParalelo(getPropriedadeInteira(PROPERTY_NAME_QTDE_PASTAS_EM_PARALELO, DEFAULT_QTDE_PASTAS_EM_PARALELO, 1));
+		parametros.setQuantidadeThreadsLeituraPorPasta(getPropriedadeInteira(PROPERTY_NAME_QTDE_THREADS_LEITURA_POR_PASTA, DEFAULT_QTDE_THREADS_LEITURA_POR_PASTA, 1));
+		parametros.setQuantidadeThreadsCopiaPorPasta(getPropriedadeInteira(PROPERTY_NAME_QTDE_THREADS_COPIA_POR_PASTA, DEFAULT_QTDE_THREADS_COPIA_POR_PASTA, 1));
+		parametros.setTentativasCopia(getPropriedadeInteira(PROPERTY_NAME_TENTATIVAS_COPIA, DEFAULT_TENTATIVAS_COPIA, 1));
+		parametros.setEsperaEntreTentativasCopiaMilisegundos(getPropriedadeInteira(PROPERTY_NAME_ESPERA_ENTRE_TENTATIVAS_COPIA_MILISEGUNDOS,
+				DEFAULT_ESPERA_ENTRE_TENTATIVAS_COPIA_MILISEGUNDOS, 0));
+		parametros.setJanelaRevisaoHoras(getPropriedadeInteira(PROPERTY_NAME_JANELA_REVISAO_HORAS, DEFAULT_JANELA_REVISAO_HORAS, 0));
+		parametros.setIntervaloExecucaoMinutos(getPropriedadeInteira(PROPERTY_NAME_INTERVALO_EXECUCAO_MINUTOS, DEFAULT_INTERVALO_EXECUCAO_MINUTOS, 1));
+		parametros.setIntervaloMaximoExecucaoMinutos(getPropriedadeInteira(PROPERTY_NAME_INTERVALO_MAXIMO_EXECUCAO_MINUTOS,
+				Math.max(DEFAULT_INTERVALO_MAXIMO_EXECUCAO_MINUTOS, parametros.getIntervaloExecucaoMinutos()), parametros.getIntervaloExecucaoMinutos()));
+		parametros.setMonitorarDiretorios(config.getBoolean(PROPERTY_NAME_MONITORAR_DIRETORIOS, false));
+		parametros.setIntervaloReconciliacaoMinutos(getPropriedadeInteira(PROPERTY_NAME_INTERVALO_RECONCILIACAO_MINUTOS, DEFAULT_INTERVALO_RECONCILIACAO_MINUTOS, 1));
+		
+		String estrategiaCopia = config.getString(PROPERTY_NAME_ESTRATEGIA_COPIA, EstrategiaCopia.AUTOMATICA.name());
+		try {
+			parametros.setEstrategiaCopia(EstrategiaCopia.valueOf(estrategiaCopia.trim().toUpperCase()));
 			
-			StringBuilder mensagem = new StringBuilder();
-			mensagem.append(qtdeArquivosCopiados);
-			mensagem.append(" arquivos NF-e copiados do diretório ");
-			mensagem.append(pastaAtual);
-			mensagem.append(" em ");
-			mensagem.append(DATE_FORMAT.format(new Date()));
-			System.out.println(mensagem.toString());
+		} catch (IllegalArgumentException e) {
+			throw new SelecionadorNfeException("Propriedade \"" + PROPERTY_NAME_ESTRATEGIA_COPIA + "\" do arquivo " + CONFIG_FILE_NAME_QUOTED
+					+ " possui valor inválido. Informe um dos valores: " + Arrays.toString(EstrategiaCopia.values()) + System.lineSeparator());
 		}
+		fileUtils.setEstrategiaCopia(parametros.getEstrategiaCopia());
 		
-		// Atribui a data do início desta execução como a data mínima
-		nfeTransportador.setDataMinimaArquivo(dataInicioDestaBusca);
+		parametros.setPortaMetricas(getPropriedadeInteira(PROPERTY_NAME_PORTA_METRICAS, 0, 0));
+		parametros.setBuscarEmSubdiretorios(config.getBoolean(PROPERTY_NAME_BUSCAR_EM_SUBDIRETORIOS, false));
+		parametros.setTempoEstabilizacaoSegundos(getPropriedadeInteira(PROPERTY_NAME_TEMPO_ESTABILIZACAO_SEGUNDOS, DEFAULT_TEMPO_ESTABILIZACAO_SEGUNDOS, 0));
+		parametros.setArquivosPorPacote(getPropriedadeInteira(PROPERTY_NAME_ARQUIVOS_POR_PACOTE, 0, 0));
+		parametros.setVerificarCopias(config.getBoolean(PROPERTY_NAME_VERIFICAR_COPIAS, false));
+		
+		String ordemLeitura = config.getString(PROPERTY_NAME_ORDEM_LEITURA, OrdemLeitura.LISTAGEM.name());
+		try {
+			parametros.setOrdemLeitura(OrdemLeitura.valueOf(ordemLeitura.trim().toUpperCase()));
+			
+		} catch (IllegalArgumentException e) {
+			throw new SelecionadorNfeException("Propriedade \"" + PROPERTY_NAME_ORDEM_LEITURA + "\" do arquivo " + CONFIG_FILE_NAME_QUOTED
+					+ " possui valor inválido. Informe um dos valores: " + Arrays.toString(OrdemLeitura.values()) + System.lineSeparator());
+		}
+		parametros.setTamanhoFilaPrioridade(getPropriedadeInteira(PROPERTY_NAME_TAMANHO_FILA_PRIORIDADE, DEFAULT_TAMANHO_FILA_PRIORIDADE, 1));
+		parametros.setOrcamentoIOKbPorSegundo(getPropriedadeInteira(PROPERTY_NAME_ORCAMENTO_IO_KB_POR_SEGUNDO, 0, 0));
+		parametros.setOrcamentoIOArquivosPorSegundo(getPropriedadeInteira(PROPERTY_NAME_ORCAMENTO_IO_ARQUIVOS_POR_SEGUNDO, 0, 0));
+		parametros.setHorarioOrcamentoIO(config.getStringArray(PROPERTY_NAME_HORARIO_ORCAMENTO_IO));
+		try {
+			orcamentoIO.configurar(parametros.getOrcamentoIOKbPorSegundo() * 1024L, parametros.getOrcamentoIOArquivosPorSegundo(),
+					parametros.getHorarioOrcamentoIO());
+			
+		} catch (IllegalArgumentException e) {
+			throw new SelecionadorNfeException("Propriedade \"" + PROPERTY_NAME_HORARIO_ORCAMENTO_IO + "\" do arquivo " + CONFIG_FILE_NAME_QUOTED
+					+ " possui a faixa de horário inválida \"" + e.getMessage() + "\". Ex.: 07:00-19:00" + System.lineSeparator());
+		}
+		
+		arquivosAdiados.setTempoEstabilizacao(TimeUnit.SECONDS.toMillis(parametros.getTempoEstabilizacaoSegundos()));
+		
+		parametros.setModoCluster(config.getBoolean(PROPERTY_NAME_MODO_CLUSTER, false));
+		parametros.setNomeNo(config.getString(PROPERTY_NAME_NOME_NO, getNomeNoPadrao()));
+		parametros.setDiretorioCoordenacao(config.getString(PROPERTY_NAME_DIRETORIO_COORDENACAO));
+		if (parametros.isModoCluster() && (parametros.getDiretorioCoordenacao() == null || parametros.getDiretorioCoordenacao().trim().isEmpty())) {
+			// O diretório de coordenação não tem padrão: dentro do destino, os arquivos de concessão seriam entregues junto
+			// com as NF-es, e um diretório vizinho ao destino pode não estar no compartilhamento acessado pelos demais nós
+			throw new SelecionadorNfeException("Propriedade \"" + PROPERTY_NAME_DIRETORIO_COORDENACAO + "\" do arquivo " + CONFIG_FILE_NAME_QUOTED
+					+ " é obrigatória no modo cluster. Informe um diretório compartilhado por todos os nós, fora de \""
+					+ PROPERTY_NAME_DIRETORIO_DESTINO + "\"" + System.lineSeparator());
+		}
+		if (parametros.isModoCluster() && config.getString(PROPERTY_NAME_DIRETORIO_DESTINO) != null
+				&& Paths.get(parametros.getDiretorioCoordenacao()).toAbsolutePath().normalize()
+				.startsWith(Paths.get(config.getString(PROPERTY_NAME_DIRETORIO_DESTINO)).toAbsolutePath().normalize())) {
+			throw new SelecionadorNfeException("Propriedade \"" + PROPERTY_NAME_DIRETORIO_COORDENACAO + "\" do arquivo " + CONFIG_FILE_NAME_QUOTED
+					+ " não pode estar dentro de \"" + PROPERTY_NAME_DIRETORIO_DESTINO + "\": os arquivos de concessão seriam entregues junto com as NF-es"
+					+ System.lineSeparator());
+		}
+		parametros.setDuracaoConcessaoSegundos(getPropriedadeInteira(PROPERTY_NAME_DURACAO_CONCESSAO_SEGUNDOS, DEFAULT_DURACAO_CONCESSAO_SEGUNDOS,
+				MINIMO_DURACAO_CONCESSAO_SEGUNDOS));
+		
+		// As vírgulas dos padrões alternativos separam a propriedade em uma lista, que é unida novamente
+		StringBuilder padraoNomeArquivos = new StringBuilder();
+		for (String parte : config.getStringArray(PROPERTY_NAME_PADRAO_NOME_ARQUIVOS)) {
+			padraoNomeArquivos.append(padraoNomeArquivos.length() > 0 ? "," : "").append(parte.trim());
+		}
+		parametros.setPadraoNomeArquivos(padraoNomeArquivos.length() > 0 ? padraoNomeArquivos.toString() : DEFAULT_PADRAO_NOME_ARQUIVOS);
+		try {
+			FileSystems.getDefault().getPathMatcher("glob:" + parametros.getPadraoNomeArquivos());
+			
+		} catch (IllegalArgumentException e) {
+			throw new SelecionadorNfeException("Propriedade \"" + PROPERTY_NAME_PADRAO_NOME_ARQUIVOS + "\" do arquivo " + CONFIG_FILE_NAME_QUOTED
+					+ " possui um padrão inválido. Ex.: *.xml ou {*-nfe.xml,*-procNFe.xml}" + System.lineSeparator());
+		}
+		return parametros;
+	}
+	
+	/**
+	 * @return nome do computador, usado como nome do nó no modo cluster quando não informado
+	 */
+	private static String getNomeNoPadrao() {
+		try {
+			return InetAddress.getLocalHost().getHostName();
+			
+		} catch (UnknownHostException e) {
+			return ManagementFactory.getRuntimeMXBean().getName();
+		}
+	}
+	
+	/**
+	 * Obtém uma propriedade numérica opcional do arquivo de configuração
+	 * @param propertyName nome da propriedade
+	 * @param valorPadrao valor usado quando a propriedade não foi informada
+	 * @param valorMinimo menor valor aceito
+	 * @return valor da propriedade
+	 * @throws SelecionadorNfeException se o valor informado não for um número inteiro maior ou igual ao mínimo
+	 */
+	private int getPropriedadeInteira(String propertyName, int valorPadrao, int valorMinimo) throws SelecionadorNfeException {
+		int valor;
+		try {
+			valor = config.getInt(propertyName, valorPadrao);
+			
+		} catch (Exception e) {
+			valor = valorMinimo - 1;
+		}
+		if (valor < valorMinimo) {
+			throw new SelecionadorNfeException("Propriedade \"" + propertyName + "\" do arquivo " + CONFIG_FILE_NAME_QUOTED
+					+ " possui valor inválido. Informe um número inteiro maior ou igual a " + valorMinimo + System.lineSeparator());
+		}
+		return valor;
 	}
 	
 	/**
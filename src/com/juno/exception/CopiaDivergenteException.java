@@ -0,0 +1,15 @@
+package com.juno.exception;
+
+import java.io.IOException;
+
+/**
+ * O arquivo gravado no destino não confere com o conteúdo lido da origem, por exemplo após
+ * uma desconexão do compartilhamento durante a gravação. A gravação pode ser repetida
+ */
+public class CopiaDivergenteException extends IOException {
+	private static final long serialVersionUID = -2385032478720435117L;
+
+	public CopiaDivergenteException(String message) {
+		super(message);
+	}
+}
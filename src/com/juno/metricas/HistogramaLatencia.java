@@ -0,0 +1,130 @@
+package com.juno.metricas;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histograma de latências com faixas fixas, de 50 microssegundos a 15 minutos. O registro
+ * de uma medição não aloca objetos e pode ser feito por várias threads ao mesmo tempo
+ */
+public class HistogramaLatencia {
+
+	/**
+	 * Limite superior de cada faixa, em nanossegundos. A última faixa, sem limite, não está na lista
+	 */
+	static final long[] LIMITES_NANOS = {
+			TimeUnit.MICROSECONDS.toNanos(50), TimeUnit.MICROSECONDS.toNanos(100), TimeUnit.MICROSECONDS.toNanos(250),
+			TimeUnit.MICROSECONDS.toNanos(500), TimeUnit.MILLISECONDS.toNanos(1), TimeUnit.MICROSECONDS.toNanos(2500),
+			TimeUnit.MILLISECONDS.toNanos(5), TimeUnit.MILLISECONDS.toNanos(10), TimeUnit.MILLISECONDS.toNanos(25),
+			TimeUnit.MILLISECONDS.toNanos(50), TimeUnit.MILLISECONDS.toNanos(100), TimeUnit.MILLISECONDS.toNanos(250),
+			TimeUnit.MILLISECONDS.toNanos(500), TimeUnit.SECONDS.toNanos(1), TimeUnit.MILLISECONDS.toNanos(2500),
+			TimeUnit.SECONDS.toNanos(5), TimeUnit.SECONDS.toNanos(10), TimeUnit.SECONDS.toNanos(30),
+			TimeUnit.MINUTES.toNanos(1), TimeUnit.MINUTES.toNanos(5), TimeUnit.MINUTES.toNanos(15) };
+
+	private final AtomicLongArray faixas = new AtomicLongArray(LIMITES_NANOS.length + 1);
+	private final AtomicLong quantidade = new AtomicLong();
+	private final AtomicLong somaNanos = new AtomicLong();
+	private final AtomicLong maximoNanos = new AtomicLong();
+
+	/**
+	 * Registra uma medição
+	 * @param nanos duração em nanossegundos
+	 */
+	public void registrar(long nanos) {
+		int faixa = 0;
+		while (faixa < LIMITES_NANOS.length && nanos > LIMITES_NANOS[faixa]) {
+			faixa++;
+		}
+		faixas.incrementAndGet(faixa);
+		quantidade.incrementAndGet();
+		somaNanos.addAndGet(nanos);
+
+		long maximo = maximoNanos.get();
+		while (nanos > maximo && !maximoNanos.compareAndSet(maximo, nanos)) {
+			maximo = maximoNanos.get();
+		}
+	}
+
+	/**
+	 * Soma as medições do histograma informado a este
+	 * @param outro histograma somado
+	 */
+	public void acumular(HistogramaLatencia outro) {
+		for (int i = 0; i < faixas.length(); i++) {
+			faixas.addAndGet(i, outro.faixas.get(i));
+		}
+		quantidade.addAndGet(outro.quantidade.get());
+		somaNanos.addAndGet(outro.somaNanos.get());
+
+		long maximoOutro = outro.maximoNanos.get();
+		long maximo = maximoNanos.get();
+		while (maximoOutro > maximo && !maximoNanos.compareAndSet(maximo, maximoOutro)) {
+			maximo = maximoNanos.get();
+		}
+	}
+
+	/**
+	 * Descarta todas as medições
+	 */
+	public void zerar() {
+		for (int i = 0; i < faixas.length(); i++) {
+			faixas.set(i, 0);
+		}
+		quantidade.set(0);
+		somaNanos.set(0);
+		maximoNanos.set(0);
+	}
+
+	/**
+	 * @return quantidade de medições
+	 */
+	public long getQuantidade() {
+		return quantidade.get();
+	}
+
+	/**
+	 * @return soma das medições em nanossegundos
+	 */
+	public long getSomaNanos() {
+		return somaNanos.get();
+	}
+
+	/**
+	 * @return maior medição em nanossegundos
+	 */
+	public long getMaximoNanos() {
+		return maximoNanos.get();
+	}
+
+	/**
+	 * @param faixa índice da faixa, de 0 até a quantidade de {@link #LIMITES_NANOS} (faixa sem limite)
+	 * @return quantidade de medições na faixa
+	 */
+	long getQuantidadeFaixa(int faixa) {
+		return faixas.get(faixa);
+	}
+
+	/**
+	 * Estima o percentil pelo limite superior da faixa em que ele se encontra
+	 * @param percentual percentual entre 0 e 100
+	 * @return percentil estimado em nanossegundos ou 0 se não houver medições
+	 */
+	public long getPercentilNanos(double percentual) {
+		long total = quantidade.get();
+		if (total == 0) {
+			return 0;
+		}
+		long posicao = (long) Math.ceil(total * percentual / 100);
+		long acumulado = 0;
+
+		for (int i = 0; i < LIMITES_NANOS.length; i++) {
+			acumulado += faixas.get(i);
+
+			if (acumulado >= posicao) {
+				return Math.min(LIMITES_NANOS[i], maximoNanos.get());
+			}
+		}
+		return maximoNanos.get();
+	}
+}
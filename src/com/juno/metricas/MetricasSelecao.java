@@ -0,0 +1,317 @@
+package com.juno.metricas;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Contadores e latências de uma busca, de um diretório de origem ou do acumulado
+ * desde o início do service. Os registros podem ser feitos por várias threads
+ * ao mesmo tempo e não alocam objetos
+ */
+public class MetricasSelecao implements MetricasSelecaoMBean {
+
+	/**
+	 * Contadores de arquivos e bytes
+	 */
+	public enum Contador {
+		/**
+		 * Arquivos listados ou recebidos do monitoramento dos diretórios
+		 */
+		ARQUIVOS_LISTADOS("arquivos_listados", "Arquivos listados nos diretórios de origem"),
+		/**
+		 * Arquivos obtidos do catálogo de NF-es no lugar da listagem, sem leitura
+		 */
+		ARQUIVOS_DO_CATALOGO("arquivos_do_catalogo", "Arquivos obtidos do catálogo de NF-es, sem listagem nem leitura"),
+		/**
+		 * Arquivos desconsiderados na listagem pela data de modificação
+		 */
+		ARQUIVOS_FORA_DO_PERIODO("arquivos_fora_do_periodo", "Arquivos desconsiderados pela data de modificação"),
+		/**
+		 * Arquivos que ainda podem estar sendo gravados, cuja leitura foi adiada
+		 */
+		ARQUIVOS_ADIADOS("arquivos_adiados", "Arquivos adiados por ainda estarem sendo gravados"),
+		/**
+		 * Arquivos já copiados, ignorados sem leitura
+		 */
+		ARQUIVOS_IGNORADOS("arquivos_ignorados", "Arquivos ignorados por já terem sido copiados"),
+		/**
+		 * Arquivos lidos para localizar o CNPJ do transportador
+		 */
+		ARQUIVOS_LIDOS("arquivos_lidos", "Arquivos lidos para localizar o CNPJ do transportador"),
+		/**
+		 * Bytes percorridos na localização do CNPJ do transportador
+		 */
+		BYTES_LIDOS("bytes_lidos", "Bytes percorridos na localização do CNPJ do transportador"),
+		/**
+		 * Arquivos de um dos transportadores buscados
+		 */
+		ARQUIVOS_SELECIONADOS("arquivos_selecionados", "Arquivos de um dos transportadores buscados"),
+		/**
+		 * Arquivos que não são de nenhum dos transportadores buscados
+		 */
+		ARQUIVOS_DESCARTADOS("arquivos_descartados", "Arquivos que não são de nenhum dos transportadores buscados"),
+		/**
+		 * Arquivos copiados aos diretórios de destino
+		 */
+		ARQUIVOS_COPIADOS("arquivos_copiados", "Arquivos copiados aos diretórios de destino"),
+		/**
+		 * Bytes copiados aos diretórios de destino
+		 */
+		BYTES_COPIADOS("bytes_copiados", "Bytes copiados aos diretórios de destino"),
+		/**
+		 * Gravações no destino repetidas após um erro transitório de I/O
+		 */
+		NOVAS_TENTATIVAS_COPIA("novas_tentativas_copia", "Gravações no destino repetidas após erros transitórios de I/O"),
+		/**
+		 * Cópias verificadas cujo conteúdo gravado no destino não conferiu com a origem
+		 */
+		COPIAS_DIVERGENTES("copias_divergentes", "Cópias cujo conteúdo gravado no destino não conferiu com a origem"),
+		/**
+		 * Vezes em que a listagem aguardou a conclusão de uma cópia por estar a fila de cópias cheia
+		 */
+		ESPERAS_FILA_COPIA("esperas_fila_copia", "Vezes em que a listagem aguardou a fila de cópias cheia"),
+		/**
+		 * Tempo, em milissegundos, em que as leituras e cópias aguardaram o orçamento de I/O
+		 */
+		ESPERA_ORCAMENTO_IO("espera_orcamento_io_milisegundos", "Tempo de espera pelo orçamento de I/O em milissegundos"),
+		/**
+		 * Erros de leitura ou cópia
+		 */
+		ERROS("erros", "Erros de leitura ou cópia de arquivos");
+
+		private final String nomeMetrica;
+		private final String descricao;
+
+		private Contador(String nomeMetrica, String descricao) {
+			this.nomeMetrica = nomeMetrica;
+			this.descricao = descricao;
+		}
+
+		/**
+		 * @return nome usado na exposição das métricas em texto
+		 */
+		public String getNomeMetrica() {
+			return nomeMetrica;
+		}
+
+		/**
+		 * @return descrição do contador
+		 */
+		public String getDescricao() {
+			return descricao;
+		}
+	}
+
+	/**
+	 * Etapas com latência medida
+	 */
+	public enum Etapa {
+		/**
+		 * Busca completa ou de um lote de arquivos, com todos os diretórios
+		 */
+		BUSCA("busca"),
+		/**
+		 * Listagem de um diretório de origem
+		 */
+		LISTAGEM("listagem"),
+		/**
+		 * Leitura de um arquivo até a localização do CNPJ do transportador
+		 */
+		LEITURA("leitura"),
+		/**
+		 * Consulta ao índice e ao destino que decide se o arquivo será copiado
+		 */
+		SELECAO("selecao"),
+		/**
+		 * Cópia de um arquivo ao diretório de destino
+		 */
+		COPIA("copia");
+
+		private final String nomeMetrica;
+
+		private Etapa(String nomeMetrica) {
+			this.nomeMetrica = nomeMetrica;
+		}
+
+		/**
+		 * @return nome usado na exposição das métricas em texto
+		 */
+		public String getNomeMetrica() {
+			return nomeMetrica;
+		}
+	}
+
+	private final AtomicLongArray contadores = new AtomicLongArray(Contador.values().length);
+	private final HistogramaLatencia[] latencias = new HistogramaLatencia[Etapa.values().length];
+
+	public MetricasSelecao() {
+		for (int i = 0; i < latencias.length; i++) {
+			latencias[i] = new HistogramaLatencia();
+		}
+	}
+
+	/**
+	 * Incrementa o contador em uma unidade
+	 * @param contador contador incrementado
+	 */
+	public void incrementar(Contador contador) {
+		contadores.incrementAndGet(contador.ordinal());
+	}
+
+	/**
+	 * Soma o valor informado ao contador
+	 * @param contador contador incrementado
+	 * @param valor valor somado
+	 */
+	public void somar(Contador contador, long valor) {
+		contadores.addAndGet(contador.ordinal(), valor);
+	}
+
+	/**
+	 * Registra a duração de uma etapa
+	 * @param etapa etapa medida
+	 * @param nanos duração em nanossegundos, obtida com {@link System#nanoTime()}
+	 */
+	public void registrarLatencia(Etapa etapa, long nanos) {
+		latencias[etapa.ordinal()].registrar(nanos);
+	}
+
+	/**
+	 * @param contador contador consultado
+	 * @return valor atual do contador
+	 */
+	public long get(Contador contador) {
+		return contadores.get(contador.ordinal());
+	}
+
+	/**
+	 * @param etapa etapa consultada
+	 * @return histograma das latências da etapa
+	 */
+	public HistogramaLatencia getLatencia(Etapa etapa) {
+		return latencias[etapa.ordinal()];
+	}
+
+	/**
+	 * Soma os contadores e latências das métricas informadas a estas
+	 * @param outras métricas somadas
+	 */
+	public void acumular(MetricasSelecao outras) {
+		for (int i = 0; i < contadores.length(); i++) {
+			contadores.addAndGet(i, outras.contadores.get(i));
+		}
+		for (int i = 0; i < latencias.length; i++) {
+			latencias[i].acumular(outras.latencias[i]);
+		}
+	}
+
+	/**
+	 * Descarta todos os contadores e latências
+	 */
+	public void zerar() {
+		for (int i = 0; i < contadores.length(); i++) {
+			contadores.set(i, 0);
+		}
+		for (HistogramaLatencia latencia : latencias) {
+			latencia.zerar();
+		}
+	}
+
+	@Override
+	public long getArquivosListados() {
+		return get(Contador.ARQUIVOS_LISTADOS);
+	}
+
+	@Override
+	public long getArquivosDoCatalogo() {
+		return get(Contador.ARQUIVOS_DO_CATALOGO);
+	}
+
+	@Override
+	public long getArquivosForaDoPeriodo() {
+		return get(Contador.ARQUIVOS_FORA_DO_PERIODO);
+	}
+
+	@Override
+	public long getArquivosAdiados() {
+		return get(Contador.ARQUIVOS_ADIADOS);
+	}
+
+	@Override
+	public long getArquivosIgnorados() {
+		return get(Contador.ARQUIVOS_IGNORADOS);
+	}
+
+	@Override
+	public long getArquivosLidos() {
+		return get(Contador.ARQUIVOS_LIDOS);
+	}
+
+	@Override
+	public long getBytesLidos() {
+		return get(Contador.BYTES_LIDOS);
+	}
+
+	@Override
+	public long getArquivosSelecionados() {
+		return get(Contador.ARQUIVOS_SELECIONADOS);
+	}
+
+	@Override
+	public long getArquivosDescartados() {
+		return get(Contador.ARQUIVOS_DESCARTADOS);
+	}
+
+	@Override
+	public long getArquivosCopiados() {
+		return get(Contador.ARQUIVOS_COPIADOS);
+	}
+
+	@Override
+	public long getBytesCopiados() {
+		return get(Contador.BYTES_COPIADOS);
+	}
+
+	@Override
+	public long getNovasTentativasCopia() {
+		return get(Contador.NOVAS_TENTATIVAS_COPIA);
+	}
+
+	@Override
+	public long getCopiasDivergentes() {
+		return get(Contador.COPIAS_DIVERGENTES);
+	}
+
+	@Override
+	public long getEsperasFilaCopia() {
+		return get(Contador.ESPERAS_FILA_COPIA);
+	}
+
+	@Override
+	public long getEsperaOrcamentoIO() {
+		return get(Contador.ESPERA_ORCAMENTO_IO);
+	}
+
+	@Override
+	public long getErros() {
+		return get(Contador.ERROS);
+	}
+
+	@Override
+	public String[] getResumoLatencias() {
+		List<String> resumo = new ArrayList<>();
+
+		for (Etapa etapa : Etapa.values()) {
+			HistogramaLatencia latencia = getLatencia(etapa);
+
+			if (latencia.getQuantidade() > 0) {
+				resumo.add(String.format(Locale.ROOT, "%s: %d medições, média %.3f ms, p95 %.3f ms, máximo %.3f ms", etapa.getNomeMetrica(),
+						latencia.getQuantidade(), latencia.getSomaNanos() / 1e6 / latencia.getQuantidade(),
+						latencia.getPercentilNanos(95) / 1e6, latencia.getMaximoNanos() / 1e6));
+			}
+		}
+		return resumo.toArray(new String[resumo.size()]);
+	}
+}
@@ -0,0 +1,44 @@
+package com.juno.metricas;
+
+/**
+ * Atributos das métricas de seleção expostos via JMX
+ */
+public interface MetricasSelecaoMBean {
+
+	long getArquivosListados();
+
+	long getArquivosDoCatalogo();
+
+	long getArquivosForaDoPeriodo();
+
+	long getArquivosAdiados();
+
+	long getArquivosIgnorados();
+
+	long getArquivosLidos();
+
+	long getBytesLidos();
+
+	long getArquivosSelecionados();
+
+	long getArquivosDescartados();
+
+	long getArquivosCopiados();
+
+	long getBytesCopiados();
+
+	long getNovasTentativasCopia();
+
+	long getCopiasDivergentes();
+
+	long getEsperasFilaCopia();
+
+	long getEsperaOrcamentoIO();
+
+	long getErros();
+
+	/**
+	 * @return quantidade, média, percentil 95 e máximo, em milissegundos, de cada etapa medida
+	 */
+	String[] getResumoLatencias();
+}
@@ -0,0 +1,192 @@
+package com.juno.metricas;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.juno.utils.OrcamentoIO;
+
+/**
+ * Registro das métricas do service: o acumulado desde o início, a última busca e o acumulado
+ * de cada diretório de origem. Cada conjunto de métricas é exposto via JMX no domínio
+ * {@value #DOMINIO_JMX} e todas podem ser exportadas no formato texto do Prometheus
+ */
+public class RegistroMetricas {
+
+	private static final String DOMINIO_JMX = "com.juno.nfeselector";
+	private static final String PREFIXO_METRICA = "nfe_selector_";
+
+	/**
+	 * Única instância, compartilhada pelas buscas e pelo service
+	 */
+	private static final RegistroMetricas INSTANCIA = new RegistroMetricas();
+
+	private final MetricasSelecao total = new MetricasSelecao();
+	private final MetricasSelecao ultimaBusca = new MetricasSelecao();
+	private final Map<String, MetricasSelecao> mapMetricasPorPasta = new TreeMap<>();
+	private long quantidadeBuscas;
+	private long duracaoUltimaBuscaNanos;
+	private OrcamentoIO orcamentoIO;
+
+	private RegistroMetricas() {
+		registrarMBean("type=Selecao,name=Total", total);
+		registrarMBean("type=Selecao,name=UltimaBusca", ultimaBusca);
+	}
+
+	/**
+	 * @return única instância do registro de métricas
+	 */
+	public static RegistroMetricas getInstancia() {
+		return INSTANCIA;
+	}
+
+	/**
+	 * Registra o orçamento de I/O das buscas, cuja taxa e utilização são exportadas junto com as métricas
+	 * @param orcamentoIO orçamento de I/O compartilhado pelos diretórios
+	 */
+	public synchronized void registrarOrcamentoIO(OrcamentoIO orcamentoIO) {
+		this.orcamentoIO = orcamentoIO;
+		registrarMBean("type=OrcamentoIO", orcamentoIO);
+	}
+
+	/**
+	 * Registra o resultado de uma busca
+	 * @param metricasPorPasta métricas desta busca em cada diretório de origem processado
+	 * @param duracaoNanos duração da busca em nanossegundos
+	 */
+	public synchronized void registrarBusca(Map<String, MetricasSelecao> metricasPorPasta, long duracaoNanos) {
+		ultimaBusca.zerar();
+
+		for (Entry<String, MetricasSelecao> entry : metricasPorPasta.entrySet()) {
+			MetricasSelecao metricasPasta = mapMetricasPorPasta.get(entry.getKey());
+
+			if (metricasPasta == null) {
+				metricasPasta = new MetricasSelecao();
+				mapMetricasPorPasta.put(entry.getKey(), metricasPasta);
+				registrarMBean("type=Pasta,name=" + ObjectName.quote(entry.getKey()), metricasPasta);
+			}
+			metricasPasta.acumular(entry.getValue());
+			ultimaBusca.acumular(entry.getValue());
+		}
+		ultimaBusca.registrarLatencia(MetricasSelecao.Etapa.BUSCA, duracaoNanos);
+		total.acumular(ultimaBusca);
+
+		quantidadeBuscas++;
+		duracaoUltimaBuscaNanos = duracaoNanos;
+	}
+
+	/**
+	 * Exporta as métricas no formato texto do Prometheus. Os contadores e as latências das etapas
+	 * são identificados pelo diretório de origem e a duração das buscas pelo total
+	 * @return métricas em texto
+	 */
+	public synchronized String exportarTexto() {
+		StringBuilder texto = new StringBuilder();
+
+		texto.append("# HELP ").append(PREFIXO_METRICA).append("buscas_total Buscas executadas\n");
+		texto.append("# TYPE ").append(PREFIXO_METRICA).append("buscas_total counter\n");
+		texto.append(PREFIXO_METRICA).append("buscas_total ").append(quantidadeBuscas).append('\n');
+
+		texto.append("# HELP ").append(PREFIXO_METRICA).append("ultima_busca_segundos Duração da última busca\n");
+		texto.append("# TYPE ").append(PREFIXO_METRICA).append("ultima_busca_segundos gauge\n");
+		texto.append(PREFIXO_METRICA).append("ultima_busca_segundos ").append(formatarSegundos(duracaoUltimaBuscaNanos)).append('\n');
+
+		exportarHistograma(texto, MetricasSelecao.Etapa.BUSCA, true, "", total.getLatencia(MetricasSelecao.Etapa.BUSCA));
+
+		if (orcamentoIO != null) {
+			exportarMedida(texto, "io_bytes_por_segundo", "Bytes lidos e gravados por segundo", orcamentoIO.getBytesPorSegundo());
+			exportarMedida(texto, "io_arquivos_por_segundo", "Arquivos lidos e gravados por segundo", orcamentoIO.getArquivosPorSegundo());
+			exportarMedida(texto, "io_limite_bytes_por_segundo", "Limite de bytes por segundo em vigor, 0 sem limite",
+					orcamentoIO.getLimiteBytesPorSegundo());
+			exportarMedida(texto, "io_limite_arquivos_por_segundo", "Limite de arquivos por segundo em vigor, 0 sem limite",
+					orcamentoIO.getLimiteArquivosPorSegundo());
+			exportarMedida(texto, "io_utilizacao_orcamento", "Fração do orçamento de I/O em vigor utilizada", orcamentoIO.getUtilizacao());
+		}
+
+		for (MetricasSelecao.Contador contador : MetricasSelecao.Contador.values()) {
+			String nome = PREFIXO_METRICA + contador.getNomeMetrica() + "_total";
+			texto.append("# HELP ").append(nome).append(' ').append(contador.getDescricao()).append('\n');
+			texto.append("# TYPE ").append(nome).append(" counter\n");
+
+			for (Entry<String, MetricasSelecao> entry : mapMetricasPorPasta.entrySet()) {
+				texto.append(nome).append("{pasta=\"").append(escaparRotulo(entry.getKey())).append("\"} ");
+				texto.append(entry.getValue().get(contador)).append('\n');
+			}
+		}
+		for (MetricasSelecao.Etapa etapa : MetricasSelecao.Etapa.values()) {
+			if (etapa == MetricasSelecao.Etapa.BUSCA) {
+				continue;
+			}
+			boolean primeira = true;
+			for (Entry<String, MetricasSelecao> entry : mapMetricasPorPasta.entrySet()) {
+				String rotulo = "pasta=\"" + escaparRotulo(entry.getKey()) + "\"";
+				exportarHistograma(texto, etapa, primeira, rotulo, entry.getValue().getLatencia(etapa));
+				primeira = false;
+			}
+		}
+		return texto.toString();
+	}
+
+	/**
+	 * Exporta uma medida instantânea
+	 */
+	private void exportarMedida(StringBuilder texto, String nomeMetrica, String descricao, double valor) {
+		String nome = PREFIXO_METRICA + nomeMetrica;
+		texto.append("# HELP ").append(nome).append(' ').append(descricao).append('\n');
+		texto.append("# TYPE ").append(nome).append(" gauge\n");
+		texto.append(nome).append(' ').append(String.format(Locale.ROOT, "%.3f", valor)).append('\n');
+	}
+
+	/**
+	 * Exporta um histograma de latências em segundos
+	 * @param cabecalho <b>true</b> para escrever o cabeçalho da métrica, somente na primeira série da etapa
+	 */
+	private void exportarHistograma(StringBuilder texto, MetricasSelecao.Etapa etapa, boolean cabecalho, String rotulo, HistogramaLatencia latencia) {
+		String nome = PREFIXO_METRICA + etapa.getNomeMetrica() + "_segundos";
+		if (cabecalho) {
+			texto.append("# HELP ").append(nome).append(" Latência da etapa ").append(etapa.getNomeMetrica()).append('\n');
+			texto.append("# TYPE ").append(nome).append(" histogram\n");
+		}
+		String separador = rotulo.isEmpty() ? "" : ",";
+		long acumulado = 0;
+
+		for (int i = 0; i < HistogramaLatencia.LIMITES_NANOS.length; i++) {
+			acumulado += latencia.getQuantidadeFaixa(i);
+			texto.append(nome).append("_bucket{").append(rotulo).append(separador).append("le=\"")
+					.append(formatarSegundos(HistogramaLatencia.LIMITES_NANOS[i])).append("\"} ").append(acumulado).append('\n');
+		}
+		texto.append(nome).append("_bucket{").append(rotulo).append(separador).append("le=\"+Inf\"} ").append(latencia.getQuantidade()).append('\n');
+		texto.append(nome).append("_sum").append(rotulo.isEmpty() ? "" : "{" + rotulo + "}").append(' ').append(formatarSegundos(latencia.getSomaNanos())).append('\n');
+		texto.append(nome).append("_count").append(rotulo.isEmpty() ? "" : "{" + rotulo + "}").append(' ').append(latencia.getQuantidade()).append('\n');
+	}
+
+	/**
+	 * Registra as métricas no servidor de MBeans da plataforma. Uma falha no registro não impede a seleção
+	 */
+	private void registrarMBean(String propriedades, Object metricas) {
+		try {
+			MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName(DOMINIO_JMX + ":" + propriedades);
+
+			if (!mBeanServer.isRegistered(objectName)) {
+				mBeanServer.registerMBean(metricas, objectName);
+			}
+		} catch (Exception e) {
+			System.err.println("Não foi possível registrar as métricas \"" + propriedades + "\" via JMX: " + e.getMessage());
+		}
+	}
+
+	private static String formatarSegundos(long nanos) {
+		return String.format(Locale.ROOT, "%.6f", nanos / (double) TimeUnit.SECONDS.toNanos(1));
+	}
+
+	private static String escaparRotulo(String valor) {
+		return valor.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+}
@@ -0,0 +1,53 @@
+package com.juno.metricas;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Servidor HTTP local que expõe as métricas do {@link RegistroMetricas} no formato texto
+ * do Prometheus, no caminho {@value #CAMINHO_METRICAS}. Atende somente conexões da própria máquina
+ */
+public class ServidorMetricas {
+
+	private static final String CAMINHO_METRICAS = "/metrics";
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private final HttpServer httpServer;
+
+	/**
+	 * Inicia o servidor na porta informada
+	 * @param porta porta local
+	 * @throws IOException se a porta não estiver disponível
+	 */
+	public ServidorMetricas(int porta) throws IOException {
+		httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), porta), 0);
+		httpServer.createContext(CAMINHO_METRICAS, new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				byte[] resposta = RegistroMetricas.getInstancia().exportarTexto().getBytes(StandardCharsets.UTF_8);
+
+				exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+				exchange.sendResponseHeaders(200, resposta.length);
+
+				try (OutputStream outputStream = exchange.getResponseBody()) {
+					outputStream.write(resposta);
+				}
+			}
+		});
+		httpServer.start();
+	}
+
+	/**
+	 * Encerra o servidor
+	 */
+	public void parar() {
+		httpServer.stop(0);
+	}
+}
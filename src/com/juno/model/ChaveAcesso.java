@@ -0,0 +1,107 @@
+package com.juno.model;
+
+/**
+ * Chave de acesso de 44 dígitos de uma NF-e, mantida em três partes numéricas
+ * para ocupar pouca memória e ser comparada sem decodificar texto
+ */
+public final class ChaveAcesso {
+
+	/**
+	 * Quantidade de dígitos da chave de acesso
+	 */
+	public static final int TAMANHO = 44;
+
+	private static final int TAMANHO_PARTE = 18;
+	private static final int TAMANHO_CNPJ = 14;
+
+	private static final long DIGITOS_12 = 1000000000000L;
+	private static final long DIGITOS_16 = 10000000000000000L;
+
+	private final long parte1; // dígitos 1 a 18
+	private final long parte2; // dígitos 19 a 36
+	private final long parte3; // dígitos 37 a 44
+
+	public ChaveAcesso(long parte1, long parte2, long parte3) {
+		this.parte1 = parte1;
+		this.parte2 = parte2;
+		this.parte3 = parte3;
+	}
+
+	/**
+	 * Converte os dígitos informados em uma chave de acesso
+	 * @param digitos array com os dígitos em ASCII
+	 * @param inicio posição do primeiro dígito
+	 * @return chave de acesso ou <b>null</b> se os {@link #TAMANHO} bytes a partir do início não forem todos dígitos
+	 */
+	public static ChaveAcesso converter(byte[] digitos, int inicio) {
+		long[] partes = new long[3];
+
+		for (int i = 0; i < TAMANHO; i++) {
+			byte digito = digitos[inicio + i];
+
+			if (digito < '0' || digito > '9') {
+				return null;
+			}
+			int parte = i / TAMANHO_PARTE;
+			partes[parte] = partes[parte] * 10 + (digito - '0');
+		}
+		return new ChaveAcesso(partes[0], partes[1], partes[2]);
+	}
+
+	/**
+	 * @return dígitos 1 a 18
+	 */
+	public long getParte1() {
+		return parte1;
+	}
+
+	/**
+	 * @return dígitos 19 a 36
+	 */
+	public long getParte2() {
+		return parte2;
+	}
+
+	/**
+	 * @return dígitos 37 a 44
+	 */
+	public long getParte3() {
+		return parte3;
+	}
+
+	/**
+	 * @return chave numérica do CNPJ do emitente (dígitos 7 a 20), no mesmo formato da chave do CNPJ do transportador
+	 * (ver {@link com.juno.utils.LocalizadorCnpjTransportador#converterCnpj(String)})
+	 */
+	public long getCnpjEmitente() {
+		long cnpj = (parte1 % DIGITOS_12) * 100 + parte2 / DIGITOS_16;
+		return cnpj * 100 + TAMANHO_CNPJ;
+	}
+
+	/**
+	 * @return ano e mês de emissão (dígitos 3 a 6), no formato <i>AAMM</i>
+	 */
+	public int getAnoMesEmissao() {
+		return (int) ((parte1 / DIGITOS_12) % 10000);
+	}
+
+	@Override
+	public int hashCode() {
+		long hash = (parte1 * 31 + parte2) * 31 + parte3;
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof ChaveAcesso)) {
+			return false;
+		}
+		ChaveAcesso outra = (ChaveAcesso) obj;
+		return parte1 == outra.parte1 && parte2 == outra.parte2 && parte3 == outra.parte3;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%018d%018d%08d", parte1, parte2, parte3);
+	}
+}
@@ -0,0 +1,25 @@
+package com.juno.model;
+
+/**
+ * Forma como os arquivos selecionados são entregues no diretório de destino
+ */
+public enum EstrategiaCopia {
+	/**
+	 * Link físico quando a origem e o destino estão no mesmo sistema de arquivos,
+	 * caso contrário transferência entre canais
+	 */
+	AUTOMATICA,
+	/**
+	 * Link físico, com transferência entre canais quando o link não for possível
+	 */
+	LINK,
+	/**
+	 * Transferência entre canais ({@link java.nio.channels.FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}),
+	 * sem passar o conteúdo pelo heap
+	 */
+	TRANSFERENCIA,
+	/**
+	 * Cópia simples através de {@link java.nio.file.Files#copy(java.nio.file.Path, java.nio.file.Path, java.nio.file.CopyOption...)}
+	 */
+	COPIA
+}
@@ -1,46 +1,34 @@
 package com.juno.model;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class NfeTransportador {
 	
-	private String diretorioDestino;
-	private String cnpj;
+	private List<Transportador> transportadores;
 	private Date dataMinimaArquivo;
 	private Map<String, String> mapDiretorioOrigem;
 	
 	public NfeTransportador() {
+		this.transportadores = new ArrayList<>();
 		this.mapDiretorioOrigem = new HashMap<>();
 	}
 
 	/**
-	 * @return the diretorioDestino
+	 * @return the transportadores
 	 */
-	public String getDiretorioDestino() {
-		return diretorioDestino;
+	public List<Transportador> getTransportadores() {
+		return transportadores;
 	}
 
 	/**
-	 * @param diretorioDestino the diretorioDestino to set
+	 * @param transportadores the transportadores to set
 	 */
-	public void setDiretorioDestino(String diretorioDestino) {
-		this.diretorioDestino = diretorioDestino;
-	}
-
-	/**
-	 * @return the cnpj
-	 */
-	public String getCnpj() {
-		return cnpj;
-	}
-
-	/**
-	 * @param cnpj the cnpj to set
-	 */
-	public void setCnpj(String cnpj) {
-		this.cnpj = cnpj;
+	public void setTransportadores(List<Transportador> transportadores) {
+		this.transportadores = transportadores;
 	}
 
 	/**
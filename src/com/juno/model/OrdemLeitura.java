@@ -0,0 +1,20 @@
+package com.juno.model;
+
+/**
+ * Ordem em que os arquivos listados em um diretório de origem são enviados para leitura
+ */
+public enum OrdemLeitura {
+	/**
+	 * Ordem da listagem do diretório: os arquivos são lidos à medida que são listados
+	 */
+	LISTAGEM,
+	/**
+	 * Arquivos modificados mais recentemente primeiro, para que as NF-es novas não aguardem o acúmulo
+	 * de arquivos antigos. A leitura começa depois da listagem
+	 */
+	MAIS_RECENTES,
+	/**
+	 * Arquivos modificados há mais tempo primeiro. A leitura começa depois da listagem
+	 */
+	MAIS_ANTIGOS
+}
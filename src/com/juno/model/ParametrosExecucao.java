@@ -0,0 +1,395 @@
+package com.juno.model;
+
+public class ParametrosExecucao {
+
+	private int quantidadePastasEmParalelo;
+	private int quantidadeThreadsLeituraPorPasta;
+	private int janelaRevisaoHoras;
+	private boolean monitorarDiretorios;
+	private int intervaloReconciliacaoMinutos;
+	private EstrategiaCopia estrategiaCopia;
+	private int portaMetricas;
+	private int intervaloExecucaoMinutos;
+	private int intervaloMaximoExecucaoMinutos;
+	private boolean buscarEmSubdiretorios;
+	private String padraoNomeArquivos;
+	private int quantidadeThreadsCopiaPorPasta;
+	private int tentativasCopia;
+	private int esperaEntreTentativasCopiaMilisegundos;
+	private boolean modoCluster;
+	private String nomeNo;
+	private String diretorioCoordenacao;
+	private int duracaoConcessaoSegundos;
+	private int tempoEstabilizacaoSegundos;
+	private int arquivosPorPacote;
+	private boolean verificarCopias;
+	private OrdemLeitura ordemLeitura;
+	private int tamanhoFilaPrioridade;
+	private int orcamentoIOKbPorSegundo;
+	private int orcamentoIOArquivosPorSegundo;
+	private String[] horarioOrcamentoIO;
+
+	/**
+	 * @return the quantidadePastasEmParalelo
+	 */
+	public int getQuantidadePastasEmParalelo() {
+		return quantidadePastasEmParalelo;
+	}
+
+	/**
+	 * @param quantidadePastasEmParalelo the quantidadePastasEmParalelo to set
+	 */
+	public void setQuantidadePastasEmParalelo(int quantidadePastasEmParalelo) {
+		this.quantidadePastasEmParalelo = quantidadePastasEmParalelo;
+	}
+
+	/**
+	 * @return the quantidadeThreadsLeituraPorPasta
+	 */
+	public int getQuantidadeThreadsLeituraPorPasta() {
+		return quantidadeThreadsLeituraPorPasta;
+	}
+
+	/**
+	 * @param quantidadeThreadsLeituraPorPasta the quantidadeThreadsLeituraPorPasta to set
+	 */
+	public void setQuantidadeThreadsLeituraPorPasta(int quantidadeThreadsLeituraPorPasta) {
+		this.quantidadeThreadsLeituraPorPasta = quantidadeThreadsLeituraPorPasta;
+	}
+
+	/**
+	 * @return the janelaRevisaoHoras
+	 */
+	public int getJanelaRevisaoHoras() {
+		return janelaRevisaoHoras;
+	}
+
+	/**
+	 * @param janelaRevisaoHoras the janelaRevisaoHoras to set
+	 */
+	public void setJanelaRevisaoHoras(int janelaRevisaoHoras) {
+		this.janelaRevisaoHoras = janelaRevisaoHoras;
+	}
+
+	/**
+	 * @return the monitorarDiretorios
+	 */
+	public boolean isMonitorarDiretorios() {
+		return monitorarDiretorios;
+	}
+
+	/**
+	 * @param monitorarDiretorios the monitorarDiretorios to set
+	 */
+	public void setMonitorarDiretorios(boolean monitorarDiretorios) {
+		this.monitorarDiretorios = monitorarDiretorios;
+	}
+
+	/**
+	 * @return the intervaloReconciliacaoMinutos
+	 */
+	public int getIntervaloReconciliacaoMinutos() {
+		return intervaloReconciliacaoMinutos;
+	}
+
+	/**
+	 * @param intervaloReconciliacaoMinutos the intervaloReconciliacaoMinutos to set
+	 */
+	public void setIntervaloReconciliacaoMinutos(int intervaloReconciliacaoMinutos) {
+		this.intervaloReconciliacaoMinutos = intervaloReconciliacaoMinutos;
+	}
+
+	/**
+	 * @return the estrategiaCopia
+	 */
+	public EstrategiaCopia getEstrategiaCopia() {
+		return estrategiaCopia;
+	}
+
+	/**
+	 * @param estrategiaCopia the estrategiaCopia to set
+	 */
+	public void setEstrategiaCopia(EstrategiaCopia estrategiaCopia) {
+		this.estrategiaCopia = estrategiaCopia;
+	}
+
+	/**
+	 * @return the portaMetricas
+	 */
+	public int getPortaMetricas() {
+		return portaMetricas;
+	}
+
+	/**
+	 * @param portaMetricas the portaMetricas to set
+	 */
+	public void setPortaMetricas(int portaMetricas) {
+		this.portaMetricas = portaMetricas;
+	}
+
+	/**
+	 * @return the intervaloExecucaoMinutos
+	 */
+	public int getIntervaloExecucaoMinutos() {
+		return intervaloExecucaoMinutos;
+	}
+
+	/**
+	 * @param intervaloExecucaoMinutos the intervaloExecucaoMinutos to set
+	 */
+	public void setIntervaloExecucaoMinutos(int intervaloExecucaoMinutos) {
+		this.intervaloExecucaoMinutos = intervaloExecucaoMinutos;
+	}
+
+	/**
+	 * @return the intervaloMaximoExecucaoMinutos
+	 */
+	public int getIntervaloMaximoExecucaoMinutos() {
+		return intervaloMaximoExecucaoMinutos;
+	}
+
+	/**
+	 * @param intervaloMaximoExecucaoMinutos the intervaloMaximoExecucaoMinutos to set
+	 */
+	public void setIntervaloMaximoExecucaoMinutos(int intervaloMaximoExecucaoMinutos) {
+		this.intervaloMaximoExecucaoMinutos = intervaloMaximoExecucaoMinutos;
+	}
+
+	/**
+	 * @return the buscarEmSubdiretorios
+	 */
+	public boolean isBuscarEmSubdiretorios() {
+		return buscarEmSubdiretorios;
+	}
+
+	/**
+	 * @param buscarEmSubdiretorios the buscarEmSubdiretorios to set
+	 */
+	public void setBuscarEmSubdiretorios(boolean buscarEmSubdiretorios) {
+		this.buscarEmSubdiretorios = buscarEmSubdiretorios;
+	}
+
+	/**
+	 * @return the padraoNomeArquivos
+	 */
+	public String getPadraoNomeArquivos() {
+		return padraoNomeArquivos;
+	}
+
+	/**
+	 * @param padraoNomeArquivos the padraoNomeArquivos to set
+	 */
+	public void setPadraoNomeArquivos(String padraoNomeArquivos) {
+		this.padraoNomeArquivos = padraoNomeArquivos;
+	}
+
+	/**
+	 * @return the quantidadeThreadsCopiaPorPasta
+	 */
+	public int getQuantidadeThreadsCopiaPorPasta() {
+		return quantidadeThreadsCopiaPorPasta;
+	}
+
+	/**
+	 * @param quantidadeThreadsCopiaPorPasta the quantidadeThreadsCopiaPorPasta to set
+	 */
+	public void setQuantidadeThreadsCopiaPorPasta(int quantidadeThreadsCopiaPorPasta) {
+		this.quantidadeThreadsCopiaPorPasta = quantidadeThreadsCopiaPorPasta;
+	}
+
+	/**
+	 * @return the tentativasCopia
+	 */
+	public int getTentativasCopia() {
+		return tentativasCopia;
+	}
+
+	/**
+	 * @param tentativasCopia the tentativasCopia to set
+	 */
+	public void setTentativasCopia(int tentativasCopia) {
+		this.tentativasCopia = tentativasCopia;
+	}
+
+	/**
+	 * @return the esperaEntreTentativasCopiaMilisegundos
+	 */
+	public int getEsperaEntreTentativasCopiaMilisegundos() {
+		return esperaEntreTentativasCopiaMilisegundos;
+	}
+
+	/**
+	 * @param esperaEntreTentativasCopiaMilisegundos the esperaEntreTentativasCopiaMilisegundos to set
+	 */
+	public void setEsperaEntreTentativasCopiaMilisegundos(int esperaEntreTentativasCopiaMilisegundos) {
+		this.esperaEntreTentativasCopiaMilisegundos = esperaEntreTentativasCopiaMilisegundos;
+	}
+
+	/**
+	 * @return the modoCluster
+	 */
+	public boolean isModoCluster() {
+		return modoCluster;
+	}
+
+	/**
+	 * @param modoCluster the modoCluster to set
+	 */
+	public void setModoCluster(boolean modoCluster) {
+		this.modoCluster = modoCluster;
+	}
+
+	/**
+	 * @return the nomeNo
+	 */
+	public String getNomeNo() {
+		return nomeNo;
+	}
+
+	/**
+	 * @param nomeNo the nomeNo to set
+	 */
+	public void setNomeNo(String nomeNo) {
+		this.nomeNo = nomeNo;
+	}
+
+	/**
+	 * @return the diretorioCoordenacao
+	 */
+	public String getDiretorioCoordenacao() {
+		return diretorioCoordenacao;
+	}
+
+	/**
+	 * @param diretorioCoordenacao the diretorioCoordenacao to set
+	 */
+	public void setDiretorioCoordenacao(String diretorioCoordenacao) {
+		this.diretorioCoordenacao = diretorioCoordenacao;
+	}
+
+	/**
+	 * @return the duracaoConcessaoSegundos
+	 */
+	public int getDuracaoConcessaoSegundos() {
+		return duracaoConcessaoSegundos;
+	}
+
+	/**
+	 * @param duracaoConcessaoSegundos the duracaoConcessaoSegundos to set
+	 */
+	public void setDuracaoConcessaoSegundos(int duracaoConcessaoSegundos) {
+		this.duracaoConcessaoSegundos = duracaoConcessaoSegundos;
+	}
+
+	/**
+	 * @return the tempoEstabilizacaoSegundos
+	 */
+	public int getTempoEstabilizacaoSegundos() {
+		return tempoEstabilizacaoSegundos;
+	}
+
+	/**
+	 * @param tempoEstabilizacaoSegundos the tempoEstabilizacaoSegundos to set
+	 */
+	public void setTempoEstabilizacaoSegundos(int tempoEstabilizacaoSegundos) {
+		this.tempoEstabilizacaoSegundos = tempoEstabilizacaoSegundos;
+	}
+
+	/**
+	 * @return the arquivosPorPacote
+	 */
+	public int getArquivosPorPacote() {
+		return arquivosPorPacote;
+	}
+
+	/**
+	 * @param arquivosPorPacote the arquivosPorPacote to set
+	 */
+	public void setArquivosPorPacote(int arquivosPorPacote) {
+		this.arquivosPorPacote = arquivosPorPacote;
+	}
+
+	/**
+	 * @return the verificarCopias
+	 */
+	public boolean isVerificarCopias() {
+		return verificarCopias;
+	}
+
+	/**
+	 * @param verificarCopias the verificarCopias to set
+	 */
+	public void setVerificarCopias(boolean verificarCopias) {
+		this.verificarCopias = verificarCopias;
+	}
+
+	/**
+	 * @return the ordemLeitura
+	 */
+	public OrdemLeitura getOrdemLeitura() {
+		return ordemLeitura;
+	}
+
+	/**
+	 * @param ordemLeitura the ordemLeitura to set
+	 */
+	public void setOrdemLeitura(OrdemLeitura ordemLeitura) {
+		this.ordemLeitura = ordemLeitura;
+	}
+
+	/**
+	 * @return the tamanhoFilaPrioridade
+	 */
+	public int getTamanhoFilaPrioridade() {
+		return tamanhoFilaPrioridade;
+	}
+
+	/**
+	 * @param tamanhoFilaPrioridade the tamanhoFilaPrioridade to set
+	 */
+	public void setTamanhoFilaPrioridade(int tamanhoFilaPrioridade) {
+		this.tamanhoFilaPrioridade = tamanhoFilaPrioridade;
+	}
+
+	/**
+	 * @return the orcamentoIOKbPorSegundo
+	 */
+	public int getOrcamentoIOKbPorSegundo() {
+		return orcamentoIOKbPorSegundo;
+	}
+
+	/**
+	 * @param orcamentoIOKbPorSegundo the orcamentoIOKbPorSegundo to set
+	 */
+	public void setOrcamentoIOKbPorSegundo(int orcamentoIOKbPorSegundo) {
+		this.orcamentoIOKbPorSegundo = orcamentoIOKbPorSegundo;
+	}
+
+	/**
+	 * @return the orcamentoIOArquivosPorSegundo
+	 */
+	public int getOrcamentoIOArquivosPorSegundo() {
+		return orcamentoIOArquivosPorSegundo;
+	}
+
+	/**
+	 * @param orcamentoIOArquivosPorSegundo the orcamentoIOArquivosPorSegundo to set
+	 */
+	public void setOrcamentoIOArquivosPorSegundo(int orcamentoIOArquivosPorSegundo) {
+		this.orcamentoIOArquivosPorSegundo = orcamentoIOArquivosPorSegundo;
+	}
+
+	/**
+	 * @return the horarioOrcamentoIO
+	 */
+	public String[] getHorarioOrcamentoIO() {
+		return horarioOrcamentoIO;
+	}
+
+	/**
+	 * @param horarioOrcamentoIO the horarioOrcamentoIO to set
+	 */
+	public void setHorarioOrcamentoIO(String[] horarioOrcamentoIO) {
+		this.horarioOrcamentoIO = horarioOrcamentoIO;
+	}
+}
@@ -0,0 +1,27 @@
+package com.juno.model;
+
+/**
+ * Situação de um arquivo de origem já avaliado pelo selecionador
+ */
+public enum SituacaoArquivo {
+	/**
+	 * Arquivo de um transportador buscado que ainda não foi copiado
+	 */
+	SELECIONADO,
+	/**
+	 * Arquivo que não é de nenhum dos transportadores buscados
+	 */
+	DESCARTADO,
+	/**
+	 * Arquivo já copiado ao diretório de destino do seu transportador
+	 */
+	COPIADO,
+	/**
+	 * Arquivo com a mesma chave de acesso de outro arquivo já copiado
+	 */
+	DUPLICADO,
+	/**
+	 * Arquivo compactado cujas entradas já foram avaliadas e, se selecionadas, copiadas
+	 */
+	PROCESSADO
+}
\ No newline at end of file
@@ -0,0 +1,50 @@
+package com.juno.model;
+
+public class Transportador {
+
+	private String sufixoPropriedades;
+	private String cnpj;
+	private String diretorioDestino;
+
+	/**
+	 * @return the sufixoPropriedades
+	 */
+	public String getSufixoPropriedades() {
+		return sufixoPropriedades;
+	}
+
+	/**
+	 * @param sufixoPropriedades the sufixoPropriedades to set
+	 */
+	public void setSufixoPropriedades(String sufixoPropriedades) {
+		this.sufixoPropriedades = sufixoPropriedades;
+	}
+
+	/**
+	 * @return the cnpj
+	 */
+	public String getCnpj() {
+		return cnpj;
+	}
+
+	/**
+	 * @param cnpj the cnpj to set
+	 */
+	public void setCnpj(String cnpj) {
+		this.cnpj = cnpj;
+	}
+
+	/**
+	 * @return the diretorioDestino
+	 */
+	public String getDiretorioDestino() {
+		return diretorioDestino;
+	}
+
+	/**
+	 * @param diretorioDestino the diretorioDestino to set
+	 */
+	public void setDiretorioDestino(String diretorioDestino) {
+		this.diretorioDestino = diretorioDestino;
+	}
+}
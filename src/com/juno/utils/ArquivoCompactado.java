@@ -0,0 +1,171 @@
+package com.juno.utils;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.Enumeration;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Arquivo compactado (.zip ou .xml.gz) recebido no diretório de origem. As entradas são
+ * lidas diretamente do arquivo, descompactadas em memória à medida que são consumidas,
+ * sem que o conteúdo seja extraído para o disco.
+ * <br>
+ * Um arquivo .xml.gz possui uma única entrada, com o nome do arquivo sem a extensão .gz
+ * <br>
+ * Instâncias desta classe <b>não</b> são thread-safe
+ */
+public class ArquivoCompactado implements Closeable {
+
+	/**
+	 * Separador entre o caminho do arquivo compactado e o nome da entrada (ver {@link #getCaminhoEntrada()})
+	 */
+	public static final String SEPARADOR_ENTRADA = "!/";
+
+	private static final String EXTENSAO_ZIP = ".zip";
+	private static final String EXTENSAO_GZIP = ".gz";
+	private static final String EXTENSAO_XML_GZIP = ".xml" + EXTENSAO_GZIP;
+	private static final int TAMANHO_BUFFER = 8192;
+	private static final int TAMANHO_BUFFER_ASSINATURA = 64 * 1024;
+
+	private final File arquivo;
+	private final ZipFile zipFile; // null para arquivos .xml.gz
+	private Enumeration<? extends ZipEntry> entradas;
+	private ZipEntry entradaAtual;
+	private boolean entradaGzipLida;
+
+	private ArquivoCompactado(File arquivo, ZipFile zipFile) {
+		this.arquivo = arquivo;
+		this.zipFile = zipFile;
+	}
+
+	/**
+	 * @param nomeArquivo nome do arquivo
+	 * @return <b>true</b> se o nome for de um arquivo compactado suportado (.zip ou .xml.gz)
+	 */
+	public static boolean isArquivoCompactado(String nomeArquivo) {
+		String nome = nomeArquivo.toLowerCase();
+		return nome.endsWith(EXTENSAO_ZIP) || nome.endsWith(EXTENSAO_XML_GZIP);
+	}
+
+	/**
+	 * Abre o arquivo compactado. Para arquivos .zip somente o diretório central é lido
+	 * @param arquivo arquivo .zip ou .xml.gz
+	 * @return arquivo aberto, que deve ser fechado após o uso
+	 * @throws IOException se o arquivo não puder ser aberto ou estiver corrompido
+	 */
+	public static ArquivoCompactado abrir(File arquivo) throws IOException {
+		if (arquivo.getName().toLowerCase().endsWith(EXTENSAO_ZIP)) {
+			return new ArquivoCompactado(arquivo, new ZipFile(arquivo));
+		}
+		return new ArquivoCompactado(arquivo, null);
+	}
+
+	/**
+	 * Calcula a assinatura do conteúdo do arquivo: a soma SHA-256 dos seus bytes, lidos uma vez
+	 * sem descompactá-los. O nome do próprio arquivo compactado não faz parte da assinatura, de
+	 * modo que o mesmo conteúdo recebido com outro nome tem a mesma assinatura
+	 * @return soma SHA-256 do arquivo em hexadecimal
+	 * @throws IOException
+	 */
+	public String getAssinatura() throws IOException {
+		MessageDigest digest = FileUtils.criarDigest();
+		byte[] buffer = new byte[TAMANHO_BUFFER_ASSINATURA];
+		int lidos;
+
+		try (InputStream inputStream = new FileInputStream(arquivo)) {
+			while ((lidos = inputStream.read(buffer)) >= 0) {
+				digest.update(buffer, 0, lidos);
+			}
+		}
+		return FileUtils.converterHexadecimal(digest.digest());
+	}
+
+	/**
+	 * Avança para a próxima entrada de arquivo, ignorando os diretórios
+	 * @return <b>false</b> se não houver mais entradas
+	 */
+	public boolean proximaEntrada() {
+		if (zipFile == null) {
+			entradaGzipLida = !entradaGzipLida;
+			return entradaGzipLida;
+		}
+		if (entradas == null) {
+			entradas = zipFile.entries();
+		}
+		while (entradas.hasMoreElements()) {
+			entradaAtual = entradas.nextElement();
+
+			if (!entradaAtual.isDirectory()) {
+				return true;
+			}
+		}
+		entradaAtual = null;
+		return false;
+	}
+
+	/**
+	 * Retorna o nome da entrada atual, sem os diretórios internos do arquivo compactado. Entradas cujo
+	 * caminho contém barra invertida, ".." ou uma unidade ou raiz (ex.: C: ou /) não têm um nome seguro para a
+	 * gravação no destino, pois poderiam ser gravadas fora do diretório do transportador
+	 * @return nome da entrada ou <b>null</b> se o caminho da entrada não for seguro
+	 */
+	public String getNomeEntrada() {
+		String nome;
+		if (zipFile == null) {
+			nome = arquivo.getName();
+			nome = nome.substring(0, nome.length() - EXTENSAO_GZIP.length());
+		} else {
+			nome = entradaAtual.getName();
+			if (nome.indexOf('\\') >= 0 || nome.contains("..") || nome.indexOf(':') >= 0 || nome.startsWith("/")) {
+				return null;
+			}
+			nome = nome.substring(nome.lastIndexOf('/') + 1);
+		}
+		return nome.isEmpty() ? null : nome;
+	}
+
+	/**
+	 * @return caminho da entrada atual, no formato arquivo!/entrada, usado para registrá-la no índice
+	 */
+	public String getCaminhoEntrada() {
+		if (zipFile == null) {
+			String nome = arquivo.getName();
+			return arquivo.getPath() + SEPARADOR_ENTRADA + nome.substring(0, nome.length() - EXTENSAO_GZIP.length());
+		}
+		return arquivo.getPath() + SEPARADOR_ENTRADA + entradaAtual.getName();
+	}
+
+	/**
+	 * Abre o conteúdo descompactado da entrada atual. Pode ser chamado mais de uma vez para a mesma entrada
+	 * @return conteúdo da entrada, que deve ser fechado após o uso
+	 * @throws IOException
+	 */
+	public InputStream abrirEntrada() throws IOException {
+		if (zipFile == null) {
+			InputStream inputStream = new BufferedInputStream(new FileInputStream(arquivo), TAMANHO_BUFFER);
+			try {
+				return new GZIPInputStream(inputStream, TAMANHO_BUFFER);
+
+			} catch (IOException e) {
+				// Cabeçalho GZIP inválido
+				inputStream.close();
+				throw e;
+			}
+		}
+		return zipFile.getInputStream(entradaAtual);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (zipFile != null) {
+			zipFile.close();
+		}
+	}
+}
@@ -0,0 +1,754 @@
+package com.juno.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.juno.model.ChaveAcesso;
+import com.juno.model.SituacaoArquivo;
+
+/**
+ * Catálogo das NF-es lidas nos diretórios de origem: para cada arquivo, o caminho, o tamanho, a data de
+ * modificação, o CNPJ do transportador e a chave de acesso (de onde são obtidos o CNPJ do emitente e o mês
+ * de emissão). Ao contrário do {@link IndiceArquivosProcessados}, que mantém somente a janela de revisão,
+ * o catálogo guarda todo o histórico, e uma busca retroativa (por exemplo, para um transportador incluído
+ * na configuração) é respondida por ele, sem listar nem ler os arquivos novamente.
+ * <br>
+ * O catálogo é mantido em dois arquivos. A base, ordenada pelo CNPJ do transportador e pelo caminho, termina
+ * com um índice esparso (um marcador a cada {@link #QTDE_REGISTROS_POR_MARCADOR} registros), carregado em
+ * memória, que permite ler somente o trecho de um transportador em um diretório. Os registros novos são
+ * acrescentados a um log, consultado por inteiro, e incorporados à base quando este atinge
+ * {@link #QTDE_MAXIMA_REGISTROS_LOG} registros. O último registro de cada caminho prevalece.
+ * <br>
+ * A cobertura de cada diretório indica o período de modificação cujos arquivos foram todos catalogados pelas
+ * buscas completas, e só se estende enquanto as listagens forem contíguas. Os arquivos compactados são catalogados
+ * sem transportador, e são lidos novamente nas buscas respondidas pelo catálogo
+ */
+public class CatalogoNfe implements Closeable {
+
+	private static final int IDENTIFICADOR_BASE = 0x4E464543; // "NFEC"
+	private static final int IDENTIFICADOR_LOG = 0x4E46454C; // "NFEL"
+	private static final int VERSAO_ARQUIVO = 1;
+	private static final int TAMANHO_CABECALHO = 8;
+	private static final int TIPO_ENTRADA = 0;
+	private static final int TIPO_COBERTURA = 1;
+	private static final int TIPO_FIM = 2;
+	private static final long CHAVE_AUSENTE = -1;
+	private static final int QTDE_REGISTROS_POR_MARCADOR = 128;
+	private static final int QTDE_MAXIMA_REGISTROS_LOG = 200000;
+
+	private static final Comparator<Entrada> ORDEM_BASE = new Comparator<Entrada>() {
+		@Override
+		public int compare(Entrada entrada1, Entrada entrada2) {
+			return comparar(entrada1.cnpjTransportador, entrada1.caminho, entrada2.cnpjTransportador, entrada2.caminho);
+		}
+	};
+
+	private final File arquivoBase;
+	private final File arquivoLog;
+	private final Map<String, Cobertura> coberturas = new HashMap<>();
+	private List<Marcador> marcadores = new ArrayList<>();
+	private boolean baseValida;
+	private long qtdeRegistrosBase;
+	private int qtdeRegistrosLog;
+	private FileOutputStream saidaArquivo;
+	private DataOutputStream saida;
+
+	private CatalogoNfe(File arquivoBase) {
+		this.arquivoBase = arquivoBase;
+		this.arquivoLog = new File(arquivoBase.getPath() + ".log");
+	}
+
+	/**
+	 * Carrega o catálogo do arquivo informado, criando-o se ainda não existir. Os registros novos são
+	 * acrescentados a um log no mesmo diretório, com a extensão <i>.log</i>
+	 * @param arquivoCatalogo arquivo onde a base do catálogo é mantida
+	 * @return catálogo carregado
+	 * @throws IOException
+	 */
+	public static CatalogoNfe carregar(File arquivoCatalogo) throws IOException {
+		CatalogoNfe catalogo = new CatalogoNfe(arquivoCatalogo);
+
+		if (arquivoCatalogo.exists() && !catalogo.lerBase()) {
+			// O log complementa a base e também é descartado
+			System.err.println("Catálogo de NF-es \"" + arquivoCatalogo.getName() + "\" inválido. Um novo catálogo será criado");
+			catalogo.criarLog();
+
+		} else if (!catalogo.lerLog()) {
+			catalogo.criarLog();
+		}
+		catalogo.saidaArquivo = new FileOutputStream(catalogo.arquivoLog, true);
+		catalogo.saida = new DataOutputStream(new BufferedOutputStream(catalogo.saidaArquivo));
+		return catalogo;
+	}
+
+	/**
+	 * @return <b>true</b> se nenhum arquivo foi catalogado
+	 */
+	public synchronized boolean isVazio() {
+		return qtdeRegistrosBase == 0 && qtdeRegistrosLog == 0;
+	}
+
+	/**
+	 * Cataloga os arquivos do índice, para que os arquivos avaliados antes da criação do catálogo, e que não
+	 * serão lidos novamente na janela de revisão, também façam parte dele
+	 * @param indiceArquivos índice dos arquivos já avaliados
+	 * @throws IOException
+	 */
+	public synchronized void importar(IndiceArquivosProcessados indiceArquivos) throws IOException {
+		for (Entry<String, IndiceArquivosProcessados.Registro> entry : indiceArquivos.getRegistros().entrySet()) {
+			IndiceArquivosProcessados.Registro registro = entry.getValue();
+
+			if (entry.getKey().contains(ArquivoCompactado.SEPARADOR_ENTRADA)) {
+				// As entradas dos arquivos compactados são catalogadas pelo próprio arquivo compactado
+				continue;
+			}
+			if (registro.getSituacao() == SituacaoArquivo.PROCESSADO) {
+				registrar(entry.getKey(), registro.getTamanho(), registro.getDataModificacao(), LocalizadorCnpjTransportador.CNPJ_NAO_ENCONTRADO, null);
+
+			} else if (registro.getCnpjTransportador() != LocalizadorCnpjTransportador.CNPJ_NAO_ENCONTRADO) {
+				registrar(entry.getKey(), registro.getTamanho(), registro.getDataModificacao(), registro.getCnpjTransportador(), registro.getChaveAcesso());
+			}
+		}
+		gravar();
+	}
+
+	/**
+	 * Cataloga um arquivo lido
+	 * @param caminho caminho absoluto do arquivo
+	 * @param tamanho tamanho do arquivo no momento da leitura
+	 * @param dataModificacao data de modificação do arquivo no momento da leitura
+	 * @param cnpjTransportador chave numérica do CNPJ do transportador localizado no arquivo ou
+	 * {@link LocalizadorCnpjTransportador#CNPJ_NAO_ENCONTRADO} para um arquivo compactado, que será lido novamente
+	 * @param chaveAcesso chave de acesso localizada no arquivo ou <b>null</b> se não encontrada
+	 * @throws IOException
+	 */
+	public synchronized void registrar(String caminho, long tamanho, long dataModificacao, long cnpjTransportador,
+			ChaveAcesso chaveAcesso) throws IOException {
+		saida.writeByte(TIPO_ENTRADA);
+		new Entrada(caminho, tamanho, dataModificacao, cnpjTransportador, chaveAcesso).escrever(saida);
+		qtdeRegistrosLog++;
+	}
+
+	/**
+	 * Registra a cobertura da busca completa concluída em um diretório, gravando-a em disco depois dos arquivos
+	 * catalogados na busca. A cobertura anterior só é estendida se esta listagem começou dentro dela
+	 * @param pastaOrigem diretório de origem
+	 * @param dataModificacaoMinima data de modificação a partir da qual o diretório foi listado
+	 * @param inicioListagem instante em que a listagem do diretório começou
+	 * @throws IOException
+	 */
+	public synchronized void registrarCobertura(String pastaOrigem, long dataModificacaoMinima, long inicioListagem) throws IOException {
+		String pasta = normalizar(pastaOrigem);
+		Cobertura cobertura = coberturas.get(pasta);
+
+		if (cobertura != null && dataModificacaoMinima <= cobertura.fim) {
+			cobertura = new Cobertura(Math.min(cobertura.inicio, dataModificacaoMinima), Math.max(cobertura.fim, inicioListagem));
+		} else {
+			cobertura = new Cobertura(dataModificacaoMinima, inicioListagem);
+		}
+		coberturas.put(pasta, cobertura);
+		saida.writeByte(TIPO_COBERTURA);
+		cobertura.escrever(saida, pasta);
+
+		saida.flush();
+		saidaArquivo.getFD().sync();
+	}
+
+	/**
+	 * @param pastaOrigem diretório de origem
+	 * @param dataModificacaoMinima data de modificação mínima de uma busca no diretório
+	 * @return <b>true</b> se todos os arquivos do diretório modificados a partir desta data foram catalogados
+	 * até o fim da cobertura (ver {@link #getFimCobertura(String)})
+	 */
+	public synchronized boolean isCoberto(String pastaOrigem, long dataModificacaoMinima) {
+		Cobertura cobertura = coberturas.get(normalizar(pastaOrigem));
+		return cobertura != null && cobertura.inicio <= dataModificacaoMinima;
+	}
+
+	/**
+	 * @param pastaOrigem diretório de origem
+	 * @return instante em que começou a última listagem catalogada do diretório ou 0 se o diretório não foi catalogado
+	 */
+	public synchronized long getFimCobertura(String pastaOrigem) {
+		Cobertura cobertura = coberturas.get(normalizar(pastaOrigem));
+		return cobertura != null ? cobertura.fim : 0;
+	}
+
+	/**
+	 * Consulta os arquivos catalogados de um diretório, e dos seus subdiretórios, pelo CNPJ do transportador
+	 * e pela data de modificação. Os arquivos compactados do período também são retornados, sem transportador
+	 * @param pastaOrigem diretório de origem
+	 * @param cnpjsTransportadores chaves numéricas dos CNPJs dos transportadores
+	 * @param dataModificacaoMinima somente os arquivos modificados depois desta data são retornados
+	 * @param dataModificacaoMaxima somente os arquivos modificados até esta data são retornados
+	 * @return arquivos catalogados
+	 * @throws IOException
+	 */
+	public synchronized List<Entrada> consultar(String pastaOrigem, Set<Long> cnpjsTransportadores, long dataModificacaoMinima,
+			long dataModificacaoMaxima) throws IOException {
+		String prefixo = normalizar(pastaOrigem) + File.separator;
+		Set<Long> cnpjs = new TreeSet<>(cnpjsTransportadores);
+		cnpjs.add(LocalizadorCnpjTransportador.CNPJ_NAO_ENCONTRADO);
+		Map<String, Entrada> entradas = new HashMap<>();
+
+		if (baseValida) {
+			try (RandomAccessFile base = new RandomAccessFile(arquivoBase, "r")) {
+				for (long cnpj : cnpjs) {
+					lerTrechoBase(base, cnpj, prefixo, entradas);
+				}
+			}
+		}
+		// Os registros do log substituem os da base, mesmo que o arquivo seja agora de outro transportador
+		entradas.putAll(lerEntradasLog(prefixo));
+
+		List<Entrada> encontradas = new ArrayList<>();
+		for (Entrada registro : entradas.values()) {
+			if (cnpjs.contains(registro.cnpjTransportador) && registro.dataModificacao > dataModificacaoMinima
+					&& registro.dataModificacao <= dataModificacaoMaxima) {
+				encontradas.add(registro);
+			}
+		}
+		return encontradas;
+	}
+
+	/**
+	 * Consulta os arquivos catalogados de um diretório, e dos seus subdiretórios, pelo CNPJ do emitente e pelo
+	 * mês de emissão, obtidos da chave de acesso. A base é ordenada pelo transportador e é lida por inteiro
+	 * @param pastaOrigem diretório de origem
+	 * @param cnpjsEmitentes chaves numéricas dos CNPJs dos emitentes
+	 * @param anoMesEmissao ano e mês de emissão no formato <i>AAMM</i> ou 0 para qualquer mês
+	 * @return arquivos catalogados
+	 * @throws IOException
+	 */
+	public synchronized List<Entrada> consultarPorEmitente(String pastaOrigem, Set<Long> cnpjsEmitentes, int anoMesEmissao)
+			throws IOException {
+		String prefixo = normalizar(pastaOrigem) + File.separator;
+		Map<String, Entrada> entradas = new HashMap<>();
+
+		if (baseValida) {
+			try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(new FileInputStream(arquivoBase)))) {
+				entrada.skipBytes(TAMANHO_CABECALHO);
+
+				while (entrada.read() == TIPO_ENTRADA) {
+					Entrada registro = Entrada.ler(entrada);
+					if (registro.caminho.startsWith(prefixo) && registro.isEmitidaPor(cnpjsEmitentes, anoMesEmissao)) {
+						entradas.put(registro.caminho, registro);
+					}
+				}
+			}
+		}
+		// Os registros do log substituem os da base, mesmo que o arquivo tenha sido alterado para outra NF-e
+		for (Entrada registro : lerEntradasLog(prefixo).values()) {
+			if (registro.isEmitidaPor(cnpjsEmitentes, anoMesEmissao)) {
+				entradas.put(registro.caminho, registro);
+			} else {
+				entradas.remove(registro.caminho);
+			}
+		}
+		return new ArrayList<>(entradas.values());
+	}
+
+	/**
+	 * Incorpora o log à base se este atingiu a quantidade máxima de registros
+	 * @throws IOException
+	 */
+	public synchronized void compactarSeNecessario() throws IOException {
+		if (qtdeRegistrosLog >= QTDE_MAXIMA_REGISTROS_LOG) {
+			compactar();
+		}
+	}
+
+	/**
+	 * Grava em disco os registros pendentes
+	 * @throws IOException
+	 */
+	public synchronized void gravar() throws IOException {
+		saida.flush();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		saida.flush();
+		saidaArquivo.getFD().sync();
+		saida.close();
+	}
+
+	/**
+	 * Lê os registros da base a partir do marcador anterior ao trecho do transportador no diretório, até o fim do trecho
+	 */
+	private void lerTrechoBase(RandomAccessFile base, long cnpj, String prefixo, Map<String, Entrada> entradas) throws IOException {
+		long posicao = TAMANHO_CABECALHO;
+		int inicio = 0;
+		int fim = marcadores.size() - 1;
+
+		while (inicio <= fim) {
+			int meio = (inicio + fim) >>> 1;
+			Marcador marcador = marcadores.get(meio);
+
+			if (comparar(marcador.cnpjTransportador, marcador.caminho, cnpj, prefixo) < 0) {
+				posicao = marcador.posicao;
+				inicio = meio + 1;
+			} else {
+				fim = meio - 1;
+			}
+		}
+		base.seek(posicao);
+		DataInputStream entrada = new DataInputStream(new BufferedInputStream(Channels.newInputStream(base.getChannel())));
+
+		while (entrada.read() == TIPO_ENTRADA) {
+			Entrada registro = Entrada.ler(entrada);
+
+			if (registro.cnpjTransportador > cnpj) {
+				return;
+			}
+			if (registro.cnpjTransportador == cnpj && registro.caminho.compareTo(prefixo) >= 0) {
+				if (!registro.caminho.startsWith(prefixo)) {
+					return;
+				}
+				entradas.put(registro.caminho, registro);
+			}
+		}
+	}
+
+	/**
+	 * Reescreve a base com os registros do log, substituindo a anterior, e recomeça o log
+	 */
+	private void compactar() throws IOException {
+		Map<String, Entrada> registrosLog = lerEntradasLog("");
+		List<Entrada> novos = new ArrayList<>(registrosLog.values());
+		Collections.sort(novos, ORDEM_BASE);
+		Iterator<Entrada> iteratorNovos = novos.iterator();
+		Entrada novo = iteratorNovos.hasNext() ? iteratorNovos.next() : null;
+
+		File arquivoTemporario = new File(arquivoBase.getPath() + ".tmp");
+		EscritaBase escrita = new EscritaBase();
+
+		try (FileOutputStream saidaTemporaria = new FileOutputStream(arquivoTemporario)) {
+			DataOutputStream novaSaida = new DataOutputStream(new BufferedOutputStream(saidaTemporaria));
+			novaSaida.writeInt(IDENTIFICADOR_BASE);
+			novaSaida.writeInt(VERSAO_ARQUIVO);
+
+			if (baseValida) {
+				// Intercala a base, já ordenada, com os registros do log
+				try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(new FileInputStream(arquivoBase)))) {
+					entrada.skipBytes(TAMANHO_CABECALHO);
+
+					while (entrada.read() == TIPO_ENTRADA) {
+						Entrada registro = Entrada.ler(entrada);
+						if (registrosLog.containsKey(registro.caminho)) {
+							continue;
+						}
+						while (novo != null && ORDEM_BASE.compare(novo, registro) < 0) {
+							escrita.escrever(novaSaida, novo);
+							novo = iteratorNovos.hasNext() ? iteratorNovos.next() : null;
+						}
+						escrita.escrever(novaSaida, registro);
+					}
+				}
+			}
+			while (novo != null) {
+				escrita.escrever(novaSaida, novo);
+				novo = iteratorNovos.hasNext() ? iteratorNovos.next() : null;
+			}
+
+			// Índice esparso e coberturas, seguidos da posição em que começam
+			novaSaida.writeByte(TIPO_FIM);
+			novaSaida.writeLong(escrita.qtdeRegistros);
+			novaSaida.writeInt(escrita.marcadores.size());
+			for (Marcador marcador : escrita.marcadores) {
+				marcador.escrever(novaSaida);
+			}
+			novaSaida.writeInt(coberturas.size());
+			for (Entry<String, Cobertura> entry : coberturas.entrySet()) {
+				entry.getValue().escrever(novaSaida, entry.getKey());
+			}
+			novaSaida.writeLong(escrita.posicao);
+			novaSaida.flush();
+			saidaTemporaria.getFD().sync();
+		}
+		Files.move(arquivoTemporario.toPath(), arquivoBase.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		baseValida = true;
+		marcadores = escrita.marcadores;
+		qtdeRegistrosBase = escrita.qtdeRegistros;
+
+		// Uma interrupção antes de recomeçar o log apenas faz com que os seus registros sejam incorporados novamente
+		saida.close();
+		criarLog();
+		saidaArquivo = new FileOutputStream(arquivoLog, true);
+		saida = new DataOutputStream(new BufferedOutputStream(saidaArquivo));
+	}
+
+	/**
+	 * Lê o índice esparso e as coberturas gravados no final da base
+	 * @return <b>false</b> se a base estiver inválida
+	 */
+	private boolean lerBase() throws IOException {
+		try (RandomAccessFile base = new RandomAccessFile(arquivoBase, "r")) {
+			if (base.length() < TAMANHO_CABECALHO + 1 + Long.SIZE / 8 || base.readInt() != IDENTIFICADOR_BASE || base.readInt() != VERSAO_ARQUIVO) {
+				return false;
+			}
+			base.seek(base.length() - Long.SIZE / 8);
+			long posicaoIndice = base.readLong();
+
+			if (posicaoIndice < TAMANHO_CABECALHO || posicaoIndice >= base.length()) {
+				return false;
+			}
+			base.seek(posicaoIndice);
+			DataInputStream entrada = new DataInputStream(new BufferedInputStream(Channels.newInputStream(base.getChannel())));
+
+			if (entrada.read() != TIPO_FIM) {
+				return false;
+			}
+			long qtdeRegistros = entrada.readLong();
+			int qtdeMarcadores = entrada.readInt();
+			List<Marcador> marcadoresBase = new ArrayList<>(qtdeMarcadores);
+
+			for (int i = 0; i < qtdeMarcadores; i++) {
+				marcadoresBase.add(Marcador.ler(entrada));
+			}
+			int qtdeCoberturas = entrada.readInt();
+			for (int i = 0; i < qtdeCoberturas; i++) {
+				String pasta = entrada.readUTF();
+				coberturas.put(pasta, Cobertura.ler(entrada));
+			}
+			marcadores = marcadoresBase;
+			qtdeRegistrosBase = qtdeRegistros;
+			baseValida = true;
+			return true;
+
+		} catch (EOFException e) {
+			coberturas.clear();
+			return false;
+		}
+	}
+
+	/**
+	 * Lê o log, aplicando as coberturas registradas depois da última compactação. Um registro incompleto no
+	 * final do log, causado por uma interrupção durante a gravação, é removido
+	 * @return <b>false</b> se o log não existir ou estiver inválido e precisar ser criado
+	 */
+	private boolean lerLog() throws IOException {
+		if (!arquivoLog.exists()) {
+			return false;
+		}
+		long posicaoValida;
+		try (EntradaPosicionada posicionada = new EntradaPosicionada(new BufferedInputStream(new FileInputStream(arquivoLog)))) {
+			DataInputStream entrada = new DataInputStream(posicionada);
+			try {
+				if (entrada.readInt() != IDENTIFICADOR_LOG || entrada.readInt() != VERSAO_ARQUIVO) {
+					return false;
+				}
+			} catch (EOFException e) {
+				return false;
+			}
+			posicaoValida = posicionada.posicao;
+			try {
+				int tipo;
+				while ((tipo = entrada.read()) == TIPO_ENTRADA || tipo == TIPO_COBERTURA) {
+					if (tipo == TIPO_ENTRADA) {
+						Entrada.ler(entrada);
+						qtdeRegistrosLog++;
+					} else {
+						String pasta = entrada.readUTF();
+						coberturas.put(pasta, Cobertura.ler(entrada));
+					}
+					posicaoValida = posicionada.posicao;
+				}
+			} catch (EOFException e) {
+				// Registro incompleto
+			}
+		}
+		if (posicaoValida < arquivoLog.length()) {
+			try (RandomAccessFile log = new RandomAccessFile(arquivoLog, "rw")) {
+				log.setLength(posicaoValida);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Cria um log vazio, substituindo o anterior
+	 */
+	private void criarLog() throws IOException {
+		File arquivoTemporario = new File(arquivoLog.getPath() + ".tmp");
+
+		try (FileOutputStream saidaTemporaria = new FileOutputStream(arquivoTemporario)) {
+			DataOutputStream novaSaida = new DataOutputStream(new BufferedOutputStream(saidaTemporaria));
+			novaSaida.writeInt(IDENTIFICADOR_LOG);
+			novaSaida.writeInt(VERSAO_ARQUIVO);
+			novaSaida.flush();
+			saidaTemporaria.getFD().sync();
+		}
+		Files.move(arquivoTemporario.toPath(), arquivoLog.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		qtdeRegistrosLog = 0;
+	}
+
+	/**
+	 * Lê os arquivos catalogados no log, prevalecendo o último registro de cada caminho
+	 * @param prefixo início do caminho dos arquivos lidos
+	 */
+	private Map<String, Entrada> lerEntradasLog(String prefixo) throws IOException {
+		Map<String, Entrada> entradas = new LinkedHashMap<>();
+		saida.flush();
+
+		try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(new FileInputStream(arquivoLog)))) {
+			entrada.skipBytes(TAMANHO_CABECALHO);
+			int tipo;
+			while ((tipo = entrada.read()) >= 0) {
+				if (tipo == TIPO_ENTRADA) {
+					Entrada registro = Entrada.ler(entrada);
+					if (registro.caminho.startsWith(prefixo)) {
+						entradas.put(registro.caminho, registro);
+					}
+				} else {
+					entrada.readUTF();
+					Cobertura.ler(entrada);
+				}
+			}
+		}
+		return entradas;
+	}
+
+	private static String normalizar(String pastaOrigem) {
+		return Paths.get(pastaOrigem).toString();
+	}
+
+	private static int comparar(long cnpj1, String caminho1, long cnpj2, String caminho2) {
+		int comparacao = Long.compare(cnpj1, cnpj2);
+		return comparacao != 0 ? comparacao : caminho1.compareTo(caminho2);
+	}
+
+	/**
+	 * Arquivo catalogado
+	 */
+	public static class Entrada {
+		private final String caminho;
+		private final long tamanho;
+		private final long dataModificacao;
+		private final long cnpjTransportador;
+		private final ChaveAcesso chaveAcesso;
+
+		private Entrada(String caminho, long tamanho, long dataModificacao, long cnpjTransportador, ChaveAcesso chaveAcesso) {
+			this.caminho = caminho;
+			this.tamanho = tamanho;
+			this.dataModificacao = dataModificacao;
+			this.cnpjTransportador = cnpjTransportador;
+			this.chaveAcesso = chaveAcesso;
+		}
+
+		/**
+		 * @return caminho absoluto do arquivo
+		 */
+		public String getCaminho() {
+			return caminho;
+		}
+
+		/**
+		 * @return tamanho do arquivo quando foi lido
+		 */
+		public long getTamanho() {
+			return tamanho;
+		}
+
+		/**
+		 * @return data de modificação do arquivo quando foi lido
+		 */
+		public long getDataModificacao() {
+			return dataModificacao;
+		}
+
+		/**
+		 * @return chave numérica do CNPJ do transportador ou {@link LocalizadorCnpjTransportador#CNPJ_NAO_ENCONTRADO}
+		 * para um arquivo compactado
+		 */
+		public long getCnpjTransportador() {
+			return cnpjTransportador;
+		}
+
+		/**
+		 * @return chave de acesso localizada no arquivo ou <b>null</b> se não encontrada
+		 */
+		public ChaveAcesso getChaveAcesso() {
+			return chaveAcesso;
+		}
+
+		/**
+		 * @return chave numérica do CNPJ do emitente (ver {@link LocalizadorCnpjTransportador#converterCnpj(String)}),
+		 * obtida da chave de acesso, ou {@link LocalizadorCnpjTransportador#CNPJ_NAO_ENCONTRADO} se a chave não foi encontrada
+		 */
+		public long getCnpjEmitente() {
+			return chaveAcesso != null ? chaveAcesso.getCnpjEmitente() : LocalizadorCnpjTransportador.CNPJ_NAO_ENCONTRADO;
+		}
+
+		/**
+		 * @return ano e mês de emissão no formato <i>AAMM</i>, obtidos da chave de acesso, ou 0 se a chave não foi encontrada
+		 */
+		public int getAnoMesEmissao() {
+			return chaveAcesso != null ? chaveAcesso.getAnoMesEmissao() : 0;
+		}
+
+		private boolean isEmitidaPor(Set<Long> cnpjsEmitentes, int anoMesEmissao) {
+			return chaveAcesso != null && cnpjsEmitentes.contains(chaveAcesso.getCnpjEmitente())
+					&& (anoMesEmissao == 0 || chaveAcesso.getAnoMesEmissao() == anoMesEmissao);
+		}
+
+		private void escrever(DataOutputStream dataOutputStream) throws IOException {
+			dataOutputStream.writeLong(cnpjTransportador);
+			dataOutputStream.writeUTF(caminho);
+			dataOutputStream.writeLong(tamanho);
+			dataOutputStream.writeLong(dataModificacao);
+			dataOutputStream.writeLong(chaveAcesso != null ? chaveAcesso.getParte1() : CHAVE_AUSENTE);
+			dataOutputStream.writeLong(chaveAcesso != null ? chaveAcesso.getParte2() : CHAVE_AUSENTE);
+			dataOutputStream.writeLong(chaveAcesso != null ? chaveAcesso.getParte3() : CHAVE_AUSENTE);
+		}
+
+		private static Entrada ler(DataInputStream entrada) throws IOException {
+			long cnpjTransportador = entrada.readLong();
+			String caminho = entrada.readUTF();
+			long tamanho = entrada.readLong();
+			long dataModificacao = entrada.readLong();
+			long parte1 = entrada.readLong();
+			long parte2 = entrada.readLong();
+			long parte3 = entrada.readLong();
+			ChaveAcesso chaveAcesso = parte1 != CHAVE_AUSENTE ? new ChaveAcesso(parte1, parte2, parte3) : null;
+			return new Entrada(caminho, tamanho, dataModificacao, cnpjTransportador, chaveAcesso);
+		}
+	}
+
+	/**
+	 * Período de modificação dos arquivos catalogados de um diretório
+	 */
+	private static class Cobertura {
+		private final long inicio; // data de modificação mínima da listagem mais antiga
+		private final long fim; // início da listagem mais recente
+
+		private Cobertura(long inicio, long fim) {
+			this.inicio = inicio;
+			this.fim = fim;
+		}
+
+		private void escrever(DataOutputStream dataOutputStream, String pasta) throws IOException {
+			dataOutputStream.writeUTF(pasta);
+			dataOutputStream.writeLong(inicio);
+			dataOutputStream.writeLong(fim);
+		}
+
+		/**
+		 * Lê a cobertura cujo diretório já foi lido
+		 */
+		private static Cobertura ler(DataInputStream entrada) throws IOException {
+			return new Cobertura(entrada.readLong(), entrada.readLong());
+		}
+	}
+
+	/**
+	 * Primeiro registro de um trecho da base e a sua posição no arquivo
+	 */
+	private static class Marcador {
+		private final long cnpjTransportador;
+		private final String caminho;
+		private final long posicao;
+
+		private Marcador(long cnpjTransportador, String caminho, long posicao) {
+			this.cnpjTransportador = cnpjTransportador;
+			this.caminho = caminho;
+			this.posicao = posicao;
+		}
+
+		private void escrever(DataOutputStream dataOutputStream) throws IOException {
+			dataOutputStream.writeLong(cnpjTransportador);
+			dataOutputStream.writeUTF(caminho);
+			dataOutputStream.writeLong(posicao);
+		}
+
+		private static Marcador ler(DataInputStream entrada) throws IOException {
+			return new Marcador(entrada.readLong(), entrada.readUTF(), entrada.readLong());
+		}
+	}
+
+	/**
+	 * Gravação dos registros de uma nova base, acompanhando a posição de cada registro para o índice esparso
+	 */
+	private static class EscritaBase {
+		private final ByteArrayOutputStream bufferRegistro = new ByteArrayOutputStream();
+		private final DataOutputStream saidaRegistro = new DataOutputStream(bufferRegistro);
+		private final List<Marcador> marcadores = new ArrayList<>();
+		private long posicao = TAMANHO_CABECALHO;
+		private long qtdeRegistros;
+
+		private void escrever(DataOutputStream dataOutputStream, Entrada registro) throws IOException {
+			if (qtdeRegistros % QTDE_REGISTROS_POR_MARCADOR == 0) {
+				marcadores.add(new Marcador(registro.cnpjTransportador, registro.caminho, posicao));
+			}
+			bufferRegistro.reset();
+			saidaRegistro.writeByte(TIPO_ENTRADA);
+			registro.escrever(saidaRegistro);
+			bufferRegistro.writeTo(dataOutputStream);
+			posicao += bufferRegistro.size();
+			qtdeRegistros++;
+		}
+	}
+
+	/**
+	 * Leitura que acompanha a quantidade de bytes já consumidos
+	 */
+	private static class EntradaPosicionada extends FilterInputStream {
+		private long posicao;
+
+		private EntradaPosicionada(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int lido = super.read();
+			if (lido >= 0) {
+				posicao++;
+			}
+			return lido;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int lidos = super.read(b, off, len);
+			if (lidos > 0) {
+				posicao += lidos;
+			}
+			return lidos;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long ignorados = super.skip(n);
+			posicao += ignorados;
+			return ignorados;
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package com.juno.utils;
+
+import java.util.Arrays;
+
+import com.juno.model.ChaveAcesso;
+
+/**
+ * Conjunto de chaves de acesso em endereçamento aberto sobre um único array de longs, com as
+ * três partes de cada chave em posições consecutivas. Cada chave ocupa 24 bytes (até 48 com a
+ * folga da tabela), sem um objeto por chave como em um {@link java.util.HashSet}.
+ * <br>
+ * Os métodos são sincronizados, pois o conjunto é compartilhado pelas threads de leitura e cópia
+ */
+public class ConjuntoChavesAcesso {
+
+	private static final int CAPACIDADE_INICIAL = 1024;
+	private static final long VAZIO = -1; // as partes de uma chave nunca são negativas
+
+	private long[] tabela;
+	private int quantidade;
+
+	public ConjuntoChavesAcesso() {
+		tabela = criarTabela(CAPACIDADE_INICIAL);
+	}
+
+	/**
+	 * Adiciona a chave ao conjunto
+	 * @param chave chave de acesso
+	 * @return <b>false</b> se a chave já fazia parte do conjunto
+	 */
+	public synchronized boolean adicionar(ChaveAcesso chave) {
+		if ((quantidade + 1) * 2 > getCapacidade()) {
+			redimensionar(getCapacidade() * 2);
+		}
+		int posicao = localizar(tabela, chave.getParte1(), chave.getParte2(), chave.getParte3());
+
+		if (tabela[posicao] != VAZIO) {
+			return false;
+		}
+		tabela[posicao] = chave.getParte1();
+		tabela[posicao + 1] = chave.getParte2();
+		tabela[posicao + 2] = chave.getParte3();
+		quantidade++;
+		return true;
+	}
+
+	/**
+	 * @param chave chave de acesso
+	 * @return <b>true</b> se a chave faz parte do conjunto
+	 */
+	public synchronized boolean contem(ChaveAcesso chave) {
+		return tabela[localizar(tabela, chave.getParte1(), chave.getParte2(), chave.getParte3())] != VAZIO;
+	}
+
+	/**
+	 * Remove a chave do conjunto, reposicionando as chaves seguintes da mesma sequência de colisões
+	 * @param chave chave de acesso
+	 */
+	public synchronized void remover(ChaveAcesso chave) {
+		int posicao = localizar(tabela, chave.getParte1(), chave.getParte2(), chave.getParte3());
+		if (tabela[posicao] == VAZIO) {
+			return;
+		}
+		tabela[posicao] = VAZIO;
+		quantidade--;
+
+		int proxima = avancar(posicao);
+		while (tabela[proxima] != VAZIO) {
+			long parte1 = tabela[proxima];
+			long parte2 = tabela[proxima + 1];
+			long parte3 = tabela[proxima + 2];
+			tabela[proxima] = VAZIO;
+
+			int destino = localizar(tabela, parte1, parte2, parte3);
+			tabela[destino] = parte1;
+			tabela[destino + 1] = parte2;
+			tabela[destino + 2] = parte3;
+			proxima = avancar(proxima);
+		}
+	}
+
+	/**
+	 * @return quantidade de chaves no conjunto
+	 */
+	public synchronized int getQuantidade() {
+		return quantidade;
+	}
+
+	private int getCapacidade() {
+		return tabela.length / 3;
+	}
+
+	private int avancar(int posicao) {
+		posicao += 3;
+		return posicao == tabela.length ? 0 : posicao;
+	}
+
+	/**
+	 * @return posição da chave na tabela ou da posição vazia onde ela deve ser incluída
+	 */
+	private static int localizar(long[] tabela, long parte1, long parte2, long parte3) {
+		int capacidade = tabela.length / 3;
+		int posicao = (espalhar(parte1, parte2, parte3) & (capacidade - 1)) * 3;
+
+		while (tabela[posicao] != VAZIO
+				&& (tabela[posicao] != parte1 || tabela[posicao + 1] != parte2 || tabela[posicao + 2] != parte3)) {
+			posicao += 3;
+			if (posicao == tabela.length) {
+				posicao = 0;
+			}
+		}
+		return posicao;
+	}
+
+	private void redimensionar(int novaCapacidade) {
+		long[] novaTabela = criarTabela(novaCapacidade);
+
+		for (int i = 0; i < tabela.length; i += 3) {
+			if (tabela[i] != VAZIO) {
+				int posicao = localizar(novaTabela, tabela[i], tabela[i + 1], tabela[i + 2]);
+				novaTabela[posicao] = tabela[i];
+				novaTabela[posicao + 1] = tabela[i + 1];
+				novaTabela[posicao + 2] = tabela[i + 2];
+			}
+		}
+		tabela = novaTabela;
+	}
+
+	private static long[] criarTabela(int capacidade) {
+		long[] tabela = new long[capacidade * 3];
+		Arrays.fill(tabela, VAZIO);
+		return tabela;
+	}
+
+	/**
+	 * Mistura os bits das partes da chave (finalizador do MurmurHash3), pois os dígitos
+	 * iniciais, com a UF e a data de emissão, se repetem entre as chaves
+	 */
+	private static int espalhar(long parte1, long parte2, long parte3) {
+		long hash = (parte1 * 31 + parte2) * 31 + parte3;
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return (int) hash;
+	}
+}
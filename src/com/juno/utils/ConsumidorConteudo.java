@@ -0,0 +1,19 @@
+package com.juno.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Recebe o conteúdo de um arquivo em trechos, na ordem em que são lidos
+ */
+public interface ConsumidorConteudo {
+
+	/**
+	 * Consome o próximo trecho do conteúdo
+	 * @param conteudo trecho do conteúdo, da posição até o limite do buffer. O buffer é
+	 * reaproveitado na leitura do trecho seguinte e não deve ser mantido após o retorno
+	 * @return <b>true</b> para interromper a leitura do restante do arquivo
+	 * @throws IOException
+	 */
+	boolean consumir(ByteBuffer conteudo) throws IOException;
+}
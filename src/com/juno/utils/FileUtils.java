@@ -1,246 +1,570 @@
-package com.juno.utils;
-
-import java.io.BufferedOutputStream;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.RandomAccessFile;
-import java.net.URLDecoder;
-import java.nio.file.Files;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Scanner;
-
-import org.apache.commons.configuration.PropertiesConfiguration;
-
-public class FileUtils {
-	
-	private static final String STRING_VAZIA = "";
-	private static final DateFormat DATE_FORMAT_ONLY_YEAR = new SimpleDateFormat("yyyy");
-	private static final DateFormat DATE_FORMAT_ONLY_MONTH = new SimpleDateFormat("'Mês'-MM");
-	private static final DateFormat DATE_FORMAT_ONLY_DAY_OF_MONTH = new SimpleDateFormat("'Dia'-dd");
-	
-	/**
-	 * Retorna o conteúdo do arquivo informado
-	 * @author Renan Baggio
-	 * @param inputStream do arquivo
-	 * @return String com o conteúdo
-	 */
-	public String getConteudoArquivo(InputStream inputStream) {
-		Scanner scanner = null;
-		StringBuilder conteudo = new StringBuilder("");
-		try {
-			scanner = new Scanner(inputStream, "UTF-8");
-			while (scanner.hasNextLine()) {
-				conteudo.append(scanner.nextLine());
-			}
-		} catch (Exception e) {
-			e.printStackTrace();
-			throw e;
-		} finally {
-			if (scanner != null) {
-				scanner.close();
-			}
-		}
-		return conteudo.toString();
-	}
-	
-	/**
-	 * Cria o arquivo e pasta no diretório especificado
-	 * @author Renan Baggio
-	 * @param diretorio da pasta do arquivo
-	 * @param nomeArquivo desejado para o arquivo
-	 * @return File com caminho completo do novo arquivo
-	 * @throws IOException
-	 */
-	public File criarArquivo(String diretorio, String nomeArquivo) throws IOException {
-		criarDiretorio(diretorio);
-		return new File(diretorio + nomeArquivo);
-	}
-	
-	/**
-	 * Cria o diretório especificado caso ainda não exista
-	 * @author Renan Baggio
-	 * @param diretorio referente a pasta a ser criada
-	 * @throws IOException
-	 */
-	public void criarDiretorio(String diretorio) throws IOException {
-		File file = new File(diretorio);
-		
-		if (!file.exists()) {
-			file.mkdirs();
-		}
-	}
-	
-	/**
-	 * Salva o inputStream recebido em um arquivo no diretório informado
-	 * @author Renan Baggio
-	 * @param inputStream para criar o arquivo
-	 * @param diretorio para salvar o arquivo
-	 * @param nomeArquivo <b>com extenção</b> do arquivo
-	 * @throws IOException
-	 * @throws FileNotFoundException
-	 */
-	public void salvarArquivo(InputStream inputStream, String diretorio, String nomeArquivo) throws IOException, FileNotFoundException {
-		// Cria o arquivo e o diretório caso o mesmo não exista
-		File arquivo = this.criarArquivo(diretorio, nomeArquivo);
-		
-		// Cria um buffer temporário para o arquivo
-		BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(arquivo));
-		
-		byte[] temporario = new byte[1024];
-		int tamanho;
-		
-		// Cria o arquivo no diretório
-		while ((tamanho = inputStream.read(temporario)) >= 0) {
-			bos.write(temporario, 0, tamanho);
-		}
-		inputStream.close();
-		bos.close();
-	}
-	
-	/**
-	 * Verifica se o arquivo não existe ou está em uso por outro processo
-	 * @author Renan Baggio
-	 * @param file Arquivo a ser verificado
-	 * @return <b>true</b> se o arquivo não existir ou estiver em uso
-	 */
-	public boolean isArquivoEmUso(File file) {
-		boolean verificadorEspecifico = false;
-		
-		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
-			// O channel não será criado se o arquivo não existir ou estiver em uso
-			randomAccessFile.getChannel();
-			
-		} catch (FileNotFoundException fnfe) {
-			if (!file.exists()) {
-				System.out.println("Arquivo " + file.getName() + " não encontrado");
-			} else {
-				System.out.println("Arquivo " + file.getName() + " está em uso por outro processo");
-				verificadorEspecifico = true;
-			}
-		} catch (Exception e) {
-			System.out.println(e.getMessage());
-		}
-		return verificadorEspecifico;
-	}
-	
-	/**
-	 * Cria uma cópia do arquivo informado
-	 * @author Renan Baggio
-	 * @param origem Arquivo a ser copiado
-	 * @param destino Pasta destino + nome do arquivo
-	 * @throws IOException
-	 */
-	public void copiarArquivo(File origem, File destino) throws Exception {
-		Files.copy(origem.toPath(), destino.toPath()); // TODO Verificar possível memory leak com este método
-	}
-	
-	/**
-	 * Obtém o diretório em que o programa foi executado
-	 * @author Renan Baggio
-	 * @return Diretório onde o programa foi iniciado
-	 * @throws Exception
-	 */
-	public String getDiretorioExecucao() throws Exception {
-		String path = new File(ClassLoader.getSystemClassLoader().getResource(".").getPath()).getAbsolutePath();
-		return URLDecoder.decode(path, "UTF-8");
-	}
-	
-	/**
-	 * Valida se o diretório informado está preenchido, se existe e é uma pasta
-	 * @author Renan Baggio
-	 * @param folderPath caminho absoluto do diretório a verificar
-	 * @param propertyName nome da propriedade de onde foi obtido o diretório
-	 * @param configFileNameQuoted nome do arquivo de onde foi obtido o diretório
-	 * @return String vazia se estiver tudo ok
-	 */
-	public String validarDiretorioOrigem(String folderPath, String propertyName, String configFileNameQuoted) {
-		if (folderPath == null || folderPath.isEmpty()) {
-			return "Propriedade \"" + propertyName 
-					+ "\" não encontrada ou não devidamente preenchida no arquivo " + configFileNameQuoted
-					+ ". Informe o diretório de ORIGEM que será verificado em busca das NF-es do Transportador"
-					+ ". Ex.: F:\\Arquivos\\Notas Fiscais\\GM São Mateus" + System.lineSeparator();
-		
-		} else if (!new File(folderPath).exists()) {
-			return "O diretório de ORIGEM \"" + folderPath 
-					+ "\" não existe. Se o caminho estiver correto, crie o diretório e tente novamente" + System.lineSeparator();
-		
-		} else if (!new File(folderPath).isDirectory()) {
-			return "O diretório de ORIGEM \"" + folderPath 
-					+ "\" é um arquivo ao invés de uma pasta. Deve ser informado o caminho de uma pasta" + System.lineSeparator();
-		}
-		return STRING_VAZIA;
-	}
-	
-	/**
-	 * Valida se o diretório informado está preenchido, se existe e é uma pasta
-	 * @author Renan Baggio
-	 * @param folderPath caminho absoluto do diretório a verificar
-	 * @param propertyName nome da propriedade de onde foi obtido o diretório
-	 * @param configFileNameQuoted nome do arquivo de onde foi obtido o diretório
-	 * @return String vazia se estiver tudo ok
-	 */
-	public String validarDiretorioDestino(String folderPath, String propertyName, String configFileNameQuoted) {
-		if (folderPath == null || folderPath.isEmpty()) {
-			return "Propriedade \"" + propertyName 
-					+ "\" não encontrada ou não devidamente preenchida no arquivo " + configFileNameQuoted
-					+ ". Informe o diretório de DESTINO para onde serão copiados os XMLs de NF-es do Transportador"
-					+ ". Ex.: F:\\Arquivos\\Notas Fiscais\\Transportadora BR" + System.lineSeparator();
-		
-		} else if (!new File(folderPath).exists()) {
-			return "O diretório de DESTINO \"" + folderPath 
-					+ "\" não existe. Se o caminho estiver correto, crie o diretório e tente novamente" + System.lineSeparator();
-		
-		} else if (!new File(folderPath).isDirectory()) {
-			return "O diretório de DESTINO \"" + folderPath 
-					+ "\" é um arquivo ao invés de uma pasta. Deve ser informado o caminho de uma pasta" + System.lineSeparator();
-		}
-		return STRING_VAZIA;
-	}
-	
-	/**
-	 * Retorna o path completo do diretório para onde o arquivo será copiado
-	 * @author Renan Baggio
-	 * @param diretorioDestino Diretório de destino raiz
-	 * @return Path completo do diretório para onde o arquivo será copiado
-	 */
-	public String getDiretorioArquivoCopia(String diretorioDestino) {
-		Date dataAtual = new Date();
-		return diretorioDestino
-				+ File.separator + DATE_FORMAT_ONLY_YEAR.format(dataAtual)
-				+ File.separator + DATE_FORMAT_ONLY_MONTH.format(dataAtual)
-				+ File.separator + DATE_FORMAT_ONLY_DAY_OF_MONTH.format(dataAtual);
-	}
-	
-	/**
-	 * Retorna um objeto PropertiesConfiguration
-	 * @author Renan Baggio
-	 * @param fileName nome do arquivo properties
-	 * @return PropertiesConfiguration
-	 * @throws IOException
-	 */
-	public PropertiesConfiguration carregarProperties(String fileName) throws Exception {
-		File file = new File(getDiretorioExecucao() + File.separator + fileName);
-		
-		if (!file.exists()) {
-			throw new Exception("Arquivo de configuração \"" + fileName + "\" não encontrado");
-		}
-		PropertiesConfiguration properties = new PropertiesConfiguration(file);
-		return properties;
-	}
-	
-	/**
-	 * Atualiza o arquivo Properties informado
-	 * @author Renan Baggio
-	 * @param absolutePath caminho até o arquivo properties
-	 * @param properties objeto PropertiesConfiguration que será salvo
-	 * @throws IOException
-	 */
-	public void atualizarProperties(String absolutePath, PropertiesConfiguration properties) throws Exception {
-		properties.save();
-	}
+package com.juno.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.configuration.PropertiesConfiguration;
+
+import com.juno.exception.CopiaDivergenteException;
+import com.juno.model.EstrategiaCopia;
+
+public class FileUtils {
+	
+	private static final String STRING_VAZIA = "";
+	private static final DateFormat DATE_FORMAT_ONLY_YEAR = new SimpleDateFormat("yyyy");
+	private static final DateFormat DATE_FORMAT_ONLY_MONTH = new SimpleDateFormat("'Mês'-MM");
+	private static final DateFormat DATE_FORMAT_ONLY_DAY_OF_MONTH = new SimpleDateFormat("'Dia'-dd");
+	
+	private static final String EXTENSAO_ARQUIVO_TEMPORARIO = ".tmp";
+	private static final String ALGORITMO_SOMA = "SHA-256";
+	private static final int TAMANHO_BUFFER_VERIFICACAO = 64 * 1024;
+	
+	private EstrategiaCopia estrategiaCopia = EstrategiaCopia.AUTOMATICA;
+	private final Map<String, Boolean> mapLinkPossivel = new ConcurrentHashMap<>();
+	
+	/**
+	 * Retorna o conteúdo do arquivo informado
+	 * @author Renan Baggio
+	 * @param inputStream do arquivo
+	 * @return String com o conteúdo
+	 */
+	public String getConteudoArquivo(InputStream inputStream) {
+		Scanner scanner = null;
+		StringBuilder conteudo = new StringBuilder("");
+		try {
+			scanner = new Scanner(inputStream, "UTF-8");
+			while (scanner.hasNextLine()) {
+				conteudo.append(scanner.nextLine());
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+			throw e;
+		} finally {
+			if (scanner != null) {
+				scanner.close();
+			}
+		}
+		return conteudo.toString();
+	}
+	
+	/**
+	 * Lê o conteúdo do arquivo informado através de um {@link FileChannel}, entregando-o em
+	 * trechos ao consumidor até o fim do arquivo ou até que o consumidor interrompa a leitura.
+	 * O conteúdo é lido no buffer informado, que pode ser direto e reaproveitado entre as leituras.
+	 * Os arquivos não são mapeados em memória: o mapeamento só é liberado pelo coletor de lixo e,
+	 * enquanto isso, mantém o arquivo bloqueado no Windows, impedindo que o emissor o altere ou remova
+	 * @param arquivo arquivo a ser lido
+	 * @param buffer buffer usado na leitura
+	 * @param consumidor consumidor do conteúdo
+	 * @throws IOException
+	 */
+	public void lerConteudoArquivo(File arquivo, ByteBuffer buffer, ConsumidorConteudo consumidor) throws IOException {
+		try (FileChannel channel = FileChannel.open(arquivo.toPath(), StandardOpenOption.READ)) {
+			buffer.clear();
+			while (channel.read(buffer) >= 0) {
+				buffer.flip();
+				
+				if (consumidor.consumir(buffer)) {
+					return;
+				}
+				buffer.clear();
+			}
+		}
+	}
+	
+	/**
+	 * Cria o arquivo e pasta no diretório especificado
+	 * @author Renan Baggio
+	 * @param diretorio da pasta do arquivo
+	 * @param nomeArquivo desejado para o arquivo
+	 * @return File com caminho completo do novo arquivo
+	 * @throws IOException
+	 */
+	public File criarArquivo(String diretorio, String nomeArquivo) throws IOException {
+		criarDiretorio(diretorio);
+		return new File(diretorio + nomeArquivo);
+	}
+	
+	/**
+	 * Cria o diretório especificado caso ainda não exista
+	 * @author Renan Baggio
+	 * @param diretorio referente a pasta a ser criada
+	 * @throws IOException
+	 */
+	public void criarDiretorio(String diretorio) throws IOException {
+		File file = new File(diretorio);
+		
+		if (!file.exists()) {
+			file.mkdirs();
+		}
+	}
+	
+	/**
+	 * Salva o inputStream recebido em um arquivo no diretório informado
+	 * @author Renan Baggio
+	 * @param inputStream para criar o arquivo
+	 * @param diretorio para salvar o arquivo
+	 * @param nomeArquivo <b>com extenção</b> do arquivo
+	 * @throws IOException
+	 * @throws FileNotFoundException
+	 */
+	public void salvarArquivo(InputStream inputStream, String diretorio, String nomeArquivo) throws IOException, FileNotFoundException {
+		// Cria o arquivo e o diretório caso o mesmo não exista
+		File arquivo = this.criarArquivo(diretorio, nomeArquivo);
+		
+		// Cria um buffer temporário para o arquivo
+		BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(arquivo));
+		
+		byte[] temporario = new byte[1024];
+		int tamanho;
+		
+		// Cria o arquivo no diretório
+		while ((tamanho = inputStream.read(temporario)) >= 0) {
+			bos.write(temporario, 0, tamanho);
+		}
+		inputStream.close();
+		bos.close();
+	}
+	
+	/**
+	 * Verifica se o arquivo não existe ou está em uso por outro processo
+	 * @author Renan Baggio
+	 * @param file Arquivo a ser verificado
+	 * @return <b>true</b> se o arquivo não existir ou estiver em uso
+	 */
+	public boolean isArquivoEmUso(File file) {
+		boolean verificadorEspecifico = false;
+		
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+			// O channel não será criado se o arquivo não existir ou estiver em uso
+			randomAccessFile.getChannel();
+			
+		} catch (FileNotFoundException fnfe) {
+			if (!file.exists()) {
+				System.out.println("Arquivo " + file.getName() + " não encontrado");
+			} else {
+				System.out.println("Arquivo " + file.getName() + " está em uso por outro processo");
+				verificadorEspecifico = true;
+			}
+		} catch (Exception e) {
+			System.out.println(e.getMessage());
+		}
+		return verificadorEspecifico;
+	}
+	
+	/**
+	 * Cria uma cópia do arquivo informado conforme a estratégia de cópia definida. O conteúdo é
+	 * gravado em um arquivo temporário no diretório de destino e renomeado ao final, para que
+	 * um arquivo incompleto nunca apareça com o nome definitivo
+	 * @author Renan Baggio
+	 * @param origem Arquivo a ser copiado
+	 * @param destino Pasta destino + nome do arquivo
+	 * @throws FileAlreadyExistsException se o arquivo de destino já existir
+	 * @throws IOException
+	 */
+	public void copiarArquivo(File origem, File destino) throws Exception {
+		if (destino.exists()) {
+			throw new FileAlreadyExistsException(destino.getPath());
+		}
+		if ((estrategiaCopia == EstrategiaCopia.LINK || estrategiaCopia == EstrategiaCopia.AUTOMATICA) && criarLink(origem, destino)) {
+			return;
+		}
+		Path temporario = destino.toPath().resolveSibling("." + destino.getName() + EXTENSAO_ARQUIVO_TEMPORARIO);
+		try {
+			if (estrategiaCopia == EstrategiaCopia.COPIA) {
+				Files.copy(origem.toPath(), temporario, StandardCopyOption.REPLACE_EXISTING);
+			} else {
+				transferirArquivo(origem.toPath(), temporario);
+			}
+			moverArquivo(temporario, destino.toPath());
+			
+		} finally {
+			Files.deleteIfExists(temporario);
+		}
+	}
+	
+	/**
+	 * Grava o conteúdo informado no destino, passando por um arquivo temporário assim como em
+	 * {@link #copiarArquivo(File, File)}
+	 * @param conteudo conteúdo do arquivo. Não é fechado por este método
+	 * @param destino Pasta destino + nome do arquivo
+	 * @return quantidade de bytes gravados
+	 * @throws FileAlreadyExistsException se o arquivo de destino já existir
+	 * @throws IOException
+	 */
+	public long gravarArquivo(InputStream conteudo, File destino) throws IOException {
+		if (destino.exists()) {
+			throw new FileAlreadyExistsException(destino.getPath());
+		}
+		Path temporario = destino.toPath().resolveSibling("." + destino.getName() + EXTENSAO_ARQUIVO_TEMPORARIO);
+		try {
+			long tamanho = Files.copy(conteudo, temporario, StandardCopyOption.REPLACE_EXISTING);
+			moverArquivo(temporario, destino.toPath());
+			return tamanho;
+
+		} finally {
+			Files.deleteIfExists(temporario);
+		}
+	}
+
+	/**
+	 * Copia o arquivo verificando a cópia pela soma SHA-256 do conteúdo. O arquivo temporário é sincronizado com
+	 * o disco e lido novamente do destino, e só é renomeado se o seu tamanho e a sua soma conferirem com a origem.
+	 * A soma é registrada no manifesto do destino, e um conteúdo já entregue com outro nome não é entregue novamente.
+	 * Se a soma da origem não for informada, ela é calculada durante a cópia, na mesma leitura da origem; quando a
+	 * estratégia permite o link físico, a origem é então lida somente para a soma
+	 * @param origem Arquivo a ser copiado
+	 * @param destino Pasta destino + nome do arquivo
+	 * @param manifesto manifesto do diretório de destino do transportador
+	 * @param somaOrigem soma SHA-256 em hexadecimal já calculada na leitura da origem, ou <b>null</b>
+	 * @return soma SHA-256 em hexadecimal ou <b>null</b> se um arquivo com o mesmo conteúdo já foi entregue
+	 * @throws FileAlreadyExistsException se o arquivo de destino já existir
+	 * @throws CopiaDivergenteException se o arquivo gravado não conferir com a origem
+	 * @throws IOException
+	 */
+	public String copiarArquivoVerificado(File origem, File destino, ManifestoDestino manifesto, String somaOrigem) throws IOException {
+		if (destino.exists()) {
+			throw new FileAlreadyExistsException(destino.getPath());
+		}
+		if ((estrategiaCopia == EstrategiaCopia.LINK || estrategiaCopia == EstrategiaCopia.AUTOMATICA) && isLinkPossivel(origem, destino)) {
+			String soma = somaOrigem;
+			if (soma == null) {
+				try (InputStream conteudo = new FileInputStream(origem)) {
+					soma = calcularSoma(conteudo);
+				}
+			}
+			if (!manifesto.reservarConteudo(soma)) {
+				return null;
+			}
+			if (criarLink(origem, destino)) {
+				manifesto.registrarSoma(destino, soma);
+				return soma;
+			}
+			manifesto.liberarConteudo(soma);
+		}
+		try (InputStream conteudo = new FileInputStream(origem)) {
+			return gravarArquivoVerificado(conteudo, destino, manifesto, somaOrigem);
+		}
+	}
+
+	/**
+	 * Grava o conteúdo informado no destino, com a verificação e o registro da soma SHA-256 feitos em
+	 * {@link #copiarArquivoVerificado(File, File, ManifestoDestino, String)}
+	 * @param conteudo conteúdo do arquivo. Não é fechado por este método
+	 * @param destino Pasta destino + nome do arquivo
+	 * @param manifesto manifesto do diretório de destino do transportador
+	 * @return soma SHA-256 em hexadecimal ou <b>null</b> se um arquivo com o mesmo conteúdo já foi entregue
+	 * @throws FileAlreadyExistsException se o arquivo de destino já existir
+	 * @throws CopiaDivergenteException se o arquivo gravado não conferir com o conteúdo
+	 * @throws IOException
+	 */
+	public String gravarArquivoVerificado(InputStream conteudo, File destino, ManifestoDestino manifesto) throws IOException {
+		return gravarArquivoVerificado(conteudo, destino, manifesto, null);
+	}
+
+	/**
+	 * @param somaConteudo soma já calculada do conteúdo, ou <b>null</b> para calculá-la durante a gravação
+	 */
+	private String gravarArquivoVerificado(InputStream conteudo, File destino, ManifestoDestino manifesto, String somaConteudo)
+			throws IOException {
+		if (destino.exists()) {
+			throw new FileAlreadyExistsException(destino.getPath());
+		}
+		Path temporario = destino.toPath().resolveSibling("." + destino.getName() + EXTENSAO_ARQUIVO_TEMPORARIO);
+		try {
+			MessageDigest digest = somaConteudo == null ? criarDigest() : null;
+			byte[] buffer = new byte[TAMANHO_BUFFER_VERIFICACAO];
+			long tamanho = 0;
+			int lidos;
+
+			try (FileOutputStream saida = new FileOutputStream(temporario.toFile())) {
+				while ((lidos = conteudo.read(buffer)) >= 0) {
+					if (digest != null) {
+						digest.update(buffer, 0, lidos);
+					}
+					saida.write(buffer, 0, lidos);
+					tamanho += lidos;
+				}
+				saida.getFD().sync();
+			}
+			// Com a soma calculada na leitura, uma origem alterada desde então também não confere com a cópia
+			String soma = digest != null ? converterHexadecimal(digest.digest()) : somaConteudo;
+			String somaGravada;
+			try (InputStream gravado = Files.newInputStream(temporario)) {
+				somaGravada = calcularSoma(gravado);
+			}
+			if (Files.size(temporario) != tamanho || !soma.equals(somaGravada)) {
+				throw new CopiaDivergenteException("O arquivo gravado em " + destino.getPath() + " não confere com a origem");
+			}
+			if (!manifesto.reservarConteudo(soma)) {
+				return null;
+			}
+			try {
+				moverArquivo(temporario, destino.toPath());
+
+			} catch (IOException e) {
+				manifesto.liberarConteudo(soma);
+				throw e;
+			}
+			manifesto.registrarSoma(destino, soma);
+			return soma;
+
+		} finally {
+			Files.deleteIfExists(temporario);
+		}
+	}
+
+	/**
+	 * Calcula a soma SHA-256 do conteúdo informado
+	 * @param conteudo conteúdo a ser lido até o fim. Não é fechado por este método
+	 * @return soma em hexadecimal
+	 * @throws IOException
+	 */
+	public String calcularSoma(InputStream conteudo) throws IOException {
+		MessageDigest digest = criarDigest();
+		byte[] buffer = new byte[TAMANHO_BUFFER_VERIFICACAO];
+		int lidos;
+		while ((lidos = conteudo.read(buffer)) >= 0) {
+			digest.update(buffer, 0, lidos);
+		}
+		return converterHexadecimal(digest.digest());
+	}
+
+	/**
+	 * Lê o conteúdo informado por inteiro em memória
+	 * @param conteudo conteúdo a ser lido. Não é fechado por este método
+	 * @return bytes lidos
+	 * @throws IOException
+	 */
+	public byte[] lerConteudo(InputStream conteudo) throws IOException {
+		ByteArrayOutputStream saida = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int lidos;
+		while ((lidos = conteudo.read(buffer)) >= 0) {
+			saida.write(buffer, 0, lidos);
+		}
+		return saida.toByteArray();
+	}
+
+	/**
+	 * Define a estratégia usada por {@link #copiarArquivo(File, File)}
+	 * @param estrategiaCopia estratégia de cópia
+	 */
+	public void setEstrategiaCopia(EstrategiaCopia estrategiaCopia) {
+		this.estrategiaCopia = estrategiaCopia;
+	}
+	
+	/**
+	 * Cria um link físico do arquivo de origem no destino, se a estratégia e os diretórios permitirem.
+	 * Diretórios em que o link não é possível são lembrados para não tentar novamente
+	 * @return <b>true</b> se o link foi criado
+	 * @throws IOException se o arquivo de destino já existir
+	 */
+	private boolean criarLink(File origem, File destino) throws IOException {
+		if (!isLinkPossivel(origem, destino)) {
+			return false;
+		}
+		try {
+			Files.createLink(destino.toPath(), origem.toPath());
+			return true;
+			
+		} catch (FileAlreadyExistsException e) {
+			throw e;
+			
+		} catch (UnsupportedOperationException | IOException e) {
+			// O sistema de arquivos ou o compartilhamento não permite links físicos entre estes diretórios
+			mapLinkPossivel.put(origem.getParent() + File.pathSeparator + destino.getParent(), Boolean.FALSE);
+			return false;
+		}
+	}
+	
+	/**
+	 * @return <b>true</b> se a estratégia e os diretórios permitem o link físico, ou se ainda não houve falha entre eles
+	 */
+	private boolean isLinkPossivel(File origem, File destino) throws IOException {
+		String parDiretorios = origem.getParent() + File.pathSeparator + destino.getParent();
+		Boolean linkPossivel = mapLinkPossivel.get(parDiretorios);
+		
+		if (linkPossivel == null) {
+			linkPossivel = estrategiaCopia == EstrategiaCopia.LINK
+					|| Files.getFileStore(origem.toPath()).equals(Files.getFileStore(destino.toPath().getParent()));
+			mapLinkPossivel.put(parDiretorios, linkPossivel);
+		}
+		return linkPossivel;
+	}
+	
+	static MessageDigest criarDigest() {
+		try {
+			return MessageDigest.getInstance(ALGORITMO_SOMA);
+			
+		} catch (NoSuchAlgorithmException e) {
+			// Toda implementação da plataforma Java suporta SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	static String converterHexadecimal(byte[] bytes) {
+		StringBuilder hexadecimal = new StringBuilder(bytes.length * 2);
+		for (byte valor : bytes) {
+			hexadecimal.append(Character.forDigit((valor >> 4) & 0xF, 16)).append(Character.forDigit(valor & 0xF, 16));
+		}
+		return hexadecimal.toString();
+	}
+	
+	/**
+	 * Transfere o conteúdo do arquivo entre canais, permitindo que o sistema operacional
+	 * copie os dados sem passá-los pelo heap
+	 */
+	private void transferirArquivo(Path origem, Path destino) throws IOException {
+		try (FileChannel canalOrigem = FileChannel.open(origem, StandardOpenOption.READ);
+				FileChannel canalDestino = FileChannel.open(destino, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			long tamanho = canalOrigem.size();
+			long posicao = 0;
+			
+			while (posicao < tamanho) {
+				posicao += canalOrigem.transferTo(posicao, tamanho - posicao, canalDestino);
+			}
+		}
+	}
+	
+	/**
+	 * Renomeia o arquivo temporário para o nome definitivo, atomicamente quando suportado
+	 */
+	private void moverArquivo(Path temporario, Path destino) throws IOException {
+		try {
+			Files.move(temporario, destino, StandardCopyOption.ATOMIC_MOVE);
+			
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temporario, destino);
+		}
+	}
+	
+	/**
+	 * Obtém o diretório em que o programa foi executado
+	 * @author Renan Baggio
+	 * @return Diretório onde o programa foi iniciado
+	 * @throws Exception
+	 */
+	public String getDiretorioExecucao() throws Exception {
+		String path = new File(ClassLoader.getSystemClassLoader().getResource(".").getPath()).getAbsolutePath();
+		return URLDecoder.decode(path, "UTF-8");
+	}
+	
+	/**
+	 * Valida se o diretório informado está preenchido, se existe e é uma pasta
+	 * @author Renan Baggio
+	 * @param folderPath caminho absoluto do diretório a verificar
+	 * @param propertyName nome da propriedade de onde foi obtido o diretório
+	 * @param configFileNameQuoted nome do arquivo de onde foi obtido o diretório
+	 * @return String vazia se estiver tudo ok
+	 */
+	public String validarDiretorioOrigem(String folderPath, String propertyName, String configFileNameQuoted) {
+		if (folderPath == null || folderPath.isEmpty()) {
+			return "Propriedade \"" + propertyName 
+					+ "\" não encontrada ou não devidamente preenchida no arquivo " + configFileNameQuoted
+					+ ". Informe o diretório de ORIGEM que será verificado em busca das NF-es do Transportador"
+					+ ". Ex.: F:\\Arquivos\\Notas Fiscais\\GM São Mateus" + System.lineSeparator();
+		
+		} else if (!new File(folderPath).exists()) {
+			return "O diretório de ORIGEM \"" + folderPath 
+					+ "\" não existe. Se o caminho estiver correto, crie o diretório e tente novamente" + System.lineSeparator();
+		
+		} else if (!new File(folderPath).isDirectory()) {
+			return "O diretório de ORIGEM \"" + folderPath 
+					+ "\" é um arquivo ao invés de uma pasta. Deve ser informado o caminho de uma pasta" + System.lineSeparator();
+		}
+		return STRING_VAZIA;
+	}
+	
+	/**
+	 * Valida se o diretório informado está preenchido, se existe e é uma pasta
+	 * @author Renan Baggio
+	 * @param folderPath caminho absoluto do diretório a verificar
+	 * @param propertyName nome da propriedade de onde foi obtido o diretório
+	 * @param configFileNameQuoted nome do arquivo de onde foi obtido o diretório
+	 * @return String vazia se estiver tudo ok
+	 */
+	public String validarDiretorioDestino(String folderPath, String propertyName, String configFileNameQuoted) {
+		if (folderPath == null || folderPath.isEmpty()) {
+			return "Propriedade \"" + propertyName 
+					+ "\" não encontrada ou não devidamente preenchida no arquivo " + configFileNameQuoted
+					+ ". Informe o diretório de DESTINO para onde serão copiados os XMLs de NF-es do Transportador"
+					+ ". Ex.: F:\\Arquivos\\Notas Fiscais\\Transportadora BR" + System.lineSeparator();
+		
+		} else if (!new File(folderPath).exists()) {
+			return "O diretório de DESTINO \"" + folderPath 
+					+ "\" não existe. Se o caminho estiver correto, crie o diretório e tente novamente" + System.lineSeparator();
+		
+		} else if (!new File(folderPath).isDirectory()) {
+			return "O diretório de DESTINO \"" + folderPath 
+					+ "\" é um arquivo ao invés de uma pasta. Deve ser informado o caminho de uma pasta" + System.lineSeparator();
+		}
+		return STRING_VAZIA;
+	}
+	
+	/**
+	 * Retorna o path completo do diretório para onde o arquivo será copiado
+	 * @author Renan Baggio
+	 * @param diretorioDestino Diretório de destino raiz
+	 * @return Path completo do diretório para onde o arquivo será copiado
+	 */
+	public String getDiretorioArquivoCopia(String diretorioDestino) {
+		Date dataAtual = new Date();
+		return diretorioDestino
+				+ File.separator + DATE_FORMAT_ONLY_YEAR.format(dataAtual)
+				+ File.separator + DATE_FORMAT_ONLY_MONTH.format(dataAtual)
+				+ File.separator + DATE_FORMAT_ONLY_DAY_OF_MONTH.format(dataAtual);
+	}
+	
+	/**
+	 * Retorna um objeto PropertiesConfiguration
+	 * @author Renan Baggio
+	 * @param fileName nome do arquivo properties
+	 * @return PropertiesConfiguration
+	 * @throws IOException
+	 */
+	public PropertiesConfiguration carregarProperties(String fileName) throws Exception {
+		File file = new File(getDiretorioExecucao() + File.separator + fileName);
+		
+		if (!file.exists()) {
+			throw new Exception("Arquivo de configuração \"" + fileName + "\" não encontrado");
+		}
+		PropertiesConfiguration properties = new PropertiesConfiguration(file);
+		return properties;
+	}
+	
+	/**
+	 * Atualiza o arquivo Properties informado
+	 * @author Renan Baggio
+	 * @param absolutePath caminho até o arquivo properties
+	 * @param properties objeto PropertiesConfiguration que será salvo
+	 * @throws IOException
+	 */
+	public void atualizarProperties(String absolutePath, PropertiesConfiguration properties) throws Exception {
+		properties.save();
+	}
 }
\ No newline at end of file
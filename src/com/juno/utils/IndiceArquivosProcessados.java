@@ -0,0 +1,392 @@
+package com.juno.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.juno.model.ChaveAcesso;
+import com.juno.model.SituacaoArquivo;
+
+/**
+ * Índice persistente dos arquivos de origem já avaliados, identificados pelo caminho,
+ * tamanho e data de modificação. Um arquivo cujo tamanho e data de modificação não
+ * mudaram desde a última avaliação não precisa ser lido novamente. O CNPJ do
+ * transportador localizado também é mantido, permitindo selecionar os arquivos
+ * de um transportador incluído na configuração sem lê-los outra vez.
+ * <br>
+ * O índice é gravado em disco como um log de registros binários, acrescentados a cada
+ * avaliação. Na carga, o último registro de cada caminho prevalece e o arquivo é
+ * reescrito quando a quantidade de registros obsoletos supera a de registros válidos.
+ * Os registros são sincronizados com o disco (fsync) em lotes, a cada
+ * {@link #QTDE_REGISTROS_POR_SINCRONIZACAO} registros e em {@link #gravar()}, de modo que uma
+ * interrupção do processo perde no máximo as avaliações do último lote.
+ * <br>
+ * As chaves de acesso dos arquivos copiados são mantidas em um conjunto compacto, para que
+ * a mesma NF-e, recebida com outro nome ou em outro diretório de origem, não seja copiada novamente.
+ * Os arquivos compactados já processados são registrados com a assinatura do seu conteúdo, para que
+ * o mesmo arquivo, recebido novamente, não seja processado outra vez
+ */
+public class IndiceArquivosProcessados implements Closeable {
+
+	private static final int IDENTIFICADOR_ARQUIVO = 0x4E464549; // "NFEI"
+	private static final int VERSAO_ARQUIVO = 4;
+	private static final int VERSAO_ARQUIVO_SEM_ASSINATURA = 3;
+	private static final int VERSAO_ARQUIVO_SEM_CHAVE = 2;
+	private static final String ASSINATURA_AUSENTE = "";
+	private static final long CHAVE_AUSENTE = -1;
+	public static final int QTDE_REGISTROS_POR_SINCRONIZACAO = 512;
+
+	private final File arquivoIndice;
+	private final ConcurrentHashMap<String, Registro> registros = new ConcurrentHashMap<>();
+	private final ConjuntoChavesAcesso chavesCopiadas = new ConjuntoChavesAcesso();
+	private final Set<String> assinaturasProcessadas = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private FileOutputStream saidaArquivo;
+	private DataOutputStream saida;
+	private int qtdeRegistrosGravados;
+	private int qtdeRegistrosPendentes;
+
+	private IndiceArquivosProcessados(File arquivoIndice) {
+		this.arquivoIndice = arquivoIndice;
+	}
+
+	/**
+	 * Carrega o índice do arquivo informado, criando-o se ainda não existir
+	 * @param arquivoIndice arquivo onde o índice é mantido
+	 * @return índice carregado
+	 * @throws IOException
+	 */
+	public static IndiceArquivosProcessados carregar(File arquivoIndice) throws IOException {
+		IndiceArquivosProcessados indice = new IndiceArquivosProcessados(arquivoIndice);
+		boolean integro = arquivoIndice.exists() && indice.lerRegistros();
+
+		for (Registro registro : indice.registros.values()) {
+			if (registro.situacao == SituacaoArquivo.COPIADO && registro.chaveAcesso != null) {
+				indice.chavesCopiadas.adicionar(registro.chaveAcesso);
+
+			} else if (registro.situacao == SituacaoArquivo.PROCESSADO && registro.assinatura != null) {
+				indice.assinaturasProcessadas.add(registro.assinatura);
+			}
+		}
+
+		if (!integro || indice.qtdeRegistrosGravados > indice.registros.size() * 2) {
+			indice.reescrever();
+		} else {
+			indice.abrirSaida();
+		}
+		return indice;
+	}
+
+	/**
+	 * Consulta a situação de um arquivo já avaliado
+	 * @param caminho caminho absoluto do arquivo
+	 * @param tamanho tamanho atual do arquivo
+	 * @param dataModificacao data de modificação atual do arquivo
+	 * @return registro da avaliação ou <b>null</b> se o arquivo ainda não foi avaliado ou foi alterado desde então
+	 */
+	public Registro consultar(String caminho, long tamanho, long dataModificacao) {
+		Registro registro = registros.get(caminho);
+
+		if (registro == null || registro.tamanho != tamanho || registro.dataModificacao != dataModificacao) {
+			return null;
+		}
+		return registro;
+	}
+
+	/**
+	 * @return registros de todos os arquivos avaliados, pelo caminho absoluto, sem permitir alterações
+	 */
+	public Map<String, Registro> getRegistros() {
+		return Collections.unmodifiableMap(registros);
+	}
+
+	/**
+	 * Registra a situação de um arquivo avaliado
+	 * @param caminho caminho absoluto do arquivo
+	 * @param tamanho tamanho do arquivo no momento da avaliação
+	 * @param dataModificacao data de modificação do arquivo no momento da avaliação
+	 * @param cnpjTransportador chave numérica do CNPJ do transportador localizado no arquivo
+	 * @param chaveAcesso chave de acesso localizada no arquivo ou <b>null</b> se não encontrada
+	 * @param situacao situação do arquivo
+	 * @throws IOException
+	 */
+	public synchronized void registrar(String caminho, long tamanho, long dataModificacao, long cnpjTransportador,
+			ChaveAcesso chaveAcesso, SituacaoArquivo situacao) throws IOException {
+		registrar(caminho, new Registro(tamanho, dataModificacao, cnpjTransportador, chaveAcesso, null, situacao));
+
+		if (situacao == SituacaoArquivo.COPIADO && chaveAcesso != null) {
+			chavesCopiadas.adicionar(chaveAcesso);
+		}
+	}
+
+	/**
+	 * Registra um arquivo compactado {@link SituacaoArquivo#PROCESSADO}, cujas entradas foram todas avaliadas
+	 * @param caminho caminho absoluto do arquivo
+	 * @param tamanho tamanho do arquivo no momento da avaliação
+	 * @param dataModificacao data de modificação do arquivo no momento da avaliação
+	 * @param assinatura assinatura do conteúdo do arquivo (ver {@link ArquivoCompactado#getAssinatura()})
+	 * @throws IOException
+	 */
+	public synchronized void registrarCompactado(String caminho, long tamanho, long dataModificacao, String assinatura)
+			throws IOException {
+		registrar(caminho, new Registro(tamanho, dataModificacao, LocalizadorCnpjTransportador.CNPJ_NAO_ENCONTRADO, null, assinatura,
+				SituacaoArquivo.PROCESSADO));
+		assinaturasProcessadas.add(assinatura);
+	}
+
+	private void registrar(String caminho, Registro registro) throws IOException {
+		registros.put(caminho, registro);
+		escreverRegistro(saida, caminho, registro);
+
+		if (++qtdeRegistrosPendentes >= QTDE_REGISTROS_POR_SINCRONIZACAO) {
+			gravar();
+		}
+	}
+
+	/**
+	 * @param assinatura assinatura do conteúdo de um arquivo compactado (ver {@link ArquivoCompactado#getAssinatura()})
+	 * @return <b>true</b> se um arquivo compactado com o mesmo conteúdo já foi processado
+	 */
+	public boolean isCompactadoProcessado(String assinatura) {
+		return assinaturasProcessadas.contains(assinatura);
+	}
+
+	/**
+	 * @param chaveAcesso chave de acesso
+	 * @return <b>true</b> se um arquivo com esta chave de acesso já foi copiado ou está sendo copiado
+	 */
+	public boolean isChaveCopiada(ChaveAcesso chaveAcesso) {
+		return chavesCopiadas.contem(chaveAcesso);
+	}
+
+	/**
+	 * Reserva a chave de acesso antes da cópia, impedindo que outro arquivo da mesma NF-e seja copiado
+	 * @param chaveAcesso chave de acesso
+	 * @return <b>false</b> se a chave já foi copiada ou reservada
+	 */
+	public boolean reservarChave(ChaveAcesso chaveAcesso) {
+		return chavesCopiadas.adicionar(chaveAcesso);
+	}
+
+	/**
+	 * Libera a chave de acesso reservada de um arquivo cuja cópia falhou
+	 * @param chaveAcesso chave de acesso
+	 */
+	public void liberarChave(ChaveAcesso chaveAcesso) {
+		chavesCopiadas.remover(chaveAcesso);
+	}
+
+	/**
+	 * Remove do índice os arquivos modificados antes da data informada, pois
+	 * estes não serão mais listados, e reescreve o arquivo se necessário
+	 * @param dataMinima data de modificação mínima dos arquivos mantidos
+	 * @throws IOException
+	 */
+	public synchronized void descartarAnteriores(long dataMinima) throws IOException {
+		Iterator<Entry<String, Registro>> iterator = registros.entrySet().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().getValue().dataModificacao < dataMinima) {
+				iterator.remove();
+			}
+		}
+		if (qtdeRegistrosGravados > registros.size() * 2) {
+			saida.close();
+			reescrever();
+		}
+	}
+
+	/**
+	 * Grava em disco os registros pendentes, aguardando a sincronização com o dispositivo
+	 * @throws IOException
+	 */
+	public synchronized void gravar() throws IOException {
+		saida.flush();
+		if (qtdeRegistrosPendentes > 0) {
+			saidaArquivo.getFD().sync();
+			qtdeRegistrosPendentes = 0;
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		gravar();
+		saida.close();
+	}
+
+	/**
+	 * Lê os registros do arquivo. Um registro incompleto no final do arquivo,
+	 * causado por uma interrupção durante a gravação, é ignorado
+	 * @return <b>false</b> se o arquivo estiver inválido, com registro incompleto ou em uma versão anterior e precisar ser reescrito
+	 * @throws IOException
+	 */
+	private boolean lerRegistros() throws IOException {
+		try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(new FileInputStream(arquivoIndice)))) {
+			int versao = entrada.readInt() == IDENTIFICADOR_ARQUIVO ? entrada.readInt() : -1;
+
+			if (versao != VERSAO_ARQUIVO && versao != VERSAO_ARQUIVO_SEM_ASSINATURA && versao != VERSAO_ARQUIVO_SEM_CHAVE) {
+				System.err.println("Índice de arquivos processados \"" + arquivoIndice.getName() + "\" inválido. Um novo índice será criado");
+				return false;
+			}
+			SituacaoArquivo[] situacoes = SituacaoArquivo.values();
+			int situacao;
+
+			while ((situacao = entrada.read()) >= 0) {
+				if (situacao >= situacoes.length) {
+					return false;
+				}
+				String caminho = entrada.readUTF();
+				long tamanho = entrada.readLong();
+				long dataModificacao = entrada.readLong();
+				long cnpjTransportador = entrada.readLong();
+				ChaveAcesso chaveAcesso = null;
+				String assinatura = null;
+
+				if (versao != VERSAO_ARQUIVO_SEM_CHAVE) {
+					long parte1 = entrada.readLong();
+					long parte2 = entrada.readLong();
+					long parte3 = entrada.readLong();
+
+					if (parte1 != CHAVE_AUSENTE) {
+						chaveAcesso = new ChaveAcesso(parte1, parte2, parte3);
+					}
+				}
+				if (versao == VERSAO_ARQUIVO) {
+					assinatura = entrada.readUTF();
+					if (assinatura.equals(ASSINATURA_AUSENTE)) {
+						assinatura = null;
+					}
+				} else if (situacoes[situacao] == SituacaoArquivo.PROCESSADO) {
+					// As versões anteriores registravam uma assinatura de 64 bits no lugar do CNPJ, que é descartada
+					cnpjTransportador = LocalizadorCnpjTransportador.CNPJ_NAO_ENCONTRADO;
+				}
+				registros.put(caminho, new Registro(tamanho, dataModificacao, cnpjTransportador, chaveAcesso, assinatura, situacoes[situacao]));
+				qtdeRegistrosGravados++;
+			}
+			// Um índice da versão anterior é reescrito na versão atual
+			return versao == VERSAO_ARQUIVO;
+
+		} catch (EOFException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Reescreve o arquivo somente com os registros válidos, substituindo o anterior
+	 * @throws IOException
+	 */
+	private void reescrever() throws IOException {
+		File arquivoTemporario = new File(arquivoIndice.getPath() + ".tmp");
+
+		try (FileOutputStream saidaTemporaria = new FileOutputStream(arquivoTemporario)) {
+			DataOutputStream novaSaida = new DataOutputStream(new BufferedOutputStream(saidaTemporaria));
+			novaSaida.writeInt(IDENTIFICADOR_ARQUIVO);
+			novaSaida.writeInt(VERSAO_ARQUIVO);
+			qtdeRegistrosGravados = 0;
+
+			for (Entry<String, Registro> entry : registros.entrySet()) {
+				escreverRegistro(novaSaida, entry.getKey(), entry.getValue());
+			}
+			novaSaida.flush();
+			saidaTemporaria.getFD().sync();
+		}
+		Files.move(arquivoTemporario.toPath(), arquivoIndice.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		abrirSaida();
+	}
+
+	private void abrirSaida() throws IOException {
+		saidaArquivo = new FileOutputStream(arquivoIndice, true);
+		saida = new DataOutputStream(new BufferedOutputStream(saidaArquivo));
+		qtdeRegistrosPendentes = 0;
+	}
+
+	private void escreverRegistro(DataOutputStream dataOutputStream, String caminho, Registro registro) throws IOException {
+		dataOutputStream.writeByte(registro.situacao.ordinal());
+		dataOutputStream.writeUTF(caminho);
+		dataOutputStream.writeLong(registro.tamanho);
+		dataOutputStream.writeLong(registro.dataModificacao);
+		dataOutputStream.writeLong(registro.cnpjTransportador);
+		dataOutputStream.writeLong(registro.chaveAcesso != null ? registro.chaveAcesso.getParte1() : CHAVE_AUSENTE);
+		dataOutputStream.writeLong(registro.chaveAcesso != null ? registro.chaveAcesso.getParte2() : CHAVE_AUSENTE);
+		dataOutputStream.writeLong(registro.chaveAcesso != null ? registro.chaveAcesso.getParte3() : CHAVE_AUSENTE);
+		dataOutputStream.writeUTF(registro.assinatura != null ? registro.assinatura : ASSINATURA_AUSENTE);
+		qtdeRegistrosGravados++;
+	}
+
+	/**
+	 * Situação de um arquivo no momento em que foi avaliado
+	 */
+	public static class Registro {
+		private final long tamanho;
+		private final long dataModificacao;
+		private final long cnpjTransportador;
+		private final ChaveAcesso chaveAcesso;
+		private final String assinatura;
+		private final SituacaoArquivo situacao;
+
+		private Registro(long tamanho, long dataModificacao, long cnpjTransportador, ChaveAcesso chaveAcesso, String assinatura,
+				SituacaoArquivo situacao) {
+			this.tamanho = tamanho;
+			this.dataModificacao = dataModificacao;
+			this.cnpjTransportador = cnpjTransportador;
+			this.chaveAcesso = chaveAcesso;
+			this.assinatura = assinatura;
+			this.situacao = situacao;
+		}
+
+		/**
+		 * @return tamanho do arquivo no momento da avaliação
+		 */
+		public long getTamanho() {
+			return tamanho;
+		}
+
+		/**
+		 * @return data de modificação do arquivo no momento da avaliação
+		 */
+		public long getDataModificacao() {
+			return dataModificacao;
+		}
+
+		/**
+		 * @return chave numérica do CNPJ do transportador localizado no arquivo
+		 */
+		public long getCnpjTransportador() {
+			return cnpjTransportador;
+		}
+
+		/**
+		 * @return chave de acesso localizada no arquivo ou <b>null</b> se não encontrada
+		 */
+		public ChaveAcesso getChaveAcesso() {
+			return chaveAcesso;
+		}
+
+		/**
+		 * @return assinatura do conteúdo de um arquivo compactado {@link SituacaoArquivo#PROCESSADO} ou <b>null</b>
+		 */
+		public String getAssinatura() {
+			return assinatura;
+		}
+
+		/**
+		 * @return situação do arquivo
+		 */
+		public SituacaoArquivo getSituacao() {
+			return situacao;
+		}
+	}
+}
@@ -0,0 +1,557 @@
+package com.juno.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+import com.juno.model.ChaveAcesso;
+
+/**
+ * Localiza o CNPJ (ou CPF) do transportador em um XML de NF-e lendo os bytes do arquivo
+ * a partir de um buffer reutilizável, sem decodificar o conteúdo para String e sem montar
+ * a árvore do documento. Um tokenizador de tags, somente para frente, acompanha o caminho
+ * infNFe/transp/transporta e tolera espaços, tabulações e quebras de linha entre as tags,
+ * atributos e prefixos de namespace (ex.: &lt;nfe:transporta&gt;). O conteúdo dos itens (&lt;det&gt;)
+ * é percorrido somente à procura do fechamento da tag, sem interpretar as tags internas.
+ * Na mesma passagem é localizada a chave de acesso, declarada no atributo Id da tag infNFe.
+ * A leitura é interrompida assim que o transportador é decidido, de modo
+ * que o volume lido de cada arquivo depende da posição do bloco &lt;transporta&gt;
+ * e não do tamanho do arquivo. O documento pode ser consumido em trechos de buffers
+ * diretos, sem alocações por arquivo.
+ * <br>
+ * Instâncias desta classe <b>não</b> são thread-safe, pois os buffers são reaproveitados entre as leituras
+ */
+public class LocalizadorCnpjTransportador implements ConsumidorConteudo {
+
+	/**
+	 * Valor retornado quando o XML não declara um CNPJ de transportador válido
+	 */
+	public static final long CNPJ_NAO_ENCONTRADO = -1;
+
+	private static final int TAMANHO_BUFFER = 8192;
+	private static final int TAMANHO_BUFFER_DIRETO = 65536;
+	private static final int TAMANHO_MAXIMO_CNPJ = 14;
+	private static final int TAMANHO_MAXIMO_NOME_TAG = 16;
+	private static final byte[] MARCADOR_CHAVE = "Id=\"NFe".getBytes(StandardCharsets.US_ASCII);
+	private static final int[] FALHAS_MARCADOR_CHAVE = calcularTabelaFalhas(MARCADOR_CHAVE);
+
+	// Tags reconhecidas, comparadas pelo nome local (sem o prefixo de namespace)
+	private static final int TAG_OUTRA = 0;
+	private static final int TAG_INF_NFE = 1;
+	private static final int TAG_TRANSP = 2;
+	private static final int TAG_TRANSPORTA = 3;
+	private static final int TAG_CNPJ = 4;
+	private static final int TAG_CPF = 5;
+	private static final int TAG_DET = 6;
+	private static final byte[][] NOMES_TAGS = { null, bytes("infNFe"), bytes("transp"), bytes("transporta"), bytes("CNPJ"),
+			bytes("CPF"), bytes("det") };
+
+	// Estados do tokenizador
+	private static final int ESTADO_TEXTO = 0;
+	private static final int ESTADO_INICIO_TAG = 1;
+	private static final int ESTADO_NOME_TAG = 2;
+	private static final int ESTADO_ATRIBUTOS = 3;
+	private static final int ESTADO_DECLARACAO = 4; // <!...>, <?...?>
+	private static final int ESTADO_COMENTARIO = 5; // <!-- ... -->
+
+	private final byte[] buffer = new byte[TAMANHO_BUFFER];
+	private final ByteBuffer bufferInputStream = ByteBuffer.wrap(buffer);
+	private final byte[] cnpjLocalizado = new byte[TAMANHO_MAXIMO_CNPJ];
+	private final byte[] chaveLocalizada = new byte[ChaveAcesso.TAMANHO];
+	private final byte[] nomeTag = new byte[TAMANHO_MAXIMO_NOME_TAG];
+	private ByteBuffer bufferDireto;
+
+	// Estado do tokenizador no documento atual
+	private int estado;
+	private int tamanhoNomeTag; // maior que TAMANHO_MAXIMO_NOME_TAG se o nome não for de uma tag reconhecida
+	private int tagAtual;
+	private boolean fechamento;
+	private byte aspas; // delimitador do valor de atributo em leitura, 0 fora de um valor
+	private byte ultimoByteTag;
+	private int posicaoDeclaracao;
+
+	// Estado da busca no documento atual
+	private boolean dentroInfNFe;
+	private boolean dentroTransp;
+	private boolean dentroTransporta;
+	private boolean dentroDet;
+	private boolean lendoValor;
+	private int tamanhoCnpjLocalizado;
+	private boolean decidido;
+	private boolean encontrado;
+	private long bytesLidos;
+	private int posicaoMarcadorChave;
+	private int tamanhoChaveLocalizada;
+	private boolean chaveEncontrada;
+
+	/**
+	 * Localiza o CNPJ do transportador declarado no XML
+	 * @param inputStream do arquivo XML. Não é fechado por este método
+	 * @return chave numérica do CNPJ (ver {@link #converterCnpj(String)}) ou
+	 * {@link #CNPJ_NAO_ENCONTRADO} se o XML não declarar um CNPJ de transportador válido
+	 * @throws IOException
+	 */
+	public long localizarCnpjTransportador(InputStream inputStream) throws IOException {
+		iniciar();
+
+		int lidos;
+		while ((lidos = inputStream.read(buffer)) >= 0) {
+			bufferInputStream.limit(lidos).position(0);
+
+			if (consumir(bufferInputStream)) {
+				break;
+			}
+		}
+		return getCnpjTransportador();
+	}
+
+	/**
+	 * Localiza o CNPJ do transportador declarado no arquivo XML, lido através de
+	 * {@link FileUtils#lerConteudoArquivo(File, ByteBuffer, ConsumidorConteudo)}
+	 * com um buffer direto reaproveitado entre as leituras
+	 * @param arquivo arquivo XML
+	 * @param fileUtils utilitário usado na leitura
+	 * @return chave numérica do CNPJ (ver {@link #converterCnpj(String)}) ou
+	 * {@link #CNPJ_NAO_ENCONTRADO} se o XML não declarar um CNPJ de transportador válido
+	 * @throws IOException
+	 */
+	public long localizarCnpjTransportador(File arquivo, FileUtils fileUtils) throws IOException {
+		if (bufferDireto == null) {
+			bufferDireto = ByteBuffer.allocateDirect(TAMANHO_BUFFER_DIRETO);
+		}
+		iniciar();
+		fileUtils.lerConteudoArquivo(arquivo, bufferDireto, this);
+		return getCnpjTransportador();
+	}
+
+	/**
+	 * Localiza o CNPJ do transportador como em {@link #localizarCnpjTransportador(File, FileUtils)} e, na mesma
+	 * leitura, calcula a soma do conteúdo. Os arquivos cujo transportador está entre os CNPJs informados são lidos
+	 * até o fim; a leitura dos demais é interrompida assim que o transportador é decidido
+	 * @param arquivo arquivo XML
+	 * @param fileUtils utilitário usado na leitura
+	 * @param soma soma iniciada por este método, completa somente se o arquivo foi lido até o fim
+	 * @param cnpjsSomados chaves numéricas dos CNPJs cujos arquivos são lidos até o fim
+	 * @return chave numérica do CNPJ (ver {@link #converterCnpj(String)}) ou
+	 * {@link #CNPJ_NAO_ENCONTRADO} se o XML não declarar um CNPJ de transportador válido
+	 * @throws IOException
+	 */
+	public long localizarCnpjTransportador(File arquivo, FileUtils fileUtils, final SomaConteudo soma, final Set<Long> cnpjsSomados)
+			throws IOException {
+		if (bufferDireto == null) {
+			bufferDireto = ByteBuffer.allocateDirect(TAMANHO_BUFFER_DIRETO);
+		}
+		iniciar();
+		soma.iniciar();
+		fileUtils.lerConteudoArquivo(arquivo, bufferDireto, new ConsumidorConteudo() {
+			@Override
+			public boolean consumir(ByteBuffer conteudo) {
+				if (!decidido) {
+					LocalizadorCnpjTransportador.this.consumir(conteudo);
+				}
+				if (decidido && !cnpjsSomados.contains(getCnpjTransportador())) {
+					return true;
+				}
+				return soma.consumir(conteudo);
+			}
+		});
+		return getCnpjTransportador();
+	}
+
+	/**
+	 * Prepara o localizador para um novo documento
+	 */
+	public void iniciar() {
+		estado = ESTADO_TEXTO;
+		tamanhoNomeTag = 0;
+		tagAtual = TAG_OUTRA;
+		fechamento = false;
+		aspas = 0;
+		ultimoByteTag = 0;
+		posicaoDeclaracao = 0;
+		dentroInfNFe = false;
+		dentroTransp = false;
+		dentroTransporta = false;
+		dentroDet = false;
+		lendoValor = false;
+		tamanhoCnpjLocalizado = 0;
+		decidido = false;
+		encontrado = false;
+		bytesLidos = 0;
+		posicaoMarcadorChave = 0;
+		tamanhoChaveLocalizada = 0;
+		chaveEncontrada = false;
+	}
+
+	/**
+	 * Percorre o trecho seguinte do documento à procura do conteúdo da primeira tag CNPJ ou CPF
+	 * dentro de infNFe/transp/transporta. Espaços e quebras de linha ao redor do valor são ignorados
+	 * @param conteudo trecho do documento, da posição até o limite. A posição não é alterada
+	 * @return <b>true</b> se o CNPJ do transportador já foi decidido e a leitura pode ser interrompida
+	 */
+	@Override
+	public boolean consumir(ByteBuffer conteudo) {
+		if (conteudo.hasArray()) {
+			int inicio = conteudo.arrayOffset() + conteudo.position();
+			return consumir(conteudo.array(), inicio, inicio + conteudo.remaining());
+		}
+		// Buffers diretos são percorridos em blocos copiados para o buffer do heap,
+		// evitando o acesso byte a byte fora do heap
+		int posicaoOriginal = conteudo.position();
+		while (conteudo.hasRemaining() && !decidido) {
+			int tamanhoBloco = Math.min(buffer.length, conteudo.remaining());
+			conteudo.get(buffer, 0, tamanhoBloco);
+			consumir(buffer, 0, tamanhoBloco);
+		}
+		conteudo.position(posicaoOriginal);
+		return decidido;
+	}
+
+	/**
+	 * Percorre o trecho do array informado
+	 * @return <b>true</b> se o CNPJ do transportador já foi decidido
+	 */
+	private boolean consumir(byte[] conteudo, int inicio, int fim) {
+		int i = inicio;
+		leitura:
+		for (; i < fim && !decidido; i++) {
+			byte b = conteudo[i];
+
+			switch (estado) {
+			case ESTADO_TEXTO:
+				if (!lendoValor) {
+					// Conteúdo fora de uma tag: avança diretamente até a próxima tag
+					while (b != '<') {
+						if (++i == fim) {
+							break leitura;
+						}
+						b = conteudo[i];
+					}
+					estado = ESTADO_INICIO_TAG;
+
+				} else if (b == '<') {
+					finalizarValor();
+					estado = ESTADO_INICIO_TAG;
+
+				} else {
+					consumirValor(b);
+				}
+				break;
+
+			case ESTADO_INICIO_TAG:
+				if (b == '/') {
+					fechamento = true;
+					tamanhoNomeTag = 0;
+					estado = ESTADO_NOME_TAG;
+
+				} else if (b == '!' || b == '?') {
+					// Comentário, CDATA, DOCTYPE ou instrução de processamento
+					posicaoDeclaracao = b == '!' ? 0 : 2;
+					estado = ESTADO_DECLARACAO;
+
+				} else if (dentroDet) {
+					// Dentro de um item somente o fechamento do item interessa
+					estado = ESTADO_TEXTO;
+
+				} else {
+					fechamento = false;
+					tamanhoNomeTag = 0;
+					acumularNomeTag(b);
+					estado = ESTADO_NOME_TAG;
+				}
+				break;
+
+			case ESTADO_NOME_TAG:
+				// Acumula o nome até o primeiro delimitador sem voltar ao início do laço a cada byte
+				while (b != '>' && b != ':' && b != '/' && !isEspaco(b)) {
+					acumularNomeTag(b);
+					if (++i == fim) {
+						break leitura;
+					}
+					b = conteudo[i];
+				}
+				if (b == '>') {
+					identificarTag();
+					finalizarTag(false);
+					estado = ESTADO_TEXTO;
+
+				} else if (b == ':') {
+					// Prefixo de namespace: somente o nome local é comparado
+					tamanhoNomeTag = 0;
+
+				} else {
+					identificarTag();
+					ultimoByteTag = b;
+					aspas = 0;
+					estado = ESTADO_ATRIBUTOS;
+				}
+				break;
+
+			case ESTADO_ATRIBUTOS:
+				if (tagAtual == TAG_INF_NFE && !fechamento && !chaveEncontrada) {
+					consumirChave(b);
+				}
+				if (aspas != 0) {
+					if (b == aspas) {
+						aspas = 0;
+						ultimoByteTag = b;
+					}
+				} else if (b == '>') {
+					finalizarTag(ultimoByteTag == '/');
+					estado = ESTADO_TEXTO;
+
+				} else if (!isEspaco(b)) {
+					if (b == '"' || b == '\'') {
+						aspas = b;
+					}
+					ultimoByteTag = b;
+				}
+				break;
+
+			case ESTADO_DECLARACAO:
+				if (posicaoDeclaracao < 2 && b == '-') {
+					if (++posicaoDeclaracao == 2) {
+						posicaoDeclaracao = 0;
+						estado = ESTADO_COMENTARIO;
+					}
+				} else {
+					posicaoDeclaracao = 2;
+					if (b == '>') {
+						estado = ESTADO_TEXTO;
+					}
+				}
+				break;
+
+			default:
+				// Comentário: termina no primeiro "-->"
+				if (b == '-') {
+					posicaoDeclaracao++;
+
+				} else {
+					if (b == '>' && posicaoDeclaracao >= 2) {
+						estado = ESTADO_TEXTO;
+					}
+					posicaoDeclaracao = 0;
+				}
+				break;
+			}
+		}
+		bytesLidos += i - inicio;
+		return decidido;
+	}
+
+	private void acumularNomeTag(byte b) {
+		if (tamanhoNomeTag < TAMANHO_MAXIMO_NOME_TAG) {
+			nomeTag[tamanhoNomeTag] = b;
+		}
+		tamanhoNomeTag++;
+	}
+
+	/**
+	 * Compara o nome local da tag lida com as tags reconhecidas
+	 */
+	private void identificarTag() {
+		tagAtual = TAG_OUTRA;
+
+		for (int tag = TAG_INF_NFE; tag < NOMES_TAGS.length; tag++) {
+			byte[] nome = NOMES_TAGS[tag];
+
+			if (nome.length == tamanhoNomeTag) {
+				int i = 0;
+				while (i < tamanhoNomeTag && nome[i] == nomeTag[i]) {
+					i++;
+				}
+				if (i == tamanhoNomeTag) {
+					tagAtual = tag;
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Atualiza a posição no caminho infNFe/transp/transporta ao final de uma tag
+	 * @param vazia <b>true</b> se a tag for de um elemento vazio (&lt;tag/&gt;)
+	 */
+	private void finalizarTag(boolean vazia) {
+		if (fechamento) {
+			switch (tagAtual) {
+			case TAG_DET:
+				dentroDet = false;
+				break;
+			// O bloco terminou sem declarar o CNPJ ou CPF do transportador
+			case TAG_TRANSPORTA:
+				decidido = dentroTransporta;
+				break;
+			case TAG_TRANSP:
+				decidido = dentroTransp;
+				break;
+			case TAG_INF_NFE:
+				decidido = dentroInfNFe;
+				break;
+			default:
+				break;
+			}
+			return;
+		}
+		if (vazia) {
+			return;
+		}
+		switch (tagAtual) {
+		case TAG_INF_NFE:
+			dentroInfNFe = true;
+			break;
+		case TAG_TRANSP:
+			dentroTransp = dentroInfNFe;
+			break;
+		case TAG_TRANSPORTA:
+			dentroTransporta = dentroTransp;
+			break;
+		case TAG_CNPJ:
+		case TAG_CPF:
+			lendoValor = dentroTransporta;
+			break;
+		case TAG_DET:
+			dentroDet = dentroInfNFe && !dentroTransp;
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Acumula um byte do conteúdo da tag CNPJ ou CPF do transportador
+	 */
+	private void consumirValor(byte b) {
+		if (isEspaco(b)) {
+			return;
+		}
+		if (b < '0' || b > '9' || tamanhoCnpjLocalizado == TAMANHO_MAXIMO_CNPJ) {
+			// Conteúdo inválido: o transportador não declara um CNPJ válido
+			decidido = true;
+			return;
+		}
+		cnpjLocalizado[tamanhoCnpjLocalizado++] = b;
+	}
+
+	private void finalizarValor() {
+		lendoValor = false;
+		decidido = true;
+		encontrado = tamanhoCnpjLocalizado > 0;
+	}
+
+	private static boolean isEspaco(byte b) {
+		return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+	}
+
+	/**
+	 * Procura pelo atributo Id="NFe<44 dígitos>" nos atributos da tag infNFe
+	 * @param b byte seguinte da tag
+	 */
+	private void consumirChave(byte b) {
+		if (posicaoMarcadorChave < MARCADOR_CHAVE.length) {
+			while (posicaoMarcadorChave > 0 && MARCADOR_CHAVE[posicaoMarcadorChave] != b) {
+				posicaoMarcadorChave = FALHAS_MARCADOR_CHAVE[posicaoMarcadorChave - 1];
+			}
+			if (MARCADOR_CHAVE[posicaoMarcadorChave] == b) {
+				posicaoMarcadorChave++;
+			}
+		} else if (b >= '0' && b <= '9' && tamanhoChaveLocalizada < ChaveAcesso.TAMANHO) {
+			chaveLocalizada[tamanhoChaveLocalizada++] = b;
+
+		} else if (b == '"' && tamanhoChaveLocalizada == ChaveAcesso.TAMANHO) {
+			chaveEncontrada = true;
+
+		} else {
+			// Não é uma chave de acesso válida: procura pela próxima ocorrência
+			posicaoMarcadorChave = 0;
+			tamanhoChaveLocalizada = 0;
+		}
+	}
+
+	/**
+	 * @return chave de acesso declarada no documento consumido ou <b>null</b> se não foi encontrada
+	 */
+	public ChaveAcesso getChaveAcesso() {
+		return chaveEncontrada ? ChaveAcesso.converter(chaveLocalizada, 0) : null;
+	}
+
+	/**
+	 * @return quantidade de bytes percorridos no documento consumido até a decisão do CNPJ
+	 */
+	public long getBytesLidos() {
+		return bytesLidos;
+	}
+
+	/**
+	 * @return chave numérica do CNPJ localizado no documento consumido ou {@link #CNPJ_NAO_ENCONTRADO}
+	 */
+	public long getCnpjTransportador() {
+		if (!encontrado) {
+			return CNPJ_NAO_ENCONTRADO;
+		}
+		long cnpj = 0;
+
+		for (int i = 0; i < tamanhoCnpjLocalizado; i++) {
+			byte digito = cnpjLocalizado[i];
+
+			if (digito < '0' || digito > '9') {
+				return CNPJ_NAO_ENCONTRADO;
+			}
+			cnpj = cnpj * 10 + (digito - '0');
+		}
+		return cnpj * 100 + tamanhoCnpjLocalizado;
+	}
+
+	/**
+	 * Converte o CNPJ (ou CPF) informado para a chave numérica usada na comparação com o CNPJ localizado
+	 * nos XMLs. A quantidade de dígitos faz parte da chave, preservando os zeros à esquerda e
+	 * distinguindo um CNPJ de um CPF
+	 * @param cnpj somente números
+	 * @return chave numérica do CNPJ ou {@link #CNPJ_NAO_ENCONTRADO} se o valor não for um CNPJ válido
+	 */
+	public static long converterCnpj(String cnpj) {
+		if (cnpj == null || cnpj.isEmpty() || cnpj.length() > TAMANHO_MAXIMO_CNPJ) {
+			return CNPJ_NAO_ENCONTRADO;
+		}
+		long valor = 0;
+
+		for (int i = 0; i < cnpj.length(); i++) {
+			char digito = cnpj.charAt(i);
+
+			if (digito < '0' || digito > '9') {
+				return CNPJ_NAO_ENCONTRADO;
+			}
+			valor = valor * 10 + (digito - '0');
+		}
+		return valor * 100 + cnpj.length();
+	}
+
+	private static byte[] bytes(String texto) {
+		return texto.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Calcula a tabela de falhas (Knuth-Morris-Pratt) usada na busca do marcador
+	 * @param marcador sequência de bytes buscada
+	 * @return tabela com o tamanho do maior prefixo que também é sufixo de cada posição
+	 */
+	private static int[] calcularTabelaFalhas(byte[] marcador) {
+		int[] falhas = new int[marcador.length];
+		int k = 0;
+
+		for (int i = 1; i < marcador.length; i++) {
+			while (k > 0 && marcador[k] != marcador[i]) {
+				k = falhas[k - 1];
+			}
+			if (marcador[k] == marcador[i]) {
+				k++;
+			}
+			falhas[i] = k;
+		}
+		return falhas;
+	}
+}
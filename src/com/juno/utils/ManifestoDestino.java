@@ -0,0 +1,222 @@
+package com.juno.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Nomes dos arquivos já entregues em um diretório de destino, em todas as suas subpastas
+ * de ano, mês e dia. O diretório é percorrido uma única vez, na primeira busca, e o manifesto
+ * é atualizado a cada cópia, de modo que a verificação de um arquivo já entregue não acessa
+ * o disco e considera também as entregas feitas em outros dias.
+ * <br>
+ * Quando as cópias são verificadas, a soma SHA-256 de cada arquivo entregue é registrada no arquivo
+ * {@value #NOME_ARQUIVO_SOMAS} da pasta do dia, no formato do <i>sha256sum</i>, e as somas de todas as
+ * pastas são carregadas com o manifesto para que um mesmo conteúdo não seja entregue com outro nome.
+ * <br>
+ * Os manifestos são mantidos enquanto o programa estiver em execução, um por diretório de destino, e
+ * podem ser recarregados entre as buscas para considerar os arquivos entregues por outros processos
+ */
+public class ManifestoDestino {
+
+	public static final String NOME_ARQUIVO_SOMAS = "SHA256SUMS";
+
+	private static final ConcurrentHashMap<String, ManifestoDestino> MANIFESTOS = new ConcurrentHashMap<>();
+
+	private final Path diretorio;
+	private volatile Set<String> nomesArquivos = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private volatile Set<String> somasConteudo = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	private ManifestoDestino(Path diretorio) {
+		this.diretorio = diretorio;
+	}
+
+	/**
+	 * Obtém o manifesto do diretório de destino, percorrendo o diretório se este ainda não foi carregado
+	 * @param diretorioDestino diretório de destino raiz
+	 * @return manifesto do diretório
+	 * @throws IOException
+	 */
+	public static ManifestoDestino carregar(String diretorioDestino) throws IOException {
+		String chave = Paths.get(diretorioDestino).toAbsolutePath().normalize().toString();
+		ManifestoDestino manifesto = MANIFESTOS.get(chave);
+
+		if (manifesto == null) {
+			synchronized (MANIFESTOS) {
+				manifesto = MANIFESTOS.get(chave);
+
+				if (manifesto == null) {
+					manifesto = new ManifestoDestino(Paths.get(chave));
+					manifesto.percorrer();
+					MANIFESTOS.put(chave, manifesto);
+				}
+			}
+		}
+		return manifesto;
+	}
+
+	/**
+	 * Percorre novamente o diretório de destino e substitui os nomes e as somas carregados anteriormente,
+	 * considerando os arquivos entregues por outros processos ou por outros nós do cluster. Deve ser
+	 * chamado entre as buscas, pois as reservas das cópias em andamento seriam descartadas
+	 * @throws IOException
+	 */
+	public void recarregar() throws IOException {
+		ManifestoDestino manifesto = new ManifestoDestino(diretorio);
+		manifesto.percorrer();
+		nomesArquivos = manifesto.nomesArquivos;
+		somasConteudo = manifesto.somasConteudo;
+	}
+
+	/**
+	 * @param nomeArquivo nome do arquivo
+	 * @return <b>true</b> se um arquivo com este nome já foi entregue no destino
+	 */
+	public boolean contem(String nomeArquivo) {
+		return nomesArquivos.contains(nomeArquivo);
+	}
+
+	/**
+	 * Reserva o nome do arquivo antes da cópia, impedindo que o mesmo arquivo seja copiado duas vezes
+	 * @param nomeArquivo nome do arquivo
+	 * @return <b>false</b> se o arquivo já foi entregue ou reservado
+	 */
+	public boolean reservar(String nomeArquivo) {
+		return nomesArquivos.add(nomeArquivo);
+	}
+
+	/**
+	 * Libera o nome de um arquivo reservado cuja cópia falhou
+	 * @param nomeArquivo nome do arquivo
+	 */
+	public void liberar(String nomeArquivo) {
+		nomesArquivos.remove(nomeArquivo);
+	}
+
+	/**
+	 * Reserva o conteúdo do arquivo antes de torná-lo visível no destino, impedindo que o mesmo conteúdo
+	 * seja entregue com nomes diferentes
+	 * @param soma soma SHA-256 do conteúdo em hexadecimal
+	 * @return <b>false</b> se um arquivo com o mesmo conteúdo já foi entregue ou reservado
+	 */
+	public boolean reservarConteudo(String soma) {
+		return somasConteudo.add(soma);
+	}
+
+	/**
+	 * Libera o conteúdo reservado de uma cópia que falhou
+	 * @param soma soma SHA-256 do conteúdo em hexadecimal
+	 */
+	public void liberarConteudo(String soma) {
+		somasConteudo.remove(soma);
+	}
+
+	/**
+	 * Registra a soma do arquivo entregue no arquivo de somas da sua pasta
+	 * @param arquivoCopia arquivo entregue no destino
+	 * @param soma soma SHA-256 do conteúdo em hexadecimal
+	 * @throws IOException
+	 */
+	public synchronized void registrarSoma(File arquivoCopia, String soma) throws IOException {
+		Path arquivoSomas = arquivoCopia.toPath().resolveSibling(NOME_ARQUIVO_SOMAS);
+		Files.write(arquivoSomas, (soma + "  " + arquivoCopia.getName() + "\n").getBytes(StandardCharsets.UTF_8),
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * @return quantidade de arquivos entregues
+	 */
+	public int getQuantidadeArquivos() {
+		return nomesArquivos.size();
+	}
+
+	/**
+	 * Registra os nomes de todos os arquivos do diretório e das suas subpastas e, para os pacotes
+	 * selados (ver {@link PacoteEntrega}), os nomes dos arquivos entregues em cada pacote, lidos do
+	 * diretório central do ZIP. Os arquivos temporários das cópias e dos pacotes em andamento
+	 * (iniciados por ponto) são desconsiderados, e os arquivos de somas carregam as somas dos conteúdos
+	 */
+	private void percorrer() throws IOException {
+		long inicio = System.currentTimeMillis();
+		try {
+			Files.walkFileTree(diretorio, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(Path arquivo, BasicFileAttributes atributos) {
+					String nomeArquivo = arquivo.getFileName().toString();
+
+					if (atributos.isRegularFile() && !nomeArquivo.startsWith(".")) {
+						if (PacoteEntrega.isPacote(nomeArquivo)) {
+							adicionarEntradas(arquivo);
+						} else if (NOME_ARQUIVO_SOMAS.equals(nomeArquivo)) {
+							adicionarSomas(arquivo);
+						} else {
+							nomesArquivos.add(nomeArquivo);
+						}
+					}
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFileFailed(Path arquivo, IOException e) throws IOException {
+					if (arquivo.equals(diretorio)) {
+						throw e;
+					}
+					System.err.println("Não foi possível verificar \"" + arquivo + "\" no diretório de destino: " + e.getMessage());
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (NoSuchFileException e) {
+			// O diretório de destino ainda não existe e será criado na primeira cópia
+		}
+		System.out.println("Diretório de destino " + diretorio + " verificado: " + nomesArquivos.size() + " arquivos em "
+				+ (System.currentTimeMillis() - inicio) + " milisegundos");
+	}
+
+	/**
+	 * Registra as somas dos conteúdos entregues na pasta
+	 */
+	private void adicionarSomas(Path arquivoSomas) {
+		try {
+			List<String> linhas = Files.readAllLines(arquivoSomas, StandardCharsets.UTF_8);
+
+			for (String linha : linhas) {
+				int separador = linha.indexOf(' ');
+				if (separador > 0) {
+					somasConteudo.add(linha.substring(0, separador));
+				}
+			}
+		} catch (IOException e) {
+			System.err.println("Não foi possível verificar as somas \"" + arquivoSomas + "\" no diretório de destino: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Registra os nomes dos arquivos entregues no pacote
+	 */
+	private void adicionarEntradas(Path pacote) {
+		try (ZipFile zipFile = new ZipFile(pacote.toFile())) {
+			Enumeration<? extends ZipEntry> entradas = zipFile.entries();
+
+			while (entradas.hasMoreElements()) {
+				nomesArquivos.add(entradas.nextElement().getName());
+			}
+		} catch (IOException e) {
+			System.err.println("Não foi possível verificar o pacote \"" + pacote + "\" no diretório de destino: " + e.getMessage());
+		}
+	}
+}
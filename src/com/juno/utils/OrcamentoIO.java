@@ -0,0 +1,244 @@
+package com.juno.utils;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Orçamento de I/O compartilhado pelas leituras da origem e pelas gravações no destino de todos os diretórios,
+ * para que as buscas não saturem o servidor de arquivos usado também pelo ERP e pelo emissor de NF-e.
+ * <br>
+ * O orçamento limita os bytes e os arquivos por segundo através de baldes de fichas: cada leitura ou gravação
+ * debita o que consumiu e, se o saldo ficar negativo, a thread aguarda até que o débito seja reposto. Os saldos
+ * acumulam no máximo um segundo de orçamento, permitindo rajadas curtas. Os limites valem somente nas faixas de
+ * horário configuradas (por exemplo, no horário comercial) ou o tempo todo se nenhuma faixa for informada.
+ * <br>
+ * A taxa medida e a utilização do orçamento vigente são atualizadas a cada segundo de atividade
+ */
+public class OrcamentoIO implements OrcamentoIOMBean {
+
+	private static final long JANELA_MEDICAO_NANOS = TimeUnit.SECONDS.toNanos(1);
+	private static final int MINUTOS_POR_DIA = 24 * 60;
+
+	private long bytesPorSegundo;
+	private long arquivosPorSegundo;
+	private List<int[]> faixasHorario = new ArrayList<>(); // início e fim de cada faixa, em minutos do dia
+
+	// Baldes de fichas, acessados somente com o lock desta instância
+	private boolean limitado;
+	private long verificacaoHorario;
+	private long ultimaReposicao = System.nanoTime();
+	private double saldoBytes;
+	private double saldoArquivos;
+
+	// Medição da taxa, acessada somente com o lock desta instância
+	private long inicioJanela = System.nanoTime();
+	private long bytesJanela;
+	private long arquivosJanela;
+	private volatile double taxaBytes;
+	private volatile double taxaArquivos;
+	private final AtomicLong esperaNanos = new AtomicLong();
+
+	/**
+	 * Define os limites do orçamento. Os saldos recomeçam cheios
+	 * @param bytesPorSegundo bytes lidos e gravados por segundo; 0 para não limitar
+	 * @param arquivosPorSegundo arquivos lidos e gravados por segundo; 0 para não limitar
+	 * @param horarios faixas de horário em que os limites valem, no formato <i>HH:mm-HH:mm</i>. Uma faixa
+	 * que termina antes do seu início atravessa a meia-noite. Vazio para limitar o tempo todo
+	 * @throws IllegalArgumentException se uma faixa de horário for inválida
+	 */
+	public synchronized void configurar(long bytesPorSegundo, long arquivosPorSegundo, String[] horarios) {
+		List<int[]> faixas = new ArrayList<>();
+		for (String horario : horarios) {
+			if (!horario.trim().isEmpty()) {
+				faixas.add(converterFaixa(horario.trim()));
+			}
+		}
+		this.bytesPorSegundo = bytesPorSegundo;
+		this.arquivosPorSegundo = arquivosPorSegundo;
+		this.faixasHorario = faixas;
+		limitado = false;
+		verificarHorario(System.nanoTime());
+	}
+
+	/**
+	 * Debita os bytes e arquivos consumidos por uma leitura ou gravação e aguarda, se necessário, até que o
+	 * orçamento os reponha. As threads aguardam na ordem dos débitos, cada uma pelo débito acumulado até o seu
+	 * @param arquivos quantidade de arquivos lidos ou gravados
+	 * @param bytes quantidade de bytes lidos ou gravados
+	 * @return tempo aguardado em nanossegundos
+	 * @throws InterruptedException se a espera for interrompida
+	 */
+	public long consumir(int arquivos, long bytes) throws InterruptedException {
+		long espera = 0;
+
+		synchronized (this) {
+			long agora = System.nanoTime();
+			if (agora - verificacaoHorario >= JANELA_MEDICAO_NANOS) {
+				verificarHorario(agora);
+			}
+			if (!limitado) {
+				medir(agora, arquivos, bytes);
+				return 0;
+			}
+			repor(agora);
+
+			if (bytesPorSegundo > 0) {
+				saldoBytes -= bytes;
+				espera = (long) (Math.max(0, -saldoBytes) * JANELA_MEDICAO_NANOS / bytesPorSegundo);
+			}
+			if (arquivosPorSegundo > 0) {
+				saldoArquivos -= arquivos;
+				espera = Math.max(espera, (long) (Math.max(0, -saldoArquivos) * JANELA_MEDICAO_NANOS / arquivosPorSegundo));
+			}
+		}
+		if (espera > 0) {
+			esperaNanos.addAndGet(espera);
+			TimeUnit.NANOSECONDS.sleep(espera);
+		}
+		synchronized (this) {
+			// O consumo é medido quando liberado pelo orçamento
+			medir(System.nanoTime(), arquivos, bytes);
+		}
+		return espera;
+	}
+
+	@Override
+	public synchronized long getLimiteBytesPorSegundo() {
+		return limitado ? bytesPorSegundo : 0;
+	}
+
+	@Override
+	public synchronized long getLimiteArquivosPorSegundo() {
+		return limitado ? arquivosPorSegundo : 0;
+	}
+
+	@Override
+	public double getBytesPorSegundo() {
+		atualizarTaxa();
+		return taxaBytes;
+	}
+
+	@Override
+	public double getArquivosPorSegundo() {
+		atualizarTaxa();
+		return taxaArquivos;
+	}
+
+	/**
+	 * @return fração do orçamento vigente usada no último segundo de atividade, pelo limite mais utilizado;
+	 * 0 se não houver limite em vigor
+	 */
+	@Override
+	public synchronized double getUtilizacao() {
+		atualizarTaxa();
+		double utilizacao = 0;
+		if (limitado && bytesPorSegundo > 0) {
+			utilizacao = taxaBytes / bytesPorSegundo;
+		}
+		if (limitado && arquivosPorSegundo > 0) {
+			utilizacao = Math.max(utilizacao, taxaArquivos / arquivosPorSegundo);
+		}
+		return utilizacao;
+	}
+
+	@Override
+	public long getTempoEsperaMilisegundos() {
+		return TimeUnit.NANOSECONDS.toMillis(esperaNanos.get());
+	}
+
+	/**
+	 * Repõe os saldos pelo tempo decorrido desde a última reposição, até um segundo de orçamento
+	 */
+	private void repor(long agora) {
+		double segundos = (agora - ultimaReposicao) / (double) JANELA_MEDICAO_NANOS;
+		ultimaReposicao = agora;
+		saldoBytes = Math.min(bytesPorSegundo, saldoBytes + segundos * bytesPorSegundo);
+		saldoArquivos = Math.min(arquivosPorSegundo, saldoArquivos + segundos * arquivosPorSegundo);
+	}
+
+	/**
+	 * Verifica se os limites estão em vigor no horário atual. Ao entrar em vigor, os saldos começam cheios
+	 */
+	private void verificarHorario(long agora) {
+		verificacaoHorario = agora;
+		boolean emVigor = (bytesPorSegundo > 0 || arquivosPorSegundo > 0) && isHorarioLimitado();
+
+		if (emVigor && !limitado) {
+			ultimaReposicao = agora;
+			saldoBytes = bytesPorSegundo;
+			saldoArquivos = arquivosPorSegundo;
+		}
+		limitado = emVigor;
+	}
+
+	private boolean isHorarioLimitado() {
+		if (faixasHorario.isEmpty()) {
+			return true;
+		}
+		Calendar calendar = Calendar.getInstance();
+		int minuto = calendar.get(Calendar.HOUR_OF_DAY) * 60 + calendar.get(Calendar.MINUTE);
+
+		for (int[] faixa : faixasHorario) {
+			if (faixa[0] <= faixa[1] ? minuto >= faixa[0] && minuto < faixa[1] : minuto >= faixa[0] || minuto < faixa[1]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Acumula o consumo na janela de medição atual e calcula a taxa quando a janela se completa
+	 */
+	private void medir(long agora, int arquivos, long bytes) {
+		fecharJanela(agora);
+		bytesJanela += bytes;
+		arquivosJanela += arquivos;
+	}
+
+	private synchronized void atualizarTaxa() {
+		fecharJanela(System.nanoTime());
+	}
+
+	private void fecharJanela(long agora) {
+		long duracao = agora - inicioJanela;
+		if (duracao < JANELA_MEDICAO_NANOS) {
+			return;
+		}
+		// Após um período sem atividade, a janela se estende até agora e a taxa diminui
+		taxaBytes = bytesJanela * (double) JANELA_MEDICAO_NANOS / duracao;
+		taxaArquivos = arquivosJanela * (double) JANELA_MEDICAO_NANOS / duracao;
+		inicioJanela = agora;
+		bytesJanela = 0;
+		arquivosJanela = 0;
+	}
+
+	/**
+	 * Converte uma faixa <i>HH:mm-HH:mm</i> no início e no fim em minutos do dia
+	 */
+	private static int[] converterFaixa(String horario) {
+		String[] limites = horario.split("-");
+		if (limites.length != 2) {
+			throw new IllegalArgumentException(horario);
+		}
+		return new int[] { converterMinuto(limites[0].trim(), horario), converterMinuto(limites[1].trim(), horario) };
+	}
+
+	private static int converterMinuto(String hora, String horario) {
+		String[] partes = hora.split(":");
+		try {
+			int horas = Integer.parseInt(partes[0]);
+			int minutos = partes.length > 1 ? Integer.parseInt(partes[1]) : 0;
+
+			if (partes.length > 2 || horas < 0 || horas > 24 || minutos < 0 || minutos > 59 || horas * 60 + minutos > MINUTOS_POR_DIA) {
+				throw new IllegalArgumentException(horario);
+			}
+			return horas * 60 + minutos;
+
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(horario);
+		}
+	}
+}
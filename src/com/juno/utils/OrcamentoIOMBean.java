@@ -0,0 +1,19 @@
+package com.juno.utils;
+
+/**
+ * Atributos do orçamento de I/O expostos via JMX
+ */
+public interface OrcamentoIOMBean {
+
+	long getLimiteBytesPorSegundo();
+
+	long getLimiteArquivosPorSegundo();
+
+	double getBytesPorSegundo();
+
+	double getArquivosPorSegundo();
+
+	double getUtilizacao();
+
+	long getTempoEsperaMilisegundos();
+}
@@ -0,0 +1,212 @@
+package com.juno.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Pacote ZIP em que os arquivos selecionados para um diretório de destino são gravados, ao invés de
+ * um arquivo por NF-e. O pacote é formado por segmentos: cada segmento é gravado em um arquivo temporário
+ * (iniciado por ponto) e, ao ser selado, recebe o diretório central do ZIP, é sincronizado com o disco e
+ * renomeado atomicamente para <i>pacote-[data e hora]-[identificador].zip</i>. Os segmentos selados podem
+ * ser lidos enquanto o segmento seguinte é gravado.
+ * <br>
+ * Um segmento é selado ao atingir a quantidade máxima de arquivos ou quando {@link #selar()} é chamado; enquanto
+ * isso, ele continua aberto entre as buscas. Se a gravação de um arquivo falhar, o segmento inteiro é descartado,
+ * e as entregas dos arquivos gravados nele não devem ser registradas (ver {@link #isSelado(int)}).
+ * <br>
+ * A gravação é sincronizada: os arquivos são gravados um de cada vez no segmento aberto.
+ */
+public class PacoteEntrega {
+
+	private static final String PREFIXO_PACOTE = "pacote-";
+	private static final String PREFIXO_TEMPORARIO = "." + PREFIXO_PACOTE;
+	private static final String EXTENSAO_PACOTE = ".zip";
+	private static final String EXTENSAO_TEMPORARIO = ".tmp";
+	private static final int TAMANHO_BUFFER = 64 * 1024;
+
+	private final Path diretorio;
+	private final int arquivosPorSegmento;
+	private final Set<Integer> segmentosSelados = new HashSet<>();
+	private int segmento;
+	private Path arquivoTemporario;
+	private FileOutputStream saidaArquivo;
+	private ZipOutputStream saida;
+	private int qtdeArquivos;
+
+	/**
+	 * @param diretorio diretório do dia em que os segmentos são gravados
+	 * @param arquivosPorSegmento quantidade máxima de arquivos em cada segmento
+	 */
+	public PacoteEntrega(String diretorio, int arquivosPorSegmento) {
+		this.diretorio = Paths.get(diretorio);
+		this.arquivosPorSegmento = arquivosPorSegmento;
+	}
+
+	/**
+	 * @param nomeArquivo nome de um arquivo do diretório de destino
+	 * @return <b>true</b> se o arquivo for um segmento selado de um pacote
+	 */
+	public static boolean isPacote(String nomeArquivo) {
+		return nomeArquivo.startsWith(PREFIXO_PACOTE) && nomeArquivo.endsWith(EXTENSAO_PACOTE);
+	}
+
+	/**
+	 * Grava o arquivo no segmento aberto, abrindo um novo segmento se necessário. O arquivo de origem é
+	 * lido antes da gravação, de modo que as threads de cópia aguardam umas às outras somente durante
+	 * a gravação no pacote, e um erro na leitura da origem não descarta o segmento
+	 * @param nomeArquivo nome do arquivo no pacote
+	 * @param origem arquivo de origem
+	 * @return segmento em que o arquivo foi gravado
+	 * @throws IOException se a leitura ou a gravação falhar
+	 */
+	public int adicionar(String nomeArquivo, File origem) throws IOException {
+		byte[] conteudo = Files.readAllBytes(origem.toPath());
+		return adicionar(nomeArquivo, conteudo, origem.lastModified());
+	}
+
+	/**
+	 * Grava o conteúdo informado no segmento aberto, abrindo um novo segmento se necessário
+	 * @param nomeArquivo nome do arquivo no pacote
+	 * @param conteudo conteúdo do arquivo
+	 * @param dataModificacao data de modificação registrada no pacote
+	 * @return segmento em que o arquivo foi gravado
+	 * @throws IOException se a gravação falhar. O segmento aberto é descartado
+	 */
+	public synchronized int adicionar(String nomeArquivo, byte[] conteudo, long dataModificacao) throws IOException {
+		if (saida == null) {
+			abrir();
+		}
+		try {
+			ZipEntry entrada = new ZipEntry(nomeArquivo);
+			entrada.setTime(dataModificacao);
+			saida.putNextEntry(entrada);
+			saida.write(conteudo);
+			saida.closeEntry();
+
+		} catch (IOException e) {
+			descartar();
+			throw e;
+		}
+		int segmentoArquivo = segmento;
+		if (++qtdeArquivos >= arquivosPorSegmento) {
+			selar();
+		}
+		return segmentoArquivo;
+	}
+
+	/**
+	 * Sela o segmento aberto, se houver, tornando-o visível no diretório de destino
+	 * @throws IOException se o segmento não puder ser gravado. O segmento é descartado
+	 */
+	public synchronized void selar() throws IOException {
+		if (saida == null) {
+			return;
+		}
+		try {
+			saida.finish();
+			saida.flush();
+			saidaArquivo.getFD().sync();
+			saida.close();
+			saida = null;
+
+			String nomePacote = PREFIXO_PACOTE + new SimpleDateFormat("yyyyMMdd-HHmmssSSS").format(new Date()) + "-"
+					+ arquivoTemporario.getFileName().toString().substring(PREFIXO_TEMPORARIO.length()).replace(EXTENSAO_TEMPORARIO, "")
+					+ EXTENSAO_PACOTE;
+			try {
+				Files.move(arquivoTemporario, diretorio.resolve(nomePacote), StandardCopyOption.ATOMIC_MOVE);
+
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(arquivoTemporario, diretorio.resolve(nomePacote));
+			}
+			segmentosSelados.add(segmento);
+			arquivoTemporario = null;
+
+		} catch (IOException e) {
+			descartar();
+			throw e;
+		}
+	}
+
+	/**
+	 * Descarrega no arquivo temporário o conteúdo já gravado no segmento aberto, sem selá-lo
+	 * @throws IOException se a gravação falhar. O segmento é descartado
+	 */
+	public synchronized void descarregar() throws IOException {
+		if (saida == null) {
+			return;
+		}
+		try {
+			saida.flush();
+
+		} catch (IOException e) {
+			descartar();
+			throw e;
+		}
+	}
+
+	/**
+	 * @param segmentoArquivo segmento em que um arquivo foi gravado
+	 * @return <b>true</b> se o segmento foi selado; <b>false</b> se ainda está aberto ou foi descartado
+	 */
+	public synchronized boolean isSelado(int segmentoArquivo) {
+		return segmentosSelados.contains(segmentoArquivo);
+	}
+
+	/**
+	 * @param segmentoArquivo segmento em que um arquivo foi gravado
+	 * @return <b>true</b> se o segmento ainda está aberto e pode ser selado
+	 */
+	public synchronized boolean isAberto(int segmentoArquivo) {
+		return saida != null && segmento == segmentoArquivo;
+	}
+
+	private void abrir() throws IOException {
+		Files.createDirectories(diretorio);
+		arquivoTemporario = Files.createTempFile(diretorio, PREFIXO_TEMPORARIO, EXTENSAO_TEMPORARIO);
+		saidaArquivo = new FileOutputStream(arquivoTemporario.toFile());
+		saida = new ZipOutputStream(new BufferedOutputStream(saidaArquivo, TAMANHO_BUFFER));
+		saida.setLevel(Deflater.BEST_SPEED);
+		segmento++;
+		qtdeArquivos = 0;
+	}
+
+	/**
+	 * Descarta o segmento aberto após um erro de gravação
+	 */
+	private void descartar() {
+		try {
+			if (saida != null) {
+				try {
+					// Libera o Deflater do ZIP; o conteúdo gravado no segmento é descartado
+					saida.close();
+
+				} catch (IOException e) {
+					// O segmento é descartado mesmo que o seu fechamento falhe
+				} finally {
+					saidaArquivo.close();
+				}
+			}
+			if (arquivoTemporario != null) {
+				Files.deleteIfExists(arquivoTemporario);
+			}
+		} catch (IOException e) {
+			System.err.println("Não foi possível remover o pacote temporário \"" + arquivoTemporario + "\": " + e.getMessage());
+		}
+		saida = null;
+		arquivoTemporario = null;
+	}
+}
@@ -0,0 +1,159 @@
+package com.juno.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pontos de controle das buscas completas, um por diretório de origem, mantidos em um arquivo
+ * próprio e separado do config.properties. Ao término da listagem e da cópia de um diretório,
+ * o instante em que a sua listagem começou é registrado e gravado em disco imediatamente, de
+ * modo que uma busca interrompida (por erros de I/O ou pelo encerramento do processo) é retomada
+ * a partir do último ponto de controle de cada diretório já concluído, e não da data mínima da
+ * busca anterior.
+ * <br>
+ * Cada ponto de controle guarda também a data mínima do config.properties em vigor quando foi
+ * registrado. Se a data mínima for alterada no arquivo de configuração, os pontos de controle
+ * anteriores deixam de valer e a data informada é respeitada
+ */
+public class PontosControlePastas implements Closeable {
+
+	private static final int IDENTIFICADOR_ARQUIVO = 0x4E464550; // "NFEP"
+	private static final int VERSAO_ARQUIVO = 1;
+
+	private final File arquivoPontosControle;
+	private final ConcurrentHashMap<String, PontoControle> pontosControle = new ConcurrentHashMap<>();
+	private FileOutputStream saidaArquivo;
+	private DataOutputStream saida;
+
+	private PontosControlePastas(File arquivoPontosControle) {
+		this.arquivoPontosControle = arquivoPontosControle;
+	}
+
+	/**
+	 * Carrega os pontos de controle do arquivo informado, criando-o se ainda não existir.
+	 * O arquivo é reescrito somente com o último ponto de controle de cada diretório
+	 * @param arquivoPontosControle arquivo onde os pontos de controle são mantidos
+	 * @return pontos de controle carregados
+	 * @throws IOException
+	 */
+	public static PontosControlePastas carregar(File arquivoPontosControle) throws IOException {
+		PontosControlePastas pontosControle = new PontosControlePastas(arquivoPontosControle);
+		if (arquivoPontosControle.exists()) {
+			pontosControle.lerRegistros();
+		}
+		pontosControle.reescrever();
+		return pontosControle;
+	}
+
+	/**
+	 * Obtém a data mínima dos arquivos de um diretório na próxima busca completa
+	 * @param pastaOrigem diretório de origem
+	 * @param dataMinimaConfigurada data mínima informada no config.properties
+	 * @return data do último ponto de controle do diretório ou a data mínima configurada,
+	 * se o diretório não possui ponto de controle válido para esta data
+	 */
+	public long getDataMinima(String pastaOrigem, long dataMinimaConfigurada) {
+		PontoControle pontoControle = pontosControle.get(pastaOrigem);
+
+		if (pontoControle == null || pontoControle.dataMinimaConfigurada != dataMinimaConfigurada
+				|| pontoControle.dataMinima < dataMinimaConfigurada) {
+			return dataMinimaConfigurada;
+		}
+		return pontoControle.dataMinima;
+	}
+
+	/**
+	 * Registra o ponto de controle de um diretório cuja busca foi concluída, gravando-o em disco antes de retornar
+	 * @param pastaOrigem diretório de origem
+	 * @param dataMinimaConfigurada data mínima informada no config.properties durante a busca
+	 * @param dataMinima instante em que a listagem do diretório começou
+	 * @throws IOException
+	 */
+	public synchronized void registrar(String pastaOrigem, long dataMinimaConfigurada, long dataMinima) throws IOException {
+		PontoControle pontoControle = new PontoControle(dataMinimaConfigurada, dataMinima);
+		pontosControle.put(pastaOrigem, pontoControle);
+		escreverRegistro(saida, pastaOrigem, pontoControle);
+
+		saida.flush();
+		saidaArquivo.getFD().sync();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		saida.close();
+	}
+
+	/**
+	 * Lê os registros do arquivo. Um registro incompleto no final do arquivo,
+	 * causado por uma interrupção durante a gravação, é ignorado
+	 */
+	private void lerRegistros() throws IOException {
+		try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(new FileInputStream(arquivoPontosControle)))) {
+			if (entrada.readInt() != IDENTIFICADOR_ARQUIVO || entrada.readInt() != VERSAO_ARQUIVO) {
+				System.err.println("Pontos de controle \"" + arquivoPontosControle.getName() + "\" inválidos. Um novo arquivo será criado");
+				return;
+			}
+			while (true) {
+				String pastaOrigem = entrada.readUTF();
+				long dataMinimaConfigurada = entrada.readLong();
+				long dataMinima = entrada.readLong();
+				pontosControle.put(pastaOrigem, new PontoControle(dataMinimaConfigurada, dataMinima));
+			}
+		} catch (EOFException e) {
+			// Fim do arquivo
+		}
+	}
+
+	/**
+	 * Reescreve o arquivo somente com os pontos de controle válidos, substituindo o anterior
+	 */
+	private void reescrever() throws IOException {
+		File arquivoTemporario = new File(arquivoPontosControle.getPath() + ".tmp");
+
+		try (FileOutputStream saidaTemporaria = new FileOutputStream(arquivoTemporario)) {
+			DataOutputStream novaSaida = new DataOutputStream(new BufferedOutputStream(saidaTemporaria));
+			novaSaida.writeInt(IDENTIFICADOR_ARQUIVO);
+			novaSaida.writeInt(VERSAO_ARQUIVO);
+
+			for (Entry<String, PontoControle> entry : pontosControle.entrySet()) {
+				escreverRegistro(novaSaida, entry.getKey(), entry.getValue());
+			}
+			novaSaida.flush();
+			saidaTemporaria.getFD().sync();
+		}
+		Files.move(arquivoTemporario.toPath(), arquivoPontosControle.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		saidaArquivo = new FileOutputStream(arquivoPontosControle, true);
+		saida = new DataOutputStream(new BufferedOutputStream(saidaArquivo));
+	}
+
+	private void escreverRegistro(DataOutputStream dataOutputStream, String pastaOrigem, PontoControle pontoControle) throws IOException {
+		dataOutputStream.writeUTF(pastaOrigem);
+		dataOutputStream.writeLong(pontoControle.dataMinimaConfigurada);
+		dataOutputStream.writeLong(pontoControle.dataMinima);
+	}
+
+	/**
+	 * Ponto de controle de um diretório
+	 */
+	private static class PontoControle {
+		private final long dataMinimaConfigurada;
+		private final long dataMinima;
+
+		private PontoControle(long dataMinimaConfigurada, long dataMinima) {
+			this.dataMinimaConfigurada = dataMinimaConfigurada;
+			this.dataMinima = dataMinima;
+		}
+	}
+}
@@ -0,0 +1,51 @@
+package com.juno.utils;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+
+/**
+ * Calcula a soma SHA-256 do conteúdo de um arquivo à medida que os seus trechos são lidos,
+ * sem interromper a leitura. A soma só corresponde ao arquivo se ele foi consumido até o fim.
+ * <br>
+ * Instâncias desta classe <b>não</b> são thread-safe
+ */
+public class SomaConteudo implements ConsumidorConteudo {
+
+	private final MessageDigest digest = FileUtils.criarDigest();
+	private long bytesSomados;
+
+	/**
+	 * Prepara a soma para um novo arquivo
+	 */
+	public void iniciar() {
+		digest.reset();
+		bytesSomados = 0;
+	}
+
+	/**
+	 * Soma o trecho seguinte do conteúdo
+	 * @param conteudo trecho do conteúdo, da posição até o limite. A posição não é alterada
+	 * @return sempre <b>false</b>, para que o arquivo seja lido até o fim
+	 */
+	@Override
+	public boolean consumir(ByteBuffer conteudo) {
+		bytesSomados += conteudo.remaining();
+		digest.update(conteudo.duplicate());
+		return false;
+	}
+
+	/**
+	 * Finaliza a soma do conteúdo consumido desde o início. A soma deve ser iniciada novamente antes do próximo arquivo
+	 * @return soma em hexadecimal
+	 */
+	public String getSoma() {
+		return FileUtils.converterHexadecimal(digest.digest());
+	}
+
+	/**
+	 * @return quantidade de bytes somados desde o início
+	 */
+	public long getBytesSomados() {
+		return bytesSomados;
+	}
+}